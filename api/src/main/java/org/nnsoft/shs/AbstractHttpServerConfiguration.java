@@ -25,7 +25,11 @@ package org.nnsoft.shs;
 
 import static org.nnsoft.shs.lang.Preconditions.checkState;
 
+import java.io.File;
+import java.net.InetSocketAddress;
+
 import org.nnsoft.shs.http.Response.Status;
+import org.nnsoft.shs.http.SessionIdGenerator;
 
 /**
  * An abstract RequestDispatcherConfiguration implementation that helps on dropping the
@@ -83,6 +87,31 @@ public abstract class AbstractHttpServerConfiguration
         configurator.bindServerToPort( port );
     }
 
+    /**
+     * Configure the maximum length of the queue of incoming connections waiting to be accepted;
+     * a value less or equal to {@code 0} means the platform default is used.
+     *
+     * @param backlog the maximum length of the pending connections queue.
+     * @see HttpServerConfigurator#acceptConnectionsWithBacklog(int)
+     */
+    protected final void acceptConnectionsWithBacklog( int backlog )
+    {
+        configurator.acceptConnectionsWithBacklog( backlog );
+    }
+
+    /**
+     * Configure whether each event loop binds its own listener on the same host/port, using the
+     * {@code SO_REUSEPORT} socket option, letting the kernel spread the incoming connections across them.
+     *
+     * @param reusePort true if each event loop binds its own listener, false if connections
+     *        are accepted by a single listener.
+     * @see HttpServerConfigurator#bindServerWithReusePort(boolean)
+     */
+    protected final void bindServerWithReusePort( boolean reusePort )
+    {
+        configurator.bindServerWithReusePort( reusePort );
+    }
+
     /**
      * Configure the number of threads that will serve the HTTP requests.
      *
@@ -94,6 +123,40 @@ public abstract class AbstractHttpServerConfiguration
         configurator.serveRequestsWithThreads( threads );
     }
 
+    /**
+     * Configure the number of event loops, each one with its own selector, that will serve
+     * the accepted connections I/O operations.
+     *
+     * @param eventLoops the number of event loops that will serve the accepted connections.
+     * @see HttpServerConfigurator#serveConnectionsWithEventLoops(int)
+     */
+    protected final void serveConnectionsWithEventLoops( int eventLoops )
+    {
+        configurator.serveConnectionsWithEventLoops( eventLoops );
+    }
+
+    /**
+     * Configure the size, in bytes, of the buffers the event loops use to read the requests.
+     *
+     * @param readBufferSize the size, in bytes, of the buffers used to read the requests.
+     * @see HttpServerConfigurator#readRequestsWithBufferSize(int)
+     */
+    protected final void readRequestsWithBufferSize( int readBufferSize )
+    {
+        configurator.readRequestsWithBufferSize( readBufferSize );
+    }
+
+    /**
+     * Configure the maximum number of fully encoded responses of static contents the server keeps.
+     *
+     * @param maxResponses the maximum number of encoded responses the server keeps.
+     * @see HttpServerConfigurator#cacheStaticResponses(int)
+     */
+    protected final void cacheStaticResponses( int maxResponses )
+    {
+        configurator.cacheStaticResponses( maxResponses );
+    }
+
     /**
      * Configure the maximum number of seconds of life of HTTP Sessions.
      *
@@ -105,6 +168,55 @@ public abstract class AbstractHttpServerConfiguration
         configurator.sessionsHaveMagAge( sessionMaxAge );
     }
 
+    /**
+     * Configure the generator of the HTTP Sessions identifiers.
+     *
+     * @param sessionIdGenerator the generator of the HTTP Sessions identifiers.
+     * @see HttpServerConfigurator#generateSessionIdsWith(SessionIdGenerator)
+     */
+    protected final void generateSessionIdsWith( SessionIdGenerator sessionIdGenerator )
+    {
+        configurator.generateSessionIdsWith( sessionIdGenerator );
+    }
+
+    /**
+     * Configure the server to store the HTTP Sessions in signed cookies.
+     *
+     * @param secretKey the secret the cookies signature key is derived from, at least 16 bytes long.
+     * @param encrypt true if the cookies content has to be encrypted too, false if it can be read by clients.
+     * @see HttpServerConfigurator#storeSessionsInSignedCookies(byte[], boolean)
+     */
+    protected final void storeSessionsInSignedCookies( byte[] secretKey, boolean encrypt )
+    {
+        configurator.storeSessionsInSignedCookies( secretKey, encrypt );
+    }
+
+    /**
+     * Configure the server to store the HTTP Sessions in a memory-mapped file.
+     *
+     * @param storeFile the file where sessions are stored.
+     * @param maxSessions the maximum number of sessions the file can hold.
+     * @param maxSessionSize the maximum size of the serialized session attributes, in bytes.
+     * @see HttpServerConfigurator#storeSessionsInMappedFile(File, int, int)
+     */
+    protected final void storeSessionsInMappedFile( File storeFile, int maxSessions, int maxSessionSize )
+    {
+        configurator.storeSessionsInMappedFile( storeFile, maxSessions, maxSessionSize );
+    }
+
+    /**
+     * Configure the replication of the in-memory HTTP Sessions to the peer servers.
+     *
+     * @param listenAddress the address where the sessions replicated by the peers are received.
+     * @param secretKey the secret shared by the peers to sign the replicated sessions.
+     * @param peers the replication addresses of the peer servers.
+     * @see HttpServerConfigurator#replicateSessions(InetSocketAddress, byte[], InetSocketAddress...)
+     */
+    protected final void replicateSessions( InetSocketAddress listenAddress, byte[] secretKey, InetSocketAddress...peers )
+    {
+        configurator.replicateSessions( listenAddress, secretKey, peers );
+    }
+
     /**
      * Configure the connections keep-alive timeout, in seconds.
      *
@@ -141,4 +253,16 @@ public abstract class AbstractHttpServerConfiguration
         return configurator.when( status );
     }
 
+    /**
+     * Starts configuring a virtual host, that serves the requests whose {@code Host} header matches the given name.
+     *
+     * @param hostName the virtual host name.
+     * @return the configurator of the virtual host request handlers.
+     * @see HttpServerConfigurator#virtualHost(String)
+     */
+    protected final VirtualHostConfigurator virtualHost( String hostName )
+    {
+        return configurator.virtualHost( hostName );
+    }
+
 }
@@ -23,7 +23,11 @@ package org.nnsoft.shs;
  * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
+import java.io.File;
+import java.net.InetSocketAddress;
+
 import org.nnsoft.shs.http.Response.Status;
+import org.nnsoft.shs.http.SessionIdGenerator;
 
 /**
  * The Server configuration.
@@ -48,6 +52,23 @@ public interface HttpServerConfigurator
      */
     void bindServerToPort( int port );
 
+    /**
+     * Configure the maximum length of the queue of incoming connections waiting to be accepted;
+     * a value less or equal to {@code 0} means the platform default is used.
+     *
+     * @param backlog the maximum length of the pending connections queue.
+     */
+    void acceptConnectionsWithBacklog( int backlog );
+
+    /**
+     * Configure whether each event loop binds its own listener on the same host/port, using the
+     * {@code SO_REUSEPORT} socket option, letting the kernel spread the incoming connections across them.
+     *
+     * @param reusePort true if each event loop binds its own listener, false if connections
+     *        are accepted by a single listener.
+     */
+    void bindServerWithReusePort( boolean reusePort );
+
     /**
      * Configure the number of threads that will serve the HTTP requests.
      *
@@ -55,6 +76,32 @@ public interface HttpServerConfigurator
      */
     void serveRequestsWithThreads( int threads );
 
+    /**
+     * Configure the number of event loops, each one with its own selector, that will serve
+     * the accepted connections I/O operations.
+     *
+     * @param eventLoops the number of event loops that will serve the accepted connections.
+     */
+    void serveConnectionsWithEventLoops( int eventLoops );
+
+    /**
+     * Configure the size, in bytes, of the buffers the event loops use to read the requests.
+     *
+     * @param readBufferSize the size, in bytes, of the buffers used to read the requests.
+     */
+    void readRequestsWithBufferSize( int readBufferSize );
+
+    /**
+     * Configure the maximum number of fully encoded responses of static contents the server keeps
+     * to reply to {@code GET} requests without dispatching them; zero, the default, disables the cache.
+     *
+     * Static contents are the ones served with a ready-made body by the handlers that explicitly opted in,
+     * see {@link RequestHandlerBuilder#cachingResponses()}.
+     *
+     * @param maxResponses the maximum number of encoded responses the server keeps.
+     */
+    void cacheStaticResponses( int maxResponses );
+
     /**
      * Configure the maximum number of seconds of life of HTTP Sessions.
      *
@@ -62,6 +109,51 @@ public interface HttpServerConfigurator
      */
     void sessionsHaveMagAge( int sessionMaxAge );
 
+    /**
+     * Configure the generator of the HTTP Sessions identifiers; by default,
+     * identifiers are 128 random bits generated by per-thread secure random generators.
+     *
+     * @param sessionIdGenerator the generator of the HTTP Sessions identifiers.
+     */
+    void generateSessionIdsWith( SessionIdGenerator sessionIdGenerator );
+
+    /**
+     * Configure the server to store the HTTP Sessions in the session cookie, signed with a key
+     * derived from the given secret, rather than keeping them in memory; servers sharing the secret
+     * can restore the same sessions.
+     *
+     * Session attributes have to be serializable and small enough to fit in a cookie.
+     *
+     * @param secretKey the secret the cookies signature key is derived from, at least 16 bytes long.
+     * @param encrypt true if the cookies content has to be encrypted too, false if it can be read by clients.
+     */
+    void storeSessionsInSignedCookies( byte[] secretKey, boolean encrypt );
+
+    /**
+     * Configure the server to store the HTTP Sessions off the heap, in a memory-mapped file that
+     * is reopened when restarting the server, rather than keeping them in memory.
+     *
+     * Session attributes have to be serializable and their serialized form cannot exceed the given size.
+     *
+     * @param storeFile the file where sessions are stored.
+     * @param maxSessions the maximum number of sessions the file can hold.
+     * @param maxSessionSize the maximum size of the serialized session attributes, in bytes.
+     */
+    void storeSessionsInMappedFile( File storeFile, int maxSessions, int maxSessionSize );
+
+    /**
+     * Configure the replication of the in-memory HTTP Sessions to the peer servers, so that every server
+     * can serve the sessions created by the others; replication is asynchronous and best-effort.
+     *
+     * Session attributes have to be serializable; only the peer servers hosts can connect and the
+     * replicated sessions are signed with the secret shared by all the peers.
+     *
+     * @param listenAddress the address where the sessions replicated by the peers are received.
+     * @param secretKey the secret shared by the peers to sign the replicated sessions, at least 16 bytes long.
+     * @param peers the replication addresses of the peer servers.
+     */
+    void replicateSessions( InetSocketAddress listenAddress, byte[] secretKey, InetSocketAddress...peers );
+
     /**
      * Configure the connections keep-alive timeout, in seconds.
      *
@@ -73,6 +165,10 @@ public interface HttpServerConfigurator
      * Starts binding a request path, can be expressed using the {@code web.xml} grammar,
      * to a {@link org.nnsoft.shs.http.RequestHandler}.
      *
+     * Literal and prefix paths can be templates, where {@code {name}} captures a whole path segment,
+     * i.e. {@code /users/{id}/orders/{orderId}}; captured segments are available via
+     * {@link org.nnsoft.shs.http.Request#getPathParameter(String)}.
+     *
      * @param path the path for handling calls.
      * @return the builder to associate a request dispatcher.
      */
@@ -87,4 +183,14 @@ public interface HttpServerConfigurator
      */
     DefaultResponseBuilder when( Status status );
 
+    /**
+     * Starts configuring a virtual host, that serves the requests whose {@code Host} header,
+     * port excluded, matches the given name ignoring the case; requests addressed to hosts
+     * not configured are served by the handlers bound directly to this configurator.
+     *
+     * @param hostName the virtual host name.
+     * @return the configurator of the virtual host request handlers.
+     */
+    VirtualHostConfigurator virtualHost( String hostName );
+
 }
@@ -1,5 +1,6 @@
 package org.nnsoft.shs;
 
+import org.nnsoft.shs.http.Request.Method;
 import org.nnsoft.shs.http.RequestHandler;
 
 /*
@@ -31,6 +32,30 @@ import org.nnsoft.shs.http.RequestHandler;
 public interface RequestHandlerBuilder
 {
 
+    /**
+     * Restricts the {@link RequestHandler} has to be associated to the previously specified path
+     * to the given methods.
+     *
+     * When not specified, handlers extending {@link org.nnsoft.shs.http.BaseRequestHandler} serve the methods
+     * they override, the others serve all methods.
+     *
+     * @param methods the methods the {@link RequestHandler} serves.
+     * @return the same builder, to associate the {@link RequestHandler}.
+     */
+    RequestHandlerBuilder on( Method... methods );
+
+    /**
+     * Allows the server storing the responses to the {@code GET} requests of the previously specified path,
+     * when the cache is enabled via {@link HttpServerConfigurator#cacheStaticResponses(int)}:
+     * stored responses are replayed without invoking the {@link RequestHandler}.
+     *
+     * Only handlers that reply depending on the request host, path and query string only, and don't use the session,
+     * should opt in; when not specified, responses are never stored.
+     *
+     * @return the same builder, to associate the {@link RequestHandler}.
+     */
+    RequestHandlerBuilder cachingResponses();
+
     /**
      * Allows associating a {@link RequestHandler} to a previously specified path.
      *
@@ -74,4 +74,37 @@ public interface MultiValued<K, V>
      */
     Iterable<Entry<K, List<V>>> getAllEntries();
 
+    /**
+     * Visits all the stored key/value pairs, without allocating any wrapper object;
+     * keys associated to multiple values are visited once per value.
+     *
+     * @param visitor the non null key/value pairs visitor
+     */
+    void forEach( EntryVisitor<? super K, ? super V> visitor );
+
+    /**
+     * Returns the number of the stored key/value pairs, to be accessed by index.
+     *
+     * @return the number of the stored key/value pairs.
+     */
+    int size();
+
+    /**
+     * Returns the key of the key/value pair at the given index.
+     *
+     * @param index the key/value pair index, between 0 (inclusive) and {@link #size()} (exclusive)
+     * @return the key of the key/value pair at the given index.
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    K getKey( int index );
+
+    /**
+     * Returns the value of the key/value pair at the given index.
+     *
+     * @param index the key/value pair index, between 0 (inclusive) and {@link #size()} (exclusive)
+     * @return the value of the key/value pair at the given index.
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    V getValue( int index );
+
 }
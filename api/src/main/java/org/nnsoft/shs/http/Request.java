@@ -104,6 +104,15 @@ public interface Request
      */
     String getPath();
 
+    /**
+     * Returns the value of the path segment captured by the {@code {name}} parameter
+     * of the route template that matched the request path.
+     *
+     * @param name the template parameter name
+     * @return the captured path segment, null if the route template doesn't declare the parameter.
+     */
+    String getPathParameter( String name );
+
     /**
      * Returns the HTTP method.
      *
@@ -155,7 +164,8 @@ public interface Request
     MultiValued<String, String> getParameters();
 
     /**
-     * Returns the current HTTP Session.
+     * Returns the current HTTP Session, creating it if the client doesn't have one yet:
+     * sessions are created, and sent to the client, only when requested.
      *
      * @return the current HTTP Session.
      */
@@ -24,7 +24,6 @@ package org.nnsoft.shs.http;
  */
 
 import java.util.Date;
-import java.util.UUID;
 
 /**
  * Represents an HTTP user session, inspired by the
@@ -34,11 +33,11 @@ public interface Session
 {
 
     /**
-     * Returns the unique identifier assigned to this session.
+     * Returns the unique identifier assigned to this session, as sent to the client in the session cookie.
      *
      * @return the unique identifier assigned to this session
      */
-    UUID getId();
+    String getId();
 
     /**
      * Returns the object bound with the specified name in this session, or null if no object is bound under the name.
@@ -26,12 +26,19 @@ package org.nnsoft.shs.core;
 import static org.nnsoft.shs.lang.Preconditions.checkArgument;
 
 import java.io.File;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.nnsoft.shs.DefaultResponseBuilder;
 import org.nnsoft.shs.HttpServerConfigurator;
 import org.nnsoft.shs.RequestHandlerBuilder;
+import org.nnsoft.shs.VirtualHostConfigurator;
+import org.nnsoft.shs.core.http.SecureRandomSessionIdGenerator;
+import org.nnsoft.shs.http.Request.Method;
 import org.nnsoft.shs.http.RequestHandler;
 import org.nnsoft.shs.http.Response.Status;
+import org.nnsoft.shs.http.SessionIdGenerator;
 
 /**
  * Default {@link HttpServerConfigurator} implementation
@@ -44,10 +51,38 @@ final class DefaultHttpServerConfigurator
 
     private int port;
 
+    private int backlog;
+
+    private boolean reusePort;
+
     private int threads;
 
+    private int eventLoops = 1;
+
+    private int readBufferSize = 16 * 1024;
+
+    private int maxCachedResponses;
+
     private int sessionMaxAge;
 
+    private SessionIdGenerator sessionIdGenerator = new SecureRandomSessionIdGenerator();
+
+    private byte[] sessionsSecretKey;
+
+    private boolean encryptSessions;
+
+    private File sessionsStoreFile;
+
+    private int maxStoredSessions;
+
+    private int maxStoredSessionSize;
+
+    private InetSocketAddress replicationAddress;
+
+    private byte[] replicationSecretKey;
+
+    private final List<InetSocketAddress> replicationPeers = new ArrayList<InetSocketAddress>();
+
     private int keepAliveTimeOut;
 
     private final RequestDispatcher requestDispatcher = new RequestDispatcher();
@@ -90,6 +125,44 @@ final class DefaultHttpServerConfigurator
         this.port = port;
     }
 
+    /**
+     * The maximum length of the pending connections queue.
+     *
+     * @return the maximum length of the pending connections queue.
+     */
+    public int getBacklog()
+    {
+        return backlog;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void acceptConnectionsWithBacklog( int backlog )
+    {
+        this.backlog = backlog;
+    }
+
+    /**
+     * Flag to mark each event loop binds its own listener using {@code SO_REUSEPORT}.
+     *
+     * @return true if each event loop binds its own listener, false otherwise.
+     */
+    public boolean isReusePort()
+    {
+        return reusePort;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void bindServerWithReusePort( boolean reusePort )
+    {
+        this.reusePort = reusePort;
+    }
+
     /**
      * The number of threads that will serve the HTTP requests.
      *
@@ -109,6 +182,63 @@ final class DefaultHttpServerConfigurator
         this.threads = threads;
     }
 
+    /**
+     * The number of event loops that will serve the accepted connections.
+     *
+     * @return the number of event loops that will serve the accepted connections.
+     */
+    public int getEventLoops()
+    {
+        return eventLoops;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void serveConnectionsWithEventLoops( int eventLoops )
+    {
+        this.eventLoops = eventLoops;
+    }
+
+    /**
+     * The size, in bytes, of the buffers used to read the requests.
+     *
+     * @return the size, in bytes, of the buffers used to read the requests.
+     */
+    public int getReadBufferSize()
+    {
+        return readBufferSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readRequestsWithBufferSize( int readBufferSize )
+    {
+        this.readBufferSize = readBufferSize;
+    }
+
+    /**
+     * The maximum number of encoded responses of static contents the server keeps.
+     *
+     * @return the maximum number of encoded responses of static contents the server keeps.
+     */
+    public int getMaxCachedResponses()
+    {
+        return maxCachedResponses;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void cacheStaticResponses( int maxResponses )
+    {
+        this.maxCachedResponses = maxResponses;
+    }
+
     /**
      * The maximum number of seconds of life of HTTP Sessions.
      *
@@ -128,6 +258,150 @@ final class DefaultHttpServerConfigurator
         this.sessionMaxAge = sessionMaxAge;
     }
 
+    /**
+     * The generator of the HTTP Sessions identifiers.
+     *
+     * @return the generator of the HTTP Sessions identifiers.
+     */
+    public SessionIdGenerator getSessionIdGenerator()
+    {
+        return sessionIdGenerator;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void generateSessionIdsWith( SessionIdGenerator sessionIdGenerator )
+    {
+        checkArgument( sessionIdGenerator != null, "Null session id generator not allowed" );
+        this.sessionIdGenerator = sessionIdGenerator;
+    }
+
+    /**
+     * The secret the session cookies signature key is derived from.
+     *
+     * @return the secret the session cookies signature key is derived from, null if sessions are kept in memory.
+     */
+    public byte[] getSessionsSecretKey()
+    {
+        return sessionsSecretKey;
+    }
+
+    /**
+     * Flag to mark the session cookies content has to be encrypted.
+     *
+     * @return true if the session cookies content has to be encrypted, false otherwise.
+     */
+    public boolean isEncryptSessions()
+    {
+        return encryptSessions;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void storeSessionsInSignedCookies( byte[] secretKey, boolean encrypt )
+    {
+        checkArgument( secretKey != null && secretKey.length >= 16, "Secret key must be at least 16 bytes long" );
+        this.sessionsSecretKey = secretKey.clone();
+        this.encryptSessions = encrypt;
+    }
+
+    /**
+     * The file where sessions are stored.
+     *
+     * @return the file where sessions are stored, null if sessions are kept in memory.
+     */
+    public File getSessionsStoreFile()
+    {
+        return sessionsStoreFile;
+    }
+
+    /**
+     * The maximum number of sessions the sessions store file can hold.
+     *
+     * @return the maximum number of sessions the sessions store file can hold.
+     */
+    public int getMaxStoredSessions()
+    {
+        return maxStoredSessions;
+    }
+
+    /**
+     * The maximum size of the serialized session attributes, in bytes.
+     *
+     * @return the maximum size of the serialized session attributes, in bytes.
+     */
+    public int getMaxStoredSessionSize()
+    {
+        return maxStoredSessionSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void storeSessionsInMappedFile( File storeFile, int maxSessions, int maxSessionSize )
+    {
+        checkArgument( storeFile != null, "Null sessions store file not allowed" );
+        checkArgument( maxSessions > 0, "Sessions store must hold at least one session" );
+        checkArgument( maxSessionSize > 0, "Sessions store must hold non empty sessions" );
+        this.sessionsStoreFile = storeFile;
+        this.maxStoredSessions = maxSessions;
+        this.maxStoredSessionSize = maxSessionSize;
+    }
+
+    /**
+     * The address where the sessions replicated by the peers are received.
+     *
+     * @return the address where the sessions replicated by the peers are received, null if sessions are not replicated.
+     */
+    public InetSocketAddress getReplicationAddress()
+    {
+        return replicationAddress;
+    }
+
+    /**
+     * The secret shared by the peers to sign the replicated sessions.
+     *
+     * @return the secret shared by the peers to sign the replicated sessions, null if sessions are not replicated.
+     */
+    public byte[] getReplicationSecretKey()
+    {
+        return replicationSecretKey;
+    }
+
+    /**
+     * The replication addresses of the peer servers.
+     *
+     * @return the replication addresses of the peer servers.
+     */
+    public List<InetSocketAddress> getReplicationPeers()
+    {
+        return replicationPeers;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void replicateSessions( InetSocketAddress listenAddress, byte[] secretKey, InetSocketAddress...peers )
+    {
+        checkArgument( listenAddress != null, "Null replication listen address not allowed" );
+        checkArgument( secretKey != null && secretKey.length >= 16, "Secret key must be at least 16 bytes long" );
+        checkArgument( peers != null, "Null replication peers not allowed" );
+        this.replicationAddress = listenAddress;
+        this.replicationSecretKey = secretKey.clone();
+        for ( InetSocketAddress peer : peers )
+        {
+            checkArgument( peer != null, "Null replication peer not allowed" );
+            checkArgument( !peer.isUnresolved(), "Replication peer %s cannot be resolved", peer );
+            replicationPeers.add( peer );
+        }
+    }
+
     public int getKeepAliveTimeOut()
     {
         return keepAliveTimeOut;
@@ -153,6 +427,47 @@ final class DefaultHttpServerConfigurator
      */
     @Override
     public RequestHandlerBuilder serve( final String path )
+    {
+        return serve( requestDispatcher, path );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DefaultResponseBuilder when( final Status status )
+    {
+        return when( requestDispatcher, status );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public VirtualHostConfigurator virtualHost( String hostName )
+    {
+        checkArgument( hostName != null, "Null virtual host name not allowed." );
+        checkArgument( !hostName.isEmpty(), "Empty virtual host name not allowed." );
+
+        final RequestDispatcher virtualHostDispatcher = requestDispatcher.getVirtualHost( hostName );
+
+        return new VirtualHostConfigurator()
+        {
+
+            public RequestHandlerBuilder serve( String path )
+            {
+                return DefaultHttpServerConfigurator.serve( virtualHostDispatcher, path );
+            }
+
+            public DefaultResponseBuilder when( Status status )
+            {
+                return DefaultHttpServerConfigurator.when( virtualHostDispatcher, status );
+            }
+
+        };
+    }
+
+    private static RequestHandlerBuilder serve( final RequestDispatcher requestDispatcher, final String path )
     {
         checkArgument( path != null, "Null path cannot be served." );
         checkArgument( !path.isEmpty(), "Empty path not allowed." );
@@ -160,21 +475,42 @@ final class DefaultHttpServerConfigurator
         return new RequestHandlerBuilder()
         {
 
+            private Method[] methods;
+
+            private boolean cacheable;
+
+            public RequestHandlerBuilder on( Method... methods )
+            {
+                checkArgument( methods != null && methods.length > 0, "At least one method has to be specified." );
+
+                this.methods = methods;
+                return this;
+            }
+
+            public RequestHandlerBuilder cachingResponses()
+            {
+                cacheable = true;
+                return this;
+            }
+
             public void with( final RequestHandler requestHandler )
             {
                 checkArgument( requestHandler != null, "Null requestHandler not allowed." );
 
-                requestDispatcher.addRequestHandler( path, requestHandler );
+                if ( methods != null )
+                {
+                    requestDispatcher.addRequestHandler( path, requestHandler, cacheable, methods );
+                }
+                else
+                {
+                    requestDispatcher.addRequestHandler( path, requestHandler, cacheable );
+                }
             }
 
         };
     }
 
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public DefaultResponseBuilder when( final Status status )
+    private static DefaultResponseBuilder when( final RequestDispatcher requestDispatcher, final Status status )
     {
 
         checkArgument( status != null, "Null status cannot be served." );
@@ -0,0 +1,454 @@
+package org.nnsoft.shs.core;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static java.nio.channels.SelectionKey.OP_ACCEPT;
+import static java.nio.channels.SelectionKey.OP_READ;
+import static org.nnsoft.shs.core.http.ResponseFactory.newResponse;
+import static org.nnsoft.shs.core.io.IOUtils.closeQuietly;
+import static org.nnsoft.shs.http.Headers.CONNECTION;
+import static org.nnsoft.shs.http.Headers.KEEP_ALIVE;
+import static org.nnsoft.shs.http.Response.Status.BAD_REQUEST;
+import static org.nnsoft.shs.http.Response.Status.INTERNAL_SERVER_ERROR;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+
+import org.nnsoft.shs.core.http.RequestParseException;
+import org.nnsoft.shs.core.http.SessionManager;
+import org.nnsoft.shs.core.http.parse.RequestStreamingParser;
+import org.nnsoft.shs.core.http.serialize.ResponseSerializer;
+import org.nnsoft.shs.core.io.ByteBufferPool;
+import org.nnsoft.shs.core.io.OutboundQueue;
+import org.nnsoft.shs.http.Request;
+import org.nnsoft.shs.http.Response;
+import org.slf4j.Logger;
+
+/**
+ * An I/O event loop that owns a {@link Selector} and serves the read/write operations
+ * of the connections that have been assigned to it.
+ *
+ * Connections are handed over by the acceptor via {@link #register(SocketChannel)},
+ * or accepted by the loop itself when it owns a listener, see {@link #listen(ServerSocketChannel)};
+ * all the rest - parser attachments and response write queues - is confined in the loop thread.
+ */
+final class EventLoop
+    implements Runnable
+{
+
+    private static final String HTTP_11 = "1.1";
+
+    private static final int MAX_GATHERED_BUFFERS = 64;
+
+    private static final int MAX_POOLED_READ_BUFFERS = 4;
+
+    private final Logger logger = getLogger( getClass() );
+
+    private final ByteBuffer[] writeBuffers = new ByteBuffer[MAX_GATHERED_BUFFERS];
+
+    private final ByteBufferPool readBuffers;
+
+    private final Queue<SocketChannel> pendingConnections = new ConcurrentLinkedQueue<SocketChannel>();
+
+    private final Selector selector;
+
+    private final ExecutorService requestsExecutor;
+
+    private final RequestDispatcher dispatcher;
+
+    private final SessionManager sessionManager;
+
+    private final ResponseCache responseCache;
+
+    private final int keepAliveTimeOut;
+
+    private volatile boolean running = true;
+
+    /**
+     * Creates a new event loop, opening its own {@link Selector}.
+     *
+     * @param requestsExecutor the executor where requests will be processed
+     * @param dispatcher the dispatcher that addresses requests to the right handler
+     * @param sessionManager the HTTP sessions manager
+     * @param responseCache the encoded responses cache, null if disabled
+     * @param keepAliveTimeOut the connections keep-alive timeout, in milliseconds
+     * @param readBufferSize the size, in bytes, of the buffers used to read the requests
+     * @throws IOException if the selector cannot be opened
+     */
+    public EventLoop( ExecutorService requestsExecutor,
+                      RequestDispatcher dispatcher,
+                      SessionManager sessionManager,
+                      ResponseCache responseCache,
+                      int keepAliveTimeOut,
+                      int readBufferSize )
+        throws IOException
+    {
+        this.requestsExecutor = requestsExecutor;
+        this.dispatcher = dispatcher;
+        this.sessionManager = sessionManager;
+        this.responseCache = responseCache;
+        this.keepAliveTimeOut = keepAliveTimeOut;
+        readBuffers = new ByteBufferPool( readBufferSize, MAX_POOLED_READ_BUFFERS );
+
+        selector = Selector.open();
+    }
+
+    /**
+     * Hands over a just accepted connection to this loop; can be invoked by any thread.
+     *
+     * @param socketChannel the accepted, non-blocking, connection
+     */
+    public void register( SocketChannel socketChannel )
+    {
+        pendingConnections.offer( socketChannel );
+        selector.wakeup();
+    }
+
+    /**
+     * Makes this loop accepting the connections of its own listener, i.e. a {@link ServerSocketChannel}
+     * bound with {@code SO_REUSEPORT}; must be invoked before the loop is started.
+     *
+     * @param server the bound listener this loop accepts connections from
+     * @throws IOException if the listener cannot be registered
+     */
+    public void listen( ServerSocketChannel server )
+        throws IOException
+    {
+        server.configureBlocking( false );
+        server.register( selector, OP_ACCEPT );
+    }
+
+    /**
+     * Requests this loop to terminate, releasing all the served connections.
+     */
+    public void shutdown()
+    {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void run()
+    {
+        while ( running )
+        {
+            try
+            {
+                selector.select();
+            }
+            catch ( IOException e )
+            {
+                logger.error( "Something wrong happened while selecting ready connections", e );
+                break;
+            }
+
+            registerPendingConnections();
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while ( keys.hasNext() )
+            {
+                SelectionKey key = keys.next();
+                keys.remove();
+
+                if ( !key.isValid() )
+                {
+                    continue;
+                }
+
+                try
+                {
+                    if ( key.isAcceptable() )
+                    {
+                        accept( key );
+                    }
+                    else if ( key.isReadable() )
+                    {
+                        read( key );
+                    }
+                    else if ( key.isWritable() )
+                    {
+                        write( key );
+                    }
+                }
+                catch ( IOException e )
+                {
+                    logger.error( "An error occurred wile negotiation", e );
+
+                    closeConnection( key );
+                }
+            }
+        }
+
+        close();
+    }
+
+    /**
+     * Releases the connections, the listener and the selector of this loop;
+     * meant to be invoked directly only for loops that have never been started.
+     */
+    public void close()
+    {
+        for ( SelectionKey key : selector.keys() )
+        {
+            closeConnection( key );
+        }
+        closeQuietly( selector );
+    }
+
+    private void registerPendingConnections()
+    {
+        SocketChannel socketChannel;
+        while ( ( socketChannel = pendingConnections.poll() ) != null )
+        {
+            try
+            {
+                switchToRead( socketChannel, socketChannel.socket() );
+            }
+            catch ( IOException e )
+            {
+                logger.error( "Impossible to register the accepted connection", e );
+
+                closeQuietly( socketChannel );
+            }
+        }
+    }
+
+    private void accept( SelectionKey key )
+    {
+        ServerSocketChannel serverChannel = (ServerSocketChannel) key.channel();
+        SocketChannel socketChannel = null;
+
+        try
+        {
+            // drain the accept queue, the listener is not shared with other loops
+            while ( ( socketChannel = serverChannel.accept() ) != null )
+            {
+                socketChannel.configureBlocking( false );
+
+                if ( logger.isInfoEnabled() )
+                {
+                    logger.info( "Accepting new request from {}", socketChannel.socket().getInetAddress().getHostAddress() );
+                }
+
+                switchToRead( socketChannel, socketChannel.socket() );
+            }
+        }
+        catch ( IOException e )
+        {
+            // the listener has to stay open, only the just accepted connection is dropped
+            logger.error( "An error occurred wile accepting a new connection", e );
+
+            closeQuietly( socketChannel );
+        }
+    }
+
+    private void switchToRead( SocketChannel socketChannel, Socket socket )
+        throws IOException
+    {
+        socketChannel.register( selector, OP_READ, new RequestStreamingParser( socket.getInetAddress().getHostAddress(),
+                                                                               socket.getLocalAddress().getHostName(),
+                                                                               socket.getLocalPort() ) );
+    }
+
+    private void read( SelectionKey key )
+        throws IOException
+    {
+        SocketChannel serverChannel = (SocketChannel) key.channel();
+
+        RequestStreamingParser requestParser = (RequestStreamingParser) key.attachment();
+
+        // borrowed for the current read burst only, idle connections don't hold any buffer
+        ByteBuffer data = readBuffers.acquire();
+
+        try
+        {
+            int read = 0;
+            // read until the socket is drained, the parser copies what it needs
+            push: while ( !requestParser.isRequestMessageComplete() && ( read = serverChannel.read( data ) ) > 0 )
+            {
+                data.flip();
+
+                try
+                {
+                    requestParser.onRequestPartRead( data );
+                }
+                catch ( RequestParseException e )
+                {
+                    Response response = newResponse();
+                    response.setStatus( BAD_REQUEST );
+
+                    try
+                    {
+                        new ResponseSerializer( key ).serialize( response );
+                    }
+                    catch ( IOException ioe )
+                    {
+                        key.cancel();
+
+                        logger.error( "Impossible to stream Response to the client", e );
+                    }
+
+                    break push;
+                }
+
+                data.clear();
+            }
+
+            if ( read == -1 )
+            {
+                // client closed the connection
+                closeConnection( key );
+                return;
+            }
+
+            if ( requestParser.isRequestMessageComplete() )
+            {
+                key.interestOps( 0 );
+
+                Request request = requestParser.getParsedRequest();
+
+                boolean keepAlive = HTTP_11.equals( request.getProtocolVersion() )
+                                || ( request.getHeaders().contains( CONNECTION )
+                                     && KEEP_ALIVE.equals( request.getHeaders().getFirstValue( CONNECTION ) ) );
+                Socket socket = serverChannel.socket();
+                if ( keepAlive )
+                {
+                    socket.setKeepAlive( true );
+                    socket.setSoTimeout( keepAliveTimeOut );
+                }
+
+                if ( responseCache != null )
+                {
+                    // static contents don't need to be dispatched, reply straight from the loop
+                    OutboundQueue cached = responseCache.lookup( request,
+                                                                 socket.getKeepAlive(),
+                                                                 ProtocolProcessor.isGzipSupported( request ) );
+                    if ( cached != null )
+                    {
+                        cached.attachTo( key );
+                        return;
+                    }
+                }
+
+                requestsExecutor.execute( new ProtocolProcessor( sessionManager, dispatcher, responseCache, request, key ) );
+            }
+        }
+        catch ( IOException e )
+        {
+            Response response = newResponse();
+            response.setStatus( INTERNAL_SERVER_ERROR );
+
+            try
+            {
+                new ResponseSerializer( key ).serialize( response );
+            }
+            catch ( IOException ioe )
+            {
+                key.cancel();
+
+                logger.error( "Impossible to stream Response to the client", e );
+            }
+        }
+        finally
+        {
+            readBuffers.release( data );
+        }
+    }
+
+    private void write( SelectionKey key )
+        throws IOException
+    {
+        SocketChannel serverChannel = (SocketChannel) key.channel();
+
+        OutboundQueue responseBuffers = (OutboundQueue) key.attachment(); // type is driven by the ResponseSerializer
+
+        if ( !responseBuffers.writeTo( serverChannel, writeBuffers ) )
+        {
+            if ( responseBuffers.isEmpty() )
+            {
+                // the response is still being generated, don't spin until the next chunk
+                responseBuffers.suspend();
+            }
+            // otherwise the socket send buffer is full, OP_WRITE stays armed until it can accept more bytes
+            return;
+        }
+
+        Socket socket = serverChannel.socket();
+
+        if ( logger.isInfoEnabled() )
+        {
+            logger.info( "Request with {} satisfied.", socket.getInetAddress().getHostAddress() );
+        }
+
+        if ( socket.getKeepAlive() )
+        {
+            if ( logger.isInfoEnabled() )
+            {
+                logger.info( "Connection with {} will kept alive", socket.getInetAddress().getHostAddress() );
+            }
+
+            switchToRead( serverChannel, socket );
+        }
+        else
+        {
+            if ( logger.isInfoEnabled() )
+            {
+                logger.info( "Terminating connection with {}", socket.getInetAddress().getHostAddress() );
+            }
+
+            socket.close();
+            key.cancel();
+        }
+    }
+
+    /**
+     * Closes the connection held by the key, releasing the queue of the response being sent, if any.
+     *
+     * @param key the selection key that holds the client/server connection.
+     */
+    static void closeConnection( SelectionKey key )
+    {
+        // release the producer, if still generating the response
+        if ( key.attachment() instanceof OutboundQueue )
+        {
+            ( (OutboundQueue) key.attachment() ).close();
+        }
+
+        key.cancel();
+        closeQuietly( key.channel() );
+    }
+
+}
@@ -25,6 +25,8 @@ package org.nnsoft.shs.core;
 
 import static java.lang.String.format;
 import static java.lang.System.currentTimeMillis;
+import static org.nnsoft.shs.core.EventLoop.closeConnection;
+import static org.nnsoft.shs.core.http.HttpDate.currentDate;
 import static org.nnsoft.shs.core.http.ResponseFactory.newResponse;
 import static org.nnsoft.shs.http.Headers.ACCEPT_ENCODING;
 import static org.nnsoft.shs.http.Headers.CONNECTION;
@@ -39,12 +41,10 @@ import java.net.Socket;
 import java.net.SocketException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.Formatter;
-import java.util.List;
-import java.util.Map.Entry;
 
+import org.nnsoft.shs.collections.MultiValued;
+import org.nnsoft.shs.core.http.HttpDate;
 import org.nnsoft.shs.core.http.SessionManager;
 import org.nnsoft.shs.core.http.serialize.ResponseSerializer;
 import org.nnsoft.shs.http.Cookie;
@@ -65,27 +65,41 @@ final class ProtocolProcessor
 
     private static final String GZIP = "gzip";
 
-    private final SimpleDateFormat dateFormat = new SimpleDateFormat( "EEE, dd MMM yyyy HH:mm:ss zzz" );
-
     private final SessionManager sessionManager;
 
     private final RequestDispatcher requestDispatcher;
 
+    private final ResponseCache responseCache;
+
     private final Request request;
 
     private SelectionKey key;
 
     public ProtocolProcessor( SessionManager sessionManager,
                               RequestDispatcher requestDispatcher,
+                              ResponseCache responseCache,
                               Request request,
                               SelectionKey key )
     {
         this.sessionManager = sessionManager;
         this.requestDispatcher = requestDispatcher;
+        this.responseCache = responseCache;
         this.request = request;
         this.key = key;
     }
 
+    /**
+     * Checks if the client that sent the given request supports gzip compression.
+     *
+     * @param request the client request
+     * @return true, if the client supports gzip compression, false otherwise.
+     */
+    static boolean isGzipSupported( Request request )
+    {
+        return request.getHeaders().contains( ACCEPT_ENCODING )
+               && request.getHeaders().getValues( ACCEPT_ENCODING ).contains( GZIP );
+    }
+
     public void run()
     {
         long start = currentTimeMillis();
@@ -101,19 +115,13 @@ final class ProtocolProcessor
                                                   request.getProtocolVersion()
                                               } );
 
-            for ( Entry<String, List<String>> header : request.getHeaders().getAllEntries() )
+            MultiValued<String, String> headers = request.getHeaders();
+            for ( int i = 0; i < headers.size(); i++ )
             {
-                Formatter headerValues = new Formatter();
-                int i = 0;
-                for ( String value : header.getValue() )
-                {
-                    headerValues.format( "%s%s", ( i++ > 0 ? ", " : "" ), value );
-                }
-
                 logger.debug( "{} < {}: {}", new Object[] {
                                                  request.getClientHost(),
-                                                 header.getKey(),
-                                                 headerValues.toString()
+                                                 headers.getKey( i ),
+                                                 headers.getValue( i )
                                              } );
             }
 
@@ -130,14 +138,16 @@ final class ProtocolProcessor
         }
 
         Response response = newResponse();
-        response.addHeader( DATE, dateFormat.format( new Date() ) );
+        response.addHeader( DATE, currentDate() );
         response.addHeader( SERVER, DEFAULT_SERVER_NAME );
 
         SocketChannel serverChannel = (SocketChannel) key.channel();
         Socket socket = serverChannel.socket();
+        boolean keepAlive = false;
         try
         {
-            if ( socket.getKeepAlive() )
+            keepAlive = socket.getKeepAlive();
+            if ( keepAlive )
             {
                 response.addHeader( KEEP_ALIVE, format( "timeout=%s", socket.getSoTimeout() / 1000 ) );
                 response.addHeader( CONNECTION, KEEP_ALIVE );
@@ -150,8 +160,7 @@ final class ProtocolProcessor
 
         try
         {
-            sessionManager.manageSession( request, response );
-            requestDispatcher.dispatch( request, response );
+            requestDispatcher.dispatch( request, response, sessionManager );
 
             response.setProtocolName( request.getProtocolName() );
             response.setProtocolVersion( request.getProtocolVersion() );
@@ -164,16 +173,35 @@ final class ProtocolProcessor
         }
         finally
         {
-            boolean gzipEnabled = request.getHeaders().contains( ACCEPT_ENCODING )
-                                  && request.getHeaders().getValues( ACCEPT_ENCODING ).contains( GZIP );
+            boolean gzipEnabled = isGzipSupported( request );
+
+            boolean cacheable = responseCache != null && ResponseCache.isCacheable( request, response );
 
             try
             {
-                new ResponseSerializer( key, gzipEnabled ).serialize( response );
+                ResponseSerializer serializer = new ResponseSerializer( key, gzipEnabled );
+
+                if ( cacheable )
+                {
+                    serializer.recordEncodedResponse();
+                }
+
+                serializer.serialize( response );
+
+                if ( cacheable && serializer.getEncodedBody() != null )
+                {
+                    responseCache.store( request,
+                                         keepAlive,
+                                         gzipEnabled,
+                                         serializer.getEncodedHead(),
+                                         serializer.getEncodedBody() );
+                }
             }
             catch ( IOException e )
             {
-                key.cancel();
+                // the head could have already been sent, the connection can't be reused;
+                // the queue attached to the key may hold file regions that have to be released as well
+                closeConnection( key );
 
                 logger.error( "Impossible to stream Response to the client", e );
             }
@@ -191,20 +219,13 @@ final class ProtocolProcessor
                                   response.getStatus().getStatusText()
                               } );
                 // headers
-                for ( Entry<String, List<String>> header : response.getHeaders().getAllEntries() )
+                MultiValued<String, String> headers = response.getHeaders();
+                for ( int i = 0; i < headers.size(); i++ )
                 {
-                    Formatter headerValues = new Formatter();
-
-                    int counter = 0;
-                    for ( String headerValue : header.getValue() )
-                    {
-                        headerValues.format( "%s%s", ( counter++ > 0 ? ", " : "" ), headerValue );
-                    }
-
                     logger.debug( "{} > {}: {}", new Object[] {
                         request.getClientHost(),
-                        header.getKey(),
-                        headerValues.toString()
+                        headers.getKey( i ),
+                        headers.getValue( i )
                     } );
                 }
                 // cookies
@@ -227,8 +248,7 @@ final class ProtocolProcessor
 
                     if ( cookie.getMaxAge() != -1 )
                     {
-                        Date expirationDate = new Date( cookie.getMaxAge() * 1000 + currentTimeMillis() );
-                        String expires = dateFormat.format( expirationDate );
+                        String expires = HttpDate.format( cookie.getMaxAge() * 1000L + currentTimeMillis() );
 
                         cookieFormatter.format( " Expires=%s;", expires );
                     }
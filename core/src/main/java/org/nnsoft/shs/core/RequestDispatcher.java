@@ -23,6 +23,12 @@ package org.nnsoft.shs.core;
  * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
+import static java.util.Locale.ENGLISH;
+import static org.nnsoft.shs.http.Headers.ALLOW;
+import static org.nnsoft.shs.http.Headers.HOST;
+import static org.nnsoft.shs.http.Request.Method.GET;
+import static org.nnsoft.shs.http.Request.Method.OPTIONS;
+import static org.nnsoft.shs.http.Response.Status.METHOD_NOT_ALLOWED;
 import static org.nnsoft.shs.http.Response.Status.NOT_FOUND;
 import static org.nnsoft.shs.http.Response.Status.OK;
 import static org.slf4j.LoggerFactory.getLogger;
@@ -30,13 +36,17 @@ import static org.slf4j.LoggerFactory.getLogger;
 import java.io.File;
 import java.io.IOException;
 import java.util.EnumMap;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
+import org.nnsoft.shs.core.http.MutableRequest;
+import org.nnsoft.shs.core.http.SessionManager;
 import org.nnsoft.shs.core.io.FileResponseBodyWriter;
+import org.nnsoft.shs.http.BaseRequestHandler;
 import org.nnsoft.shs.http.Request;
+import org.nnsoft.shs.http.Request.Method;
 import org.nnsoft.shs.http.RequestHandler;
 import org.nnsoft.shs.http.Response;
 import org.nnsoft.shs.http.Response.Status;
@@ -44,19 +54,72 @@ import org.slf4j.Logger;
 
 /**
  * The request dispatcher is the responsible to address requests to the right {@link RequestHandler}
+ *
+ * Each path pattern routes to a table of handlers by method, so requests with not allowed methods,
+ * as well as {@code OPTIONS} requests not explicitly handled, are replied without involving handlers
+ * nor HTTP sessions.
+ *
+ * Virtual hosts have their own dispatcher, selected by the {@code Host} request header; requests
+ * addressed to hosts not configured are dispatched by the default one.
  */
 final class RequestDispatcher
 {
 
     private final Logger logger = getLogger( getClass() );
 
-    private final List<MatchingRequestHandler> handlers = new LinkedList<MatchingRequestHandler>();
+    private final RouteTable<MethodRoute> routes = new RouteTable<MethodRoute>();
+
+    private final Map<String, MethodRoute> routesByPattern = new HashMap<String, MethodRoute>();
 
     private final Map<Status, File> defaultResponses = new EnumMap<Status, File>( Status.class );
 
+    private final Map<String, RequestDispatcher> virtualHosts = new HashMap<String, RequestDispatcher>();
+
     public void addRequestHandler( String path, RequestHandler requestHandler )
     {
-        handlers.add( new MatchingRequestHandler( path, requestHandler ) );
+        addRequestHandler( path, requestHandler, false );
+    }
+
+    public void addRequestHandler( String path, RequestHandler requestHandler, Method...methods )
+    {
+        addRequestHandler( path, requestHandler, false, methods );
+    }
+
+    /**
+     * Associates the handler to the path, for the methods it serves.
+     *
+     * @param path the path pattern
+     * @param requestHandler the handler of the requests matching the path
+     * @param cacheable flag to mark the responses to {@code GET} requests can be stored by the responses cache
+     */
+    public void addRequestHandler( String path, RequestHandler requestHandler, boolean cacheable )
+    {
+        addRequestHandler( path, requestHandler, cacheable, servedMethods( requestHandler ) );
+    }
+
+    /**
+     * Associates the handler to the path, for the given methods.
+     *
+     * @param path the path pattern
+     * @param requestHandler the handler of the requests matching the path
+     * @param cacheable flag to mark the responses to {@code GET} requests can be stored by the responses cache
+     * @param methods the methods the handler serves
+     */
+    public void addRequestHandler( String path, RequestHandler requestHandler, boolean cacheable, Method...methods )
+    {
+        addRequestHandler( path, requestHandler, cacheable, EnumSet.of( methods[0], methods ) );
+    }
+
+    private void addRequestHandler( String path, RequestHandler requestHandler, boolean cacheable, Set<Method> methods )
+    {
+        MethodRoute route = routesByPattern.get( path );
+        if ( route == null )
+        {
+            route = new MethodRoute();
+            routes.add( path, route );
+            routesByPattern.put( path, route );
+        }
+        route.add( requestHandler, cacheable, methods );
     }
 
     public void addDefaultResponse( Status status, File defaultReply )
@@ -64,52 +127,67 @@ final class RequestDispatcher
         defaultResponses.put( status, defaultReply );
     }
 
+    /**
+     * Returns the dispatcher of the given virtual host, creating it if not yet configured.
+     *
+     * @param hostName the virtual host name
+     * @return the dispatcher of the given virtual host
+     */
+    public RequestDispatcher getVirtualHost( String hostName )
+    {
+        String key = hostName.toLowerCase( ENGLISH );
+
+        RequestDispatcher virtualHost = virtualHosts.get( key );
+        if ( virtualHost == null )
+        {
+            virtualHost = new RequestDispatcher();
+            virtualHosts.put( key, virtualHost );
+        }
+        return virtualHost;
+    }
+
     public void dispatch( Request request, Response response )
         throws IOException
+    {
+        dispatch( request, response, null );
+    }
+
+    /**
+     * Addresses the request to the right handler, managing the HTTP session only when a handler is invoked.
+     *
+     * @param request the request has to be dispatched
+     * @param response the response to the request
+     * @param sessionManager the HTTP sessions manager, can be null
+     * @throws IOException if any error occurs while handling the request
+     */
+    public void dispatch( Request request, Response response, SessionManager sessionManager )
+        throws IOException
     {
         if ( logger.isDebugEnabled() )
         {
             logger.debug( "Choosing the right handler to dispatch {} request...", request.getPath() );
         }
 
-        boolean found = false;
-        Iterator<MatchingRequestHandler> handlersIterator = handlers.iterator();
-
-        while ( !found && handlersIterator.hasNext() )
+        RequestDispatcher target = this;
+        if ( !virtualHosts.isEmpty() )
         {
-            MatchingRequestHandler handler = handlersIterator.next();
-
-            if ( handler.shouldServe( request.getPath() ) )
+            RequestDispatcher virtualHost = virtualHosts.get( hostNameOf( request.getHeaders().getFirstValue( HOST ) ) );
+            if ( virtualHost != null )
             {
-                if ( logger.isDebugEnabled() )
-                {
-                    logger.debug( "Request {} will be dispatched by {}", request.getPath(),
-                                  handler.getRequestHandler().getClass().getName() );
-                }
-
-                // found right handler to address the request
-                response.setStatus( OK );
-
-                // exception can be thrown by the method - loop would be blocked anyway
-                handler.getRequestHandler().handle( request, response );
-                // return the server request
-                found = true;
+                target = virtualHost;
             }
         }
 
-        if ( !found )
-        {
-            if ( logger.isDebugEnabled() )
-            {
-                logger.debug( "No handler found for path {}, request will just return NOT_FOUND", request.getPath() );
-            }
+        target.route( request, response, sessionManager );
 
-            response.setStatus( NOT_FOUND );
-        }
+        // check a default response has to be provided, virtual hosts inherit the default ones
 
-        // check a default response has to be provided
+        File defaultResponse = target.defaultResponses.get( response.getStatus() );
+        if ( defaultResponse == null )
+        {
+            defaultResponse = defaultResponses.get( response.getStatus() );
+        }
 
-        File defaultResponse = defaultResponses.get( response.getStatus() );
         if ( defaultResponse != null )
         {
             logger.info( "Default response {} configured to reply to status {}", defaultResponse, response.getStatus() );
@@ -121,94 +199,187 @@ final class RequestDispatcher
         }
     }
 
-    /**
-     * Matches URIs using the pattern grammar of the Servlet API and web.xml.
-     *
-     * This class has been borrowed from <a href="http://code.google.com/p/google-guice">Google Guice</a>,
-     * see the original <a href="http://code.google.com/p/google-guice/source/browse/extensions/servlet/src/com/google/inject/servlet/UriPatternType.java">source</a>
-     */
-    private static final class MatchingRequestHandler
+    private void route( Request request, Response response, SessionManager sessionManager )
+        throws IOException
     {
+        // templates parameters can be bound to parsed requests only
+        MutableRequest parsedRequest = request instanceof MutableRequest ? (MutableRequest) request : null;
 
-        private static enum Kind
+        MethodRoute route = routes.match( request.getPath(), parsedRequest );
+
+        if ( route == null )
         {
-            PREFIX,
-            SUFFIX,
-            LITERAL;
+            if ( logger.isDebugEnabled() )
+            {
+                logger.debug( "No handler found for path {}, request will just return NOT_FOUND", request.getPath() );
+            }
+
+            response.setStatus( NOT_FOUND );
         }
+        else
+        {
+            RequestHandler handler = route.getRequestHandler( request.getMethod() );
 
-        private final String pattern;
+            if ( handler != null )
+            {
+                if ( logger.isDebugEnabled() )
+                {
+                    logger.debug( "Request {} will be dispatched by {}", request.getPath(), handler.getClass().getName() );
+                }
 
-        private final Kind patternKind;
+                // found right handler to address the request
+                response.setStatus( OK );
 
-        private final RequestHandler requestHandler;
+                if ( parsedRequest != null && GET == request.getMethod() )
+                {
+                    parsedRequest.setResponseCacheable( route.isGetCacheable() );
+                }
 
-        public MatchingRequestHandler( String pattern, RequestHandler requestHandler )
-        {
-            if ( pattern.startsWith( "*" ) )
-            {
-                this.pattern = pattern.substring( 1 );
-                this.patternKind = Kind.PREFIX;
-            }
-            else if ( pattern.endsWith( "*" ) )
-            {
-                this.pattern = pattern.substring( 0, pattern.length() - 1 );
-                this.patternKind = Kind.SUFFIX;
+                if ( sessionManager != null )
+                {
+                    sessionManager.manageSession( request );
+                }
+
+                handler.handle( request, response );
+
+                if ( sessionManager != null )
+                {
+                    sessionManager.commitSession( request, response );
+                }
             }
             else
             {
-                this.pattern = pattern;
-                this.patternKind = Kind.LITERAL;
+                if ( logger.isDebugEnabled() )
+                {
+                    logger.debug( "No handler found for {} {}, request will just return the allowed methods",
+                                  request.getMethod(), request.getPath() );
+                }
+
+                response.setStatus( OPTIONS == request.getMethod() ? OK : METHOD_NOT_ALLOWED );
+                response.addHeader( ALLOW, route.getAllowedMethods() );
             }
-            this.requestHandler = requestHandler;
         }
+    }
 
-        public boolean shouldServe( String uri )
+    /**
+     * Extracts the host name from the {@code Host} header value, removing the port and normalizing the case;
+     * no new String is created for lowercase values without port.
+     */
+    private static String hostNameOf( String host )
+    {
+        if ( host == null )
         {
-            if ( null == uri )
-            {
-                return false;
-            }
-
-            if ( patternKind == Kind.PREFIX )
-            {
-                return uri.endsWith( pattern );
-            }
-            else if ( patternKind == Kind.SUFFIX )
-            {
-                return uri.startsWith( pattern );
-            }
+            return null;
+        }
 
-            // else treat as a literal
-            return pattern.equals( extractPath( uri ) );
+        int portSeparator = host.lastIndexOf( ':' );
+        // IPv6 literals are enclosed in brackets
+        if ( portSeparator != -1 && portSeparator > host.lastIndexOf( ']' ) )
+        {
+            host = host.substring( 0, portSeparator );
         }
 
-        public RequestHandler getRequestHandler()
+        return host.toLowerCase( ENGLISH );
+    }
+
+    /**
+     * Detects the methods the given handler serves: the ones overridden by {@link BaseRequestHandler}
+     * subclasses, all for the others.
+     */
+    private static Set<Method> servedMethods( RequestHandler requestHandler )
+    {
+        if ( !( requestHandler instanceof BaseRequestHandler ) )
         {
-            return requestHandler;
+            return EnumSet.allOf( Method.class );
         }
 
-        private String extractPath( String path )
+        Set<Method> methods = EnumSet.noneOf( Method.class );
+        for ( Class<?> type = requestHandler.getClass(); BaseRequestHandler.class != type; type = type.getSuperclass() )
         {
-            if ( patternKind == Kind.PREFIX )
+            for ( java.lang.reflect.Method declared : type.getDeclaredMethods() )
             {
-                return null;
+                Class<?>[] parameters = declared.getParameterTypes();
+                if ( parameters.length == 2 && Request.class == parameters[0] && Response.class == parameters[1] )
+                {
+                    for ( Method method : Method.values() )
+                    {
+                        if ( method.name().equalsIgnoreCase( declared.getName() ) )
+                        {
+                            methods.add( method );
+                        }
+                    }
+                }
             }
-            else if ( patternKind == Kind.SUFFIX )
+        }
+        return methods;
+    }
+
+    /**
+     * The handlers of a path pattern, by method.
+     */
+    private static final class MethodRoute
+    {
+
+        private final RequestHandler[] handlers = new RequestHandler[Method.values().length];
+
+        private RequestHandler firstHandler;
+
+        private String allowedMethods;
+
+        private boolean getCacheable;
+
+        public void add( RequestHandler requestHandler, boolean cacheable, Set<Method> methods )
+        {
+            if ( firstHandler == null )
             {
-                String extract = pattern;
+                firstHandler = requestHandler;
+            }
 
-                // trim the trailing '/'
-                if ( extract.endsWith( "/" ) )
+            // as for paths, the first registered handler wins
+            for ( Method method : methods )
+            {
+                if ( handlers[method.ordinal()] == null )
                 {
-                    extract = extract.substring( 0, extract.length() - 1 );
+                    handlers[method.ordinal()] = requestHandler;
+
+                    if ( GET == method )
+                    {
+                        getCacheable = cacheable;
+                    }
                 }
+            }
 
-                return extract;
+            StringBuilder allowed = new StringBuilder();
+            for ( Method method : Method.values() )
+            {
+                if ( OPTIONS == method || handlers[method.ordinal()] != null )
+                {
+                    allowed.append( allowed.length() > 0 ? ", " : "" ).append( method.name() );
+                }
             }
+            allowedMethods = allowed.toString();
+        }
+
+        /**
+         * Returns the handler of the given method; requests without method, not parsed from the wire,
+         * are served by the first registered handler.
+         */
+        public RequestHandler getRequestHandler( Method method )
+        {
+            return method != null ? handlers[method.ordinal()] : firstHandler;
+        }
 
-            // else treat as literal
-            return path;
+        public String getAllowedMethods()
+        {
+            return allowedMethods;
+        }
+
+        /**
+         * Checks the {@code GET} handler opted in the responses cache.
+         */
+        public boolean isGetCacheable()
+        {
+            return getCacheable;
         }
 
     }
@@ -0,0 +1,317 @@
+package org.nnsoft.shs.core;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static java.lang.System.currentTimeMillis;
+import static org.nnsoft.shs.core.http.HttpDate.currentEncodedDate;
+import static org.nnsoft.shs.core.io.ByteBufferEnqueuerOutputStream.EOM;
+import static org.nnsoft.shs.http.Headers.DATE;
+import static org.nnsoft.shs.http.Headers.HOST;
+import static org.nnsoft.shs.http.Request.Method.GET;
+import static org.nnsoft.shs.http.Response.Status.OK;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.nnsoft.shs.collections.MultiValued;
+import org.nnsoft.shs.core.http.MutableRequest;
+import org.nnsoft.shs.core.io.ByteBufferResponseBodyWriter;
+import org.nnsoft.shs.core.io.OutboundQueue;
+import org.nnsoft.shs.http.Request;
+import org.nnsoft.shs.http.Response;
+
+/**
+ * Cache of fully encoded responses of static contents, that allows the event loops replying
+ * to {@code GET} requests without dispatching them.
+ *
+ * Only responses of handlers that opted in, see {@link org.nnsoft.shs.RequestHandlerBuilder#cachingResponses()},
+ * with a ready-made body, see {@link ByteBufferResponseBodyWriter}, a {@code 200} status and no cookies are stored;
+ * they are identified by the request {@code Host}, path, query string parameters, protocol version,
+ * keep-alive and gzip support. The head is kept as the bytes the serializer encoded; the {@code Date} header value
+ * is the only part patched at replay time, in a copy of the head refreshed once per second.
+ *
+ * Responses are kept no more than one second, the same interval static files are checked for modifications.
+ */
+final class ResponseCache
+{
+
+    private static final long TIME_TO_LIVE = 1000;
+
+    private static final byte[] DATE_LINE = ( "\n" + DATE + ": " ).getBytes( Charset.forName( "US-ASCII" ) );
+
+    private final ConcurrentMap<String, CachedResponse> responses = new ConcurrentHashMap<String, CachedResponse>();
+
+    private final int maxResponses;
+
+    /**
+     * Creates a new cache of encoded responses.
+     *
+     * @param maxResponses the maximum number of responses can be stored.
+     */
+    public ResponseCache( int maxResponses )
+    {
+        this.maxResponses = maxResponses;
+    }
+
+    /**
+     * Checks if the response to the given request can be stored.
+     *
+     * @param request the served request
+     * @param response the response to the request
+     * @return true, if the response can be stored, false otherwise.
+     */
+    public static boolean isCacheable( Request request, Response response )
+    {
+        return GET == request.getMethod()
+               && request instanceof MutableRequest
+               && ( (MutableRequest) request ).isResponseCacheable()
+               && OK == response.getStatus()
+               && response.getCookies().isEmpty()
+               && response.getBodyWriter() instanceof ByteBufferResponseBodyWriter;
+    }
+
+    /**
+     * Looks up an encoded response for the given request.
+     *
+     * @param request the request has to be served
+     * @param keepAlive flag to mark the connection is kept alive
+     * @param gzipSupported flag to mark the client supports gzip compression
+     * @return the queue, ready to be written, that contains the encoded response, null if not found.
+     */
+    public OutboundQueue lookup( Request request, boolean keepAlive, boolean gzipSupported )
+    {
+        if ( GET != request.getMethod() )
+        {
+            return null;
+        }
+
+        String key = keyOf( request, keepAlive, gzipSupported );
+        CachedResponse cached = responses.get( key );
+
+        if ( cached == null )
+        {
+            return null;
+        }
+
+        long now = currentTimeMillis();
+
+        if ( now >= cached.expires )
+        {
+            responses.remove( key, cached );
+            return null;
+        }
+
+        OutboundQueue queue = new OutboundQueue();
+        queue.offer( cached.currentHead().duplicate() );
+        queue.offer( cached.body.duplicate() );
+        queue.offer( EOM );
+        return queue;
+    }
+
+    /**
+     * Stores the encoded response for the given request.
+     *
+     * @param request the served request
+     * @param keepAlive flag to mark the connection is kept alive
+     * @param gzipSupported flag to mark the client supports gzip compression
+     * @param head the encoded response head
+     * @param body the encoded response body
+     */
+    public void store( Request request, boolean keepAlive, boolean gzipSupported, ByteBuffer head, ByteBuffer body )
+    {
+        if ( responses.size() >= maxResponses )
+        {
+            evictExpired();
+
+            if ( responses.size() >= maxResponses )
+            {
+                return;
+            }
+        }
+
+        byte[] encodedHead = new byte[head.remaining()];
+        head.duplicate().get( encodedHead );
+
+        responses.put( keyOf( request, keepAlive, gzipSupported ),
+                       new CachedResponse( encodedHead, dateOffset( encodedHead ), body, currentTimeMillis() + TIME_TO_LIVE ) );
+    }
+
+    /**
+     * Removes all the stored responses.
+     */
+    public void clear()
+    {
+        responses.clear();
+    }
+
+    private void evictExpired()
+    {
+        long now = currentTimeMillis();
+
+        Iterator<CachedResponse> cached = responses.values().iterator();
+        while ( cached.hasNext() )
+        {
+            if ( now >= cached.next().expires )
+            {
+                cached.remove();
+            }
+        }
+    }
+
+    private static String keyOf( Request request, boolean keepAlive, boolean gzipSupported )
+    {
+        // virtual hosts can serve different contents on the same path
+        StringBuilder key = new StringBuilder( request.getPath() );
+
+        // the query string parameters, in the original order; decoded values may contain any char, so are length-prefixed
+        MultiValued<String, String> query = request.getQueryStringParameters();
+        for ( int i = 0; i < query.size(); i++ )
+        {
+            appendSized( key.append( i == 0 ? '?' : '&' ), query.getKey( i ) );
+            appendSized( key.append( '=' ), query.getValue( i ) );
+        }
+
+        return key.append( ' ' )
+                   .append( request.getHeaders().getFirstValue( HOST ) )
+                   .append( ' ' )
+                   .append( request.getProtocolVersion() )
+                   .append( keepAlive ? " keep-alive" : " close" )
+                   .append( gzipSupported ? " gzip" : " identity" )
+                   .toString();
+    }
+
+    private static void appendSized( StringBuilder key, String value )
+    {
+        String current = String.valueOf( value );
+        key.append( current.length() ).append( ':' ).append( current );
+    }
+
+    /**
+     * Finds where the {@code Date} header value starts in the encoded head.
+     *
+     * @return the offset of the date value, -1 if the head has no date that can be replaced by the current one.
+     */
+    private static int dateOffset( byte[] head )
+    {
+        int dateLength = currentEncodedDate().length;
+
+        search: for ( int i = 0; i + DATE_LINE.length <= head.length; i++ )
+        {
+            for ( int j = 0; j < DATE_LINE.length; j++ )
+            {
+                if ( head[i + j] != DATE_LINE[j] )
+                {
+                    continue search;
+                }
+            }
+
+            int valueStart = i + DATE_LINE.length;
+            int valueEnd = valueStart;
+            while ( valueEnd < head.length && head[valueEnd] != '\r' && head[valueEnd] != '\n' )
+            {
+                valueEnd++;
+            }
+            // dates set by handlers in other formats are replayed as they are
+            return valueEnd - valueStart == dateLength ? valueStart : -1;
+        }
+        return -1;
+    }
+
+    private static final class CachedResponse
+    {
+
+        final byte[] head;
+
+        final int dateOffset;
+
+        final ByteBuffer body;
+
+        final long expires;
+
+        /**
+         * The head with the date it has been patched with, replaced once per second.
+         */
+        private volatile DatedHead datedHead;
+
+        public CachedResponse( byte[] head, int dateOffset, ByteBuffer body, long expires )
+        {
+            this.head = head;
+            this.dateOffset = dateOffset;
+            this.body = body;
+            this.expires = expires;
+            datedHead = new DatedHead( null, toDirectBuffer( head ) );
+        }
+
+        /**
+         * Returns the encoded head, with the current date; the recorded bytes are copied and patched
+         * only when the date changes, concurrent event loops can publish the same head twice but never share
+         * a buffer while its date is being written.
+         */
+        ByteBuffer currentHead()
+        {
+            DatedHead current = datedHead;
+            if ( dateOffset < 0 )
+            {
+                return current.head;
+            }
+
+            byte[] date = currentEncodedDate();
+            if ( current.date != date )
+            {
+                byte[] patched = head.clone();
+                System.arraycopy( date, 0, patched, dateOffset, date.length );
+                current = new DatedHead( date, toDirectBuffer( patched ) );
+                datedHead = current;
+            }
+            return current.head;
+        }
+
+        private static ByteBuffer toDirectBuffer( byte[] encoded )
+        {
+            ByteBuffer buffer = ByteBuffer.allocateDirect( encoded.length );
+            buffer.put( encoded ).flip();
+            return buffer;
+        }
+
+    }
+
+    private static final class DatedHead
+    {
+
+        final byte[] date;
+
+        final ByteBuffer head;
+
+        public DatedHead( byte[] date, ByteBuffer head )
+        {
+            this.date = date;
+            this.head = head;
+        }
+
+    }
+
+}
@@ -0,0 +1,393 @@
+package org.nnsoft.shs.core;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Arrays.copyOf;
+import static org.nnsoft.shs.lang.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nnsoft.shs.core.http.MutableRequest;
+
+/**
+ * Compiled routing table that matches request paths against patterns expressed
+ * using the grammar of the Servlet API and web.xml:
+ *
+ * <ul>
+ * <li>{@code /path} matches the literal path only;</li>
+ * <li>{@code /path/*} matches all the paths that start with {@code /path/};</li>
+ * <li>{@code *.ext} matches all the paths that end with {@code .ext}.</li>
+ * </ul>
+ *
+ * Literal and prefix patterns can be templates, where {@code {name}} matches a whole, not empty,
+ * path segment, i.e. {@code /users/{id}/orders/{orderId}}.
+ *
+ * Literal and prefix patterns are indexed in a radix trie, suffix patterns in a radix trie of the
+ * reversed patterns; matching walks each trie once, in time proportional to the path length and
+ * without allocating unless templates are registered, and when more patterns match the path,
+ * the first registered wins. Templates segments are captured as offsets while walking, and bound
+ * to the request only once the route has been chosen.
+ *
+ * Routes have to be registered before the table is shared among threads.
+ *
+ * @param <T> the type of the routes targets
+ */
+final class RouteTable<T>
+{
+
+    private static final int NONE = Integer.MAX_VALUE;
+
+    private static final char WILDCARD = '*';
+
+    private static final char SEPARATOR = '/';
+
+    private static final char PARAMETER_START = '{';
+
+    private static final char PARAMETER_END = '}';
+
+    private static final String[] NO_PARAMETERS = new String[0];
+
+    private final List<T> targets = new ArrayList<T>();
+
+    private final List<String[]> parameterNames = new ArrayList<String[]>();
+
+    private int maxParameters;
+
+    private final Node forward = new Node( "" );
+
+    private final Node reversed = new Node( "" );
+
+    /**
+     * Registers a new route.
+     *
+     * @param pattern the path pattern
+     * @param target the target the matching paths are routed to
+     */
+    public void add( String pattern, T target )
+    {
+        int index = targets.size();
+
+        if ( pattern.length() > 0 && WILDCARD == pattern.charAt( 0 ) )
+        {
+            checkArgument( pattern.indexOf( PARAMETER_START ) == -1,
+                           "Suffix pattern '%s' cannot contain parameters", pattern );
+
+            String suffix = new StringBuilder( pattern.substring( 1 ) ).reverse().toString();
+            Node node = reversed.insert( suffix );
+            node.prefixRoute = min( node.prefixRoute, index );
+            parameterNames.add( NO_PARAMETERS );
+        }
+        else if ( pattern.length() > 0 && WILDCARD == pattern.charAt( pattern.length() - 1 ) )
+        {
+            Node node = insertTemplate( pattern, pattern.substring( 0, pattern.length() - 1 ) );
+            node.prefixRoute = min( node.prefixRoute, index );
+        }
+        else
+        {
+            Node node = insertTemplate( pattern, pattern );
+            node.literalRoute = min( node.literalRoute, index );
+        }
+
+        targets.add( target );
+    }
+
+    /**
+     * Inserts the given template in the forward trie, splitting literal parts and parameters,
+     * and registers the parameters names of the route being added.
+     */
+    private Node insertTemplate( String pattern, String template )
+    {
+        List<String> names = new ArrayList<String>();
+        Node node = forward;
+
+        int start = 0;
+        int parameterStart;
+        while ( ( parameterStart = template.indexOf( PARAMETER_START, start ) ) != -1 )
+        {
+            int parameterEnd = template.indexOf( PARAMETER_END, parameterStart );
+            checkArgument( parameterEnd > parameterStart + 1,
+                           "Pattern '%s' contains a not closed or empty parameter", pattern );
+            checkArgument( parameterStart > 0 && SEPARATOR == template.charAt( parameterStart - 1 )
+                           && ( parameterEnd + 1 == template.length() || SEPARATOR == template.charAt( parameterEnd + 1 ) ),
+                           "Parameters in pattern '%s' have to span whole path segments", pattern );
+
+            node = node.insert( template.substring( start, parameterStart ) );
+            if ( node.parameter == null )
+            {
+                node.parameter = new Node( "" );
+            }
+            node = node.parameter;
+
+            names.add( template.substring( parameterStart + 1, parameterEnd ) );
+            start = parameterEnd + 1;
+        }
+
+        parameterNames.add( names.isEmpty() ? NO_PARAMETERS : names.toArray( new String[names.size()] ) );
+        maxParameters = max( maxParameters, names.size() );
+
+        return node.insert( template.substring( start ) );
+    }
+
+    /**
+     * Returns the target of the first registered route that matches the given path.
+     *
+     * @param path the request path
+     * @return the target of the first registered route that matches the given path, null if none matches.
+     */
+    public T match( String path )
+    {
+        return match( path, null );
+    }
+
+    /**
+     * Returns the target of the first registered route that matches the given request path,
+     * binding to the request the parameters the route template captured.
+     *
+     * @param path the request path
+     * @param request the request the captured parameters have to be bound to, can be null
+     * @return the target of the first registered route that matches the given path, null if none matches.
+     */
+    public T match( String path, MutableRequest request )
+    {
+        if ( path == null )
+        {
+            return null;
+        }
+
+        int[] captures = null;
+        int[] routeCaptures = null;
+        if ( maxParameters > 0 )
+        {
+            captures = new int[maxParameters * 2];
+            routeCaptures = new int[maxParameters * 2];
+        }
+
+        int route = walk( forward, path, 0, false, 0, NONE, captures, routeCaptures );
+        route = walk( reversed, path, 0, true, 0, route, null, null );
+
+        if ( NONE == route )
+        {
+            return null;
+        }
+
+        String[] names = parameterNames.get( route );
+        if ( request != null && names.length > 0 )
+        {
+            request.setPathParameters( names, routeCaptures );
+        }
+
+        return targets.get( route );
+    }
+
+    /**
+     * Walks the trie down following the path, from its head or its tail, and returns
+     * the first registered route that matches, if it precedes the given one.
+     *
+     * Literal edges are followed before parameters, the captures of the current walk are copied
+     * in the route captures each time a preceding route is found.
+     */
+    private static int walk( Node node,
+                             String path,
+                             int consumed,
+                             boolean backward,
+                             int depth,
+                             int route,
+                             int[] captures,
+                             int[] routeCaptures )
+    {
+        final int length = path.length();
+
+        if ( node.prefixRoute < route )
+        {
+            route = node.prefixRoute;
+            copyCaptures( captures, routeCaptures, depth );
+        }
+
+        if ( consumed == length )
+        {
+            if ( node.literalRoute < route )
+            {
+                route = node.literalRoute;
+                copyCaptures( captures, routeCaptures, depth );
+            }
+            return route;
+        }
+
+        Node child = node.child( charAt( path, consumed, backward ) );
+        if ( child != null && matches( child.label, path, consumed, backward ) )
+        {
+            route = walk( child, path, consumed + child.label.length(), backward, depth, route, captures, routeCaptures );
+        }
+
+        if ( node.parameter != null )
+        {
+            int segmentEnd = path.indexOf( SEPARATOR, consumed );
+            if ( segmentEnd == -1 )
+            {
+                segmentEnd = length;
+            }
+
+            if ( segmentEnd > consumed )
+            {
+                captures[depth * 2] = consumed;
+                captures[depth * 2 + 1] = segmentEnd;
+                route = walk( node.parameter, path, segmentEnd, backward, depth + 1, route, captures, routeCaptures );
+            }
+        }
+
+        return route;
+    }
+
+    private static boolean matches( String label, String path, int consumed, boolean backward )
+    {
+        int labelLength = label.length();
+        if ( labelLength > path.length() - consumed )
+        {
+            return false;
+        }
+
+        for ( int i = 1; i < labelLength; i++ )
+        {
+            if ( label.charAt( i ) != charAt( path, consumed + i, backward ) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void copyCaptures( int[] captures, int[] routeCaptures, int depth )
+    {
+        if ( depth > 0 )
+        {
+            System.arraycopy( captures, 0, routeCaptures, 0, depth * 2 );
+        }
+    }
+
+    private static char charAt( String path, int index, boolean backward )
+    {
+        return backward ? path.charAt( path.length() - 1 - index ) : path.charAt( index );
+    }
+
+    private static final class Node
+    {
+
+        private static final char[] NO_KEYS = new char[0];
+
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        String label;
+
+        char[] keys = NO_KEYS;
+
+        Node[] children = NO_CHILDREN;
+
+        Node parameter;
+
+        int literalRoute = NONE;
+
+        int prefixRoute = NONE;
+
+        public Node( String label )
+        {
+            this.label = label;
+        }
+
+        public Node child( char key )
+        {
+            for ( int i = 0; i < keys.length; i++ )
+            {
+                if ( key == keys[i] )
+                {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Inserts the given key under this node, splitting the edges where needed,
+         * and returns the node where the key ends.
+         */
+        public Node insert( String key )
+        {
+            if ( key.length() == 0 )
+            {
+                return this;
+            }
+
+            Node child = child( key.charAt( 0 ) );
+            if ( child == null )
+            {
+                child = new Node( key );
+                addChild( child );
+                return child;
+            }
+
+            int common = 1;
+            int max = min( key.length(), child.label.length() );
+            while ( common < max && key.charAt( common ) == child.label.charAt( common ) )
+            {
+                common++;
+            }
+
+            if ( common < child.label.length() )
+            {
+                // split the edge: the common part becomes an intermediate node
+                Node intermediate = new Node( child.label.substring( 0, common ) );
+                child.label = child.label.substring( common );
+                intermediate.addChild( child );
+                replaceChild( key.charAt( 0 ), intermediate );
+                child = intermediate;
+            }
+
+            return child.insert( key.substring( common ) );
+        }
+
+        private void addChild( Node child )
+        {
+            keys = copyOf( keys, keys.length + 1 );
+            keys[keys.length - 1] = child.label.charAt( 0 );
+            children = copyOf( children, children.length + 1 );
+            children[children.length - 1] = child;
+        }
+
+        private void replaceChild( char key, Node child )
+        {
+            for ( int i = 0; i < keys.length; i++ )
+            {
+                if ( key == keys[i] )
+                {
+                    children[i] = child;
+                    return;
+                }
+            }
+        }
+
+    }
+
+}
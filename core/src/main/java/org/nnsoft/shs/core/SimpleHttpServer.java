@@ -23,33 +23,27 @@ package org.nnsoft.shs.core;
  * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
+import static java.lang.Boolean.TRUE;
+import static java.lang.String.format;
 import static java.lang.Thread.currentThread;
-import static java.nio.ByteBuffer.allocate;
 import static java.nio.channels.SelectionKey.OP_ACCEPT;
-import static java.nio.channels.SelectionKey.OP_READ;
 import static java.nio.channels.ServerSocketChannel.open;
 import static java.util.concurrent.Executors.newFixedThreadPool;
 import static org.nnsoft.shs.HttpServer.Status.INITIALIZED;
 import static org.nnsoft.shs.HttpServer.Status.RUNNING;
 import static org.nnsoft.shs.HttpServer.Status.STOPPED;
-import static org.nnsoft.shs.core.http.ResponseFactory.newResponse;
-import static org.nnsoft.shs.core.io.ByteBufferEnqueuerOutputStream.EOM;
-import static org.nnsoft.shs.http.Headers.CONNECTION;
-import static org.nnsoft.shs.http.Headers.KEEP_ALIVE;
-import static org.nnsoft.shs.http.Response.Status.BAD_REQUEST;
-import static org.nnsoft.shs.http.Response.Status.INTERNAL_SERVER_ERROR;
+import static org.nnsoft.shs.core.io.IOUtils.closeQuietly;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.Iterator;
-import java.util.Queue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -58,24 +52,27 @@ import org.nnsoft.shs.HttpServerConfiguration;
 import org.nnsoft.shs.InitException;
 import org.nnsoft.shs.RunException;
 import org.nnsoft.shs.ShutdownException;
-import org.nnsoft.shs.core.http.RequestParseException;
+import org.nnsoft.shs.core.http.MappedSessionManager;
+import org.nnsoft.shs.core.http.RegistrySessionManager;
 import org.nnsoft.shs.core.http.SessionManager;
-import org.nnsoft.shs.core.http.parse.RequestStreamingParser;
-import org.nnsoft.shs.core.http.serialize.ResponseSerializer;
-import org.nnsoft.shs.http.Request;
-import org.nnsoft.shs.http.Response;
+import org.nnsoft.shs.core.http.SessionReplicator;
+import org.nnsoft.shs.core.http.SignedCookieSessionManager;
 import org.slf4j.Logger;
 
 /**
  * A simple {@link HttpServer} implementation.
  *
+ * The thread that invokes {@link #start()} accepts the incoming connections and hands them over,
+ * in a round-robin fashion, to the configured {@link EventLoop}s, each one running in its own thread.
+ * When {@code SO_REUSEPORT} is enabled, each {@link EventLoop} accepts from its own listener instead.
+ *
  * This class must NOT be shared across threads, consider it be used inside main(String...) method.
  */
 public final class SimpleHttpServer
     implements HttpServer
 {
 
-    private static final String HTTP_11 = "1.1";
+    private static final String EVENT_LOOP_THREAD_NAME_FORMAT = "event-loop-%s";
 
     private final Logger logger = getLogger( getClass() );
 
@@ -85,11 +82,13 @@ public final class SimpleHttpServer
 
     private Selector selector;
 
-    private RequestDispatcher dispatcher;
+    private EventLoop[] eventLoops;
 
-    private SessionManager sessionManager;
+    private Thread[] eventLoopThreads;
 
-    private int keepAliveTimeOut;
+    private int nextEventLoop;
+
+    private SessionManager sessionManager;
 
     private final AtomicReference<Status> currentStatus = new AtomicReference<Status>();
 
@@ -115,10 +114,16 @@ public final class SimpleHttpServer
         checkInitParameter( configurator.getHost() != null, "Impossible bind server to a null host" );
         checkInitParameter( configurator.getPort() > 0, "Impossible to listening on port %s, it must be a positive number", configurator.getPort() );
         checkInitParameter( configurator.getThreads() > 0, "Impossible to serve requests with negative or none threads" );
+        checkInitParameter( configurator.getEventLoops() > 0, "Impossible to serve connections with negative or none event loops" );
         checkInitParameter( configurator.getSessionMaxAge() > 0, "Sessions without timelive won't exist" );
         checkInitParameter( configurator.getKeepAliveTimeOut() >= 0, "Negative keep alive timeout not allowed" );
+        checkInitParameter( configurator.getReadBufferSize() > 0, "Impossible to read requests with negative or empty buffers" );
+        checkInitParameter( configurator.getMaxCachedResponses() >= 0, "Impossible to cache a negative number of responses" );
+        checkInitParameter( configurator.getReplicationAddress() == null
+                            || ( configurator.getSessionsSecretKey() == null && configurator.getSessionsStoreFile() == null ),
+                            "Only sessions kept in memory can be replicated" );
 
-        keepAliveTimeOut = configurator.getKeepAliveTimeOut() * 1000;
+        int keepAliveTimeOut = configurator.getKeepAliveTimeOut() * 1000;
 
         logger.info( "Initializing server using {} threads...", configurator.getThreads() );
 
@@ -127,32 +132,167 @@ public final class SimpleHttpServer
 
         logger.info( "Done! Initializing the SessionManager ..." );
 
-        sessionManager = new SessionManager( configurator.getSessionMaxAge() * 1000 );
+        if ( configurator.getSessionsSecretKey() != null )
+        {
+            sessionManager = new SignedCookieSessionManager( configurator.getSessionMaxAge() * 1000,
+                                                             configurator.getSessionIdGenerator(),
+                                                             configurator.getSessionsSecretKey(),
+                                                             configurator.isEncryptSessions() );
+        }
+        else if ( configurator.getSessionsStoreFile() != null )
+        {
+            try
+            {
+                sessionManager = new MappedSessionManager( configurator.getSessionMaxAge() * 1000,
+                                                           configurator.getSessionIdGenerator(),
+                                                           configurator.getSessionsStoreFile(),
+                                                           configurator.getMaxStoredSessions(),
+                                                           configurator.getMaxStoredSessionSize() );
+            }
+            catch ( IOException e )
+            {
+                throw new InitException( "Impossible to open the sessions store %s: %s",
+                                         configurator.getSessionsStoreFile(), e.getMessage() );
+            }
+        }
+        else
+        {
+            SessionReplicator replicator = null;
+            if ( configurator.getReplicationAddress() != null )
+            {
+                logger.info( "Replicating sessions from {} to {} ...",
+                             configurator.getReplicationAddress(), configurator.getReplicationPeers() );
+
+                try
+                {
+                    replicator = new SessionReplicator( configurator.getReplicationAddress(),
+                                                        configurator.getReplicationSecretKey(),
+                                                        configurator.getReplicationPeers() );
+                }
+                catch ( IOException e )
+                {
+                    throw new InitException( "Impossible to replicate sessions on %s: %s",
+                                             configurator.getReplicationAddress(), e.getMessage() );
+                }
+            }
+
+            sessionManager = new RegistrySessionManager( configurator.getSessionMaxAge() * 1000,
+                                                         configurator.getSessionIdGenerator(),
+                                                         replicator );
+        }
+
+        ResponseCache responseCache = null;
+        if ( configurator.getMaxCachedResponses() > 0 )
+        {
+            logger.info( "Done! Caching up to {} static responses ...", configurator.getMaxCachedResponses() );
+
+            responseCache = new ResponseCache( configurator.getMaxCachedResponses() );
+        }
+
+        logger.info( "Done! Opening {} event loops ...", configurator.getEventLoops() );
+
+        eventLoops = new EventLoop[configurator.getEventLoops()];
+        for ( int i = 0; i < eventLoops.length; i++ )
+        {
+            try
+            {
+                eventLoops[i] = new EventLoop( requestsExecutor,
+                                               configurator.getRequestDispatcher(),
+                                               sessionManager,
+                                               responseCache,
+                                               keepAliveTimeOut,
+                                               configurator.getReadBufferSize() );
+            }
+            catch ( IOException e )
+            {
+                releaseResources();
+                throw new InitException( "Impossible to open the event loop #%s: %s", i, e.getMessage() );
+            }
+        }
 
         logger.info( "Done! Binding host {} listening on port {} ...", configurator.getHost(), configurator.getPort() );
 
+        InetSocketAddress address = new InetSocketAddress( configurator.getHost(), configurator.getPort() );
+
         try
         {
-            server = open();
-            server.socket().bind( new InetSocketAddress( configurator.getHost(), configurator.getPort() ) );
-            server.configureBlocking( false );
-
             selector = Selector.open();
-            server.register( selector, OP_ACCEPT );
+
+            if ( configurator.isReusePort() )
+            {
+                // each loop accepts from its own listener, the kernel balances the connections among them
+                for ( EventLoop eventLoop : eventLoops )
+                {
+                    ServerSocketChannel listener = open();
+                    try
+                    {
+                        enableReusePort( listener );
+                        listener.socket().bind( address, configurator.getBacklog() );
+                        eventLoop.listen( listener );
+                    }
+                    catch ( IOException e )
+                    {
+                        closeQuietly( listener );
+                        throw e;
+                    }
+                    catch ( InitException e )
+                    {
+                        closeQuietly( listener );
+                        throw e;
+                    }
+                }
+            }
+            else
+            {
+                server = open();
+                server.socket().bind( address, configurator.getBacklog() );
+                server.configureBlocking( false );
+                server.register( selector, OP_ACCEPT );
+            }
         }
         catch ( IOException e )
         {
+            releaseResources();
             throw new InitException( "Impossible to start server on port %s (with %s threads): %s",
                                      configurator.getPort(), configurator.getThreads(), e.getMessage() );
         }
-
-        this.dispatcher = configurator.getRequestDispatcher();
+        catch ( InitException e )
+        {
+            releaseResources();
+            throw e;
+        }
 
         logger.info( "Done! Server has been successfully initialized, it can be now started" );
 
         currentStatus.set( INITIALIZED );
     }
 
+    /**
+     * Releases the event loops opened so far, together with the listeners they have been registered,
+     * the acceptor selector and its listener, the sessions manager and the requests executor,
+     * so a failed {@link #init(HttpServerConfiguration)} can be retried.
+     */
+    private void releaseResources()
+    {
+        for ( EventLoop eventLoop : eventLoops )
+        {
+            if ( eventLoop != null )
+            {
+                eventLoop.close();
+            }
+        }
+        eventLoops = null;
+
+        closeQuietly( server );
+        server = null;
+
+        closeQuietly( selector );
+        selector = null;
+
+        sessionManager.shutDown();
+        requestsExecutor.shutdownNow();
+    }
+
     /**
      * Verifies a configuration parameter condition, throwing {@link InitException} if not verified.
      *
@@ -170,6 +310,41 @@ public final class SimpleHttpServer
         }
     }
 
+    /**
+     * Enables the {@code SO_REUSEPORT} option on the input listener.
+     *
+     * The option is looked up reflectively since it is not part of the APIs
+     * of all the JVMs the server runs on.
+     *
+     * @param listener the listener, not bound yet, the option has to be enabled on
+     * @throws IOException if any error occurs while setting the option
+     * @throws InitException if the running JVM doesn't support the {@code SO_REUSEPORT} option
+     */
+    private static void enableReusePort( ServerSocketChannel listener )
+        throws IOException, InitException
+    {
+        try
+        {
+            Object reusePort = Class.forName( "java.net.StandardSocketOptions" ).getField( "SO_REUSEPORT" ).get( null );
+            Method setOption = ServerSocketChannel.class.getMethod( "setOption",
+                                                                    Class.forName( "java.net.SocketOption" ),
+                                                                    Object.class );
+            setOption.invoke( listener, reusePort, TRUE );
+        }
+        catch ( InvocationTargetException e )
+        {
+            if ( e.getCause() instanceof IOException )
+            {
+                throw (IOException) e.getCause();
+            }
+            throw new InitException( "SO_REUSEPORT is not supported on this platform", e.getCause() );
+        }
+        catch ( Exception e )
+        {
+            throw new InitException( "SO_REUSEPORT is not supported by the running JVM", e );
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -182,99 +357,54 @@ public final class SimpleHttpServer
                                     currentStatus );
         }
 
+        eventLoopThreads = new Thread[eventLoops.length];
+        for ( int i = 0; i < eventLoops.length; i++ )
+        {
+            eventLoopThreads[i] = new Thread( eventLoops[i], format( EVENT_LOOP_THREAD_NAME_FORMAT, i ) );
+            eventLoopThreads[i].setDaemon( true );
+            eventLoopThreads[i].start();
+        }
+
         logger.info( "Server successfully started! Waiting for new requests..." );
 
         currentStatus.set( RUNNING );
 
-        while ( RUNNING == currentStatus.get() )
+        try
         {
-            try
-            {
-                selector.select();
-            }
-            catch ( Throwable t )
-            {
-                throw new RunException( "Something wrong happened while listening for connections", t );
-            }
-
-            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
-            while ( keys.hasNext() )
+            while ( RUNNING == currentStatus.get() )
             {
-                SelectionKey key = keys.next();
-
-                if ( !key.isValid() )
+                try
                 {
-                    continue;
+                    selector.select();
                 }
-
-                if ( !key.isReadable() )
+                catch ( Throwable t )
                 {
-                    keys.remove();
+                    throw new RunException( "Something wrong happened while listening for connections", t );
                 }
 
-                try
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while ( keys.hasNext() )
                 {
-                    if ( key.isAcceptable() )
-                    {
-                        accept( key );
-                    }
-                    else if ( key.isReadable() )
-                    {
-                        read( key, keys );
-                    }
-                    else if ( key.isWritable() )
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if ( key.isValid() && key.isAcceptable() )
                     {
-                        write( key );
+                        try
+                        {
+                            accept( key );
+                        }
+                        catch ( IOException e )
+                        {
+                            logger.error( "An error occurred wile accepting a new connection", e );
+                        }
                     }
                 }
-                catch ( IOException e )
-                {
-                    logger.error( "An error occurred wile negotiation", e );
-
-                    key.cancel();
-                }
-            }
-        }
-
-        logger.info( "Server is shutting down..." );
-
-        try
-        {
-            if ( selector != null && selector.isOpen() )
-            {
-                selector.close();
             }
         }
-        catch ( IOException e )
-        {
-            throw new RunException( "An error occurred while disposing server resources: %s", e.getMessage() );
-        }
         finally
         {
-            try
-            {
-                if ( server != null && server.isOpen() )
-                {
-                    server.close();
-                }
-            }
-            catch ( IOException e )
-            {
-                throw new RunException( "An error occurred while disposing server resources: %s", e.getMessage() );
-            }
-            finally
-            {
-                requestsExecutor.shutdown();
-                sessionManager.shutDown();
-
-                requestsExecutor = null;
-                server = null;
-                selector = null;
-                dispatcher = null;
-                sessionManager = null;
-
-                logger.info( "Done! Server is now stopped. Bye!" );
-            }
+            dispose();
         }
     }
 
@@ -291,151 +421,74 @@ public final class SimpleHttpServer
 
         socketChannel.configureBlocking( false );
 
-        Socket socket = socketChannel.socket();
-
         if ( logger.isInfoEnabled() )
         {
-            logger.info( "Accepting new request from {}", socket.getInetAddress().getHostAddress() );
+            logger.info( "Accepting new request from {}", socketChannel.socket().getInetAddress().getHostAddress() );
         }
 
-        switchToRead( socketChannel, socket );
-    }
-
-    private void switchToRead( SocketChannel socketChannel, Socket socket )
-        throws IOException
-    {
-        socketChannel.register( selector, OP_READ, new RequestStreamingParser( socket.getInetAddress().getHostAddress(),
-                                                                               socket.getLocalAddress().getHostName(),
-                                                                               socket.getLocalPort() ) );
+        eventLoops[nextEventLoop].register( socketChannel );
+        nextEventLoop = ( nextEventLoop + 1 ) % eventLoops.length;
     }
 
-    private void read( SelectionKey key, Iterator<SelectionKey> keys )
-        throws IOException
+    private void dispose()
+        throws RunException
     {
-        SocketChannel serverChannel = (SocketChannel) key.channel();
-
-        RequestStreamingParser requestParser = (RequestStreamingParser) key.attachment();
+        logger.info( "Server is shutting down..." );
 
-        ByteBuffer data = allocate( 100 );
+        for ( EventLoop eventLoop : eventLoops )
+        {
+            eventLoop.shutdown();
+        }
 
-        try
+        for ( Thread eventLoopThread : eventLoopThreads )
         {
-            push: while ( serverChannel.read( data ) != -1 && !requestParser.isRequestMessageComplete() )
+            try
             {
-                data.flip();
-
-                try
-                {
-                    requestParser.onRequestPartRead( data );
-                }
-                catch ( RequestParseException e )
-                {
-                    Response response = newResponse();
-                    response.setStatus( BAD_REQUEST );
-                    keys.remove();
-
-                    try
-                    {
-                        new ResponseSerializer( key ).serialize( response );
-                    }
-                    catch ( IOException ioe )
-                    {
-                        key.cancel();
-
-                        logger.error( "Impossible to stream Response to the client", e );
-                    }
-
-                    break push;
-                }
-
-                data.clear();
+                eventLoopThread.join();
             }
-
-            if ( requestParser.isRequestMessageComplete() )
+            catch ( InterruptedException e )
             {
-                keys.remove();
-                key.interestOps( 0 );
-
-                Request request = requestParser.getParsedRequest();
-
-                boolean keepAlive = HTTP_11.equals( request.getProtocolVersion() )
-                                || ( request.getHeaders().contains( CONNECTION )
-                                     && KEEP_ALIVE.equals( request.getHeaders().getFirstValue( CONNECTION ) ) );
-                if ( keepAlive )
-                {
-                    Socket socket = serverChannel.socket();
-                    socket.setKeepAlive( true );
-                    socket.setSoTimeout( keepAliveTimeOut );
-                }
+                currentThread().interrupt();
+            }
+        }
 
-                requestsExecutor.execute( new ProtocolProcessor( sessionManager, dispatcher, request, key ) );
+        try
+        {
+            if ( selector != null && selector.isOpen() )
+            {
+                selector.close();
             }
         }
         catch ( IOException e )
         {
-            Response response = newResponse();
-            response.setStatus( INTERNAL_SERVER_ERROR );
-            keys.remove();
-
+            throw new RunException( "An error occurred while disposing server resources: %s", e.getMessage() );
+        }
+        finally
+        {
             try
             {
-                new ResponseSerializer( key ).serialize( response );
+                if ( server != null && server.isOpen() )
+                {
+                    server.close();
+                }
             }
-            catch ( IOException ioe )
+            catch ( IOException e )
             {
-                key.cancel();
-
-                logger.error( "Impossible to stream Response to the client", e );
+                throw new RunException( "An error occurred while disposing server resources: %s", e.getMessage() );
             }
-        }
-    }
-
-    private void write( SelectionKey key )
-        throws IOException
-    {
-        SocketChannel serverChannel = (SocketChannel) key.channel();
-
-        @SuppressWarnings( "unchecked" ) // type is driven by the ProtocolProcessor
-        Queue<ByteBuffer> responseBuffers = ( Queue<ByteBuffer> ) key.attachment();
-
-        ByteBuffer current = responseBuffers.poll();
-
-        if ( current != null )
-        {
-            if ( EOM == current )
+            finally
             {
-                Socket socket = serverChannel.socket();
-
-                if ( logger.isInfoEnabled() )
-                {
-                    logger.info( "Request with {} satisfied.", socket.getInetAddress().getHostAddress() );
-                }
-
-                if ( socket.getKeepAlive() )
-                {
-                    if ( logger.isInfoEnabled() )
-                    {
-                        logger.info( "Connection with {} will kept alive", socket.getInetAddress().getHostAddress() );
-                    }
+                requestsExecutor.shutdown();
+                sessionManager.shutDown();
 
-                    switchToRead( serverChannel, socket );
-                }
-                else
-                {
-                    if ( logger.isInfoEnabled() )
-                    {
-                        logger.info( "Terminating connection with {}", socket.getInetAddress().getHostAddress() );
-                    }
+                requestsExecutor = null;
+                server = null;
+                selector = null;
+                eventLoops = null;
+                eventLoopThreads = null;
+                sessionManager = null;
 
-                    socket.close();
-                    key.cancel();
-                }
-            }
-            else
-            {
-                serverChannel.write( current );
-                // free the memory
-                current.clear();
+                logger.info( "Done! Server is now stopped. Bye!" );
             }
         }
     }
@@ -453,6 +506,13 @@ public final class SimpleHttpServer
         }
 
         currentStatus.set( STOPPED );
+
+        // unblock the acceptor, it will take care of disposing the resources
+        Selector acceptor = selector;
+        if ( acceptor != null )
+        {
+            acceptor.wakeup();
+        }
     }
 
     /**
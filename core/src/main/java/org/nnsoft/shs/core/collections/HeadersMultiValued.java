@@ -0,0 +1,423 @@
+package org.nnsoft.shs.core.collections;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static java.util.Arrays.copyOf;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableSet;
+import static org.nnsoft.shs.core.collections.Indexes.checkIndex;
+import static org.nnsoft.shs.lang.Preconditions.checkArgument;
+
+import java.lang.reflect.Field;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.nnsoft.shs.collections.EntryVisitor;
+import org.nnsoft.shs.collections.MultiValued;
+import org.nnsoft.shs.http.Headers;
+
+/**
+ * A {@link MultiValued} specialized for HTTP headers, where names are case-insensitive.
+ *
+ * Headers are stored in parallel arrays of names, values and hashes of the lowercased names,
+ * in the order they have been added; lookups compare the hashes first, then the names ignoring the case.
+ * Names that match the {@link Headers} constants are replaced by the constants themselves,
+ * so the well known headers are found by identity.
+ */
+public final class HeadersMultiValued
+    implements MultiValued<String, String>
+{
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The {@link Headers} constants, in an open-addressing table indexed by the case-insensitive hash.
+     */
+    private static final String[] KNOWN_NAMES;
+
+    /**
+     * The {@link Headers} constants, in an open-addressing table indexed by {@link String#hashCode()},
+     * so names spelled as the constants are resolved without hashing them again.
+     */
+    private static final String[] EXACT_NAMES;
+
+    /**
+     * The case-insensitive hashes of the {@link #EXACT_NAMES}.
+     */
+    private static final int[] EXACT_HASHES;
+
+    static
+    {
+        List<String> knownNames = new ArrayList<String>();
+        for ( Field field : Headers.class.getFields() )
+        {
+            if ( String.class == field.getType() )
+            {
+                try
+                {
+                    knownNames.add( (String) field.get( null ) );
+                }
+                catch ( IllegalAccessException e )
+                {
+                    // interfaces fields are always public
+                }
+            }
+        }
+
+        KNOWN_NAMES = new String[Integer.highestOneBit( knownNames.size() ) << 2];
+        for ( String knownName : knownNames )
+        {
+            int index = hashIgnoreCase( knownName ) & ( KNOWN_NAMES.length - 1 );
+            while ( KNOWN_NAMES[index] != null )
+            {
+                index = ( index + 1 ) & ( KNOWN_NAMES.length - 1 );
+            }
+            KNOWN_NAMES[index] = knownName;
+        }
+
+        EXACT_NAMES = new String[KNOWN_NAMES.length];
+        EXACT_HASHES = new int[KNOWN_NAMES.length];
+        for ( String knownName : knownNames )
+        {
+            int index = knownName.hashCode() & ( EXACT_NAMES.length - 1 );
+            while ( EXACT_NAMES[index] != null )
+            {
+                index = ( index + 1 ) & ( EXACT_NAMES.length - 1 );
+            }
+            EXACT_NAMES[index] = knownName;
+            EXACT_HASHES[index] = hashIgnoreCase( knownName );
+        }
+    }
+
+    private String[] names = new String[INITIAL_CAPACITY];
+
+    private String[] values = new String[INITIAL_CAPACITY];
+
+    private int[] hashes = new int[INITIAL_CAPACITY];
+
+    private int size;
+
+    /**
+     * Allows adding a header in the data structure.
+     *
+     * @param name the non null header name
+     * @param value the header value
+     * @return this data structure instance
+     */
+    public HeadersMultiValued addValue( String name, String value )
+    {
+        checkArgument( name != null, "null key not admitted" );
+
+        if ( size == names.length )
+        {
+            names = copyOf( names, size << 1 );
+            values = copyOf( values, size << 1 );
+            hashes = copyOf( hashes, size << 1 );
+        }
+
+        int exactIndex = exactIndexOf( name );
+        int hash;
+        if ( exactIndex >= 0 )
+        {
+            hash = EXACT_HASHES[exactIndex];
+            name = EXACT_NAMES[exactIndex];
+        }
+        else
+        {
+            hash = hashIgnoreCase( name );
+            name = intern( name, hash );
+        }
+
+        names[size] = name;
+        values[size] = value;
+        hashes[size] = hash;
+        size++;
+
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean contains( String key )
+    {
+        checkArgument( key != null, "null key not admitted" );
+        return indexOf( key, hash( key ), 0 ) >= 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getFirstValue( String key )
+    {
+        checkArgument( key != null, "null key not admitted" );
+        int index = indexOf( key, hash( key ), 0 );
+        return index >= 0 ? values[index] : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<String> getValues( String key )
+    {
+        checkArgument( key != null, "null key not admitted" );
+        int hash = hash( key );
+        int index = indexOf( key, hash, 0 );
+        if ( index < 0 )
+        {
+            return null;
+        }
+
+        List<String> keyValues = new ArrayList<String>( 2 );
+        for ( ; index >= 0; index = indexOf( key, hash, index + 1 ) )
+        {
+            keyValues.add( values[index] );
+        }
+        return unmodifiableList( keyValues );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Set<String> getAllKeys()
+    {
+        Set<String> keys = new LinkedHashSet<String>();
+        for ( int i = 0; i < size; i++ )
+        {
+            if ( isFirst( i ) )
+            {
+                keys.add( names[i] );
+            }
+        }
+        return unmodifiableSet( keys );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Iterable<Entry<String, List<String>>> getAllEntries()
+    {
+        List<Entry<String, List<String>>> entries = new ArrayList<Entry<String, List<String>>>( size );
+        for ( int i = 0; i < size; i++ )
+        {
+            if ( isFirst( i ) )
+            {
+                entries.add( new SimpleImmutableEntry<String, List<String>>( names[i], getValues( names[i] ) ) );
+            }
+        }
+        return unmodifiableList( entries );
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Headers are visited in the order they have been added.
+     */
+    public void forEach( EntryVisitor<? super String, ? super String> visitor )
+    {
+        checkArgument( visitor != null, "null visitor not admitted" );
+        for ( int i = 0; i < size; i++ )
+        {
+            visitor.visit( names[i], values[i] );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getKey( int index )
+    {
+        checkIndex( index, size );
+        return names[index];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getValue( int index )
+    {
+        checkIndex( index, size );
+        return values[index];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode()
+    {
+        int hashCode = 1;
+        for ( int i = 0; i < size; i++ )
+        {
+            hashCode = 31 * ( 31 * hashCode + hashes[i] ) + ( values[i] == null ? 0 : values[i].hashCode() );
+        }
+        return hashCode;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals( Object obj )
+    {
+        if ( this == obj )
+        {
+            return true;
+        }
+
+        if ( obj == null || getClass() != obj.getClass() )
+        {
+            return false;
+        }
+
+        HeadersMultiValued other = (HeadersMultiValued) obj;
+        if ( size != other.size )
+        {
+            return false;
+        }
+        for ( int i = 0; i < size; i++ )
+        {
+            if ( !names[i].equalsIgnoreCase( other.names[i] )
+                 || ( values[i] == null ? other.values[i] != null : !values[i].equals( other.values[i] ) ) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder( "{" );
+        for ( int i = 0; i < size; i++ )
+        {
+            if ( i > 0 )
+            {
+                builder.append( ", " );
+            }
+            builder.append( names[i] ).append( '=' ).append( values[i] );
+        }
+        return builder.append( '}' ).toString();
+    }
+
+    // internal utilities
+
+    private int indexOf( String key, int hash, int from )
+    {
+        for ( int i = from; i < size; i++ )
+        {
+            if ( names[i] == key || ( hashes[i] == hash && names[i].equalsIgnoreCase( key ) ) )
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks the header at the given index is the first one with its name.
+     */
+    private boolean isFirst( int index )
+    {
+        return indexOf( names[index], hashes[index], 0 ) == index;
+    }
+
+    /**
+     * Returns the index of the {@link Headers} constant equal to the given name in the {@link #EXACT_NAMES}, -1 if not found.
+     */
+    private static int exactIndexOf( String name )
+    {
+        for ( int index = name.hashCode() & ( EXACT_NAMES.length - 1 );
+              EXACT_NAMES[index] != null;
+              index = ( index + 1 ) & ( EXACT_NAMES.length - 1 ) )
+        {
+            if ( EXACT_NAMES[index].equals( name ) )
+            {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the case-insensitive hash of the given name, precomputed for the {@link Headers} constants.
+     */
+    private static int hash( String name )
+    {
+        int exactIndex = exactIndexOf( name );
+        return exactIndex >= 0 ? EXACT_HASHES[exactIndex] : hashIgnoreCase( name );
+    }
+
+    /**
+     * Returns the {@link Headers} constant with the given name, ignoring the case, the name itself if not found.
+     */
+    private static String intern( String name, int hash )
+    {
+        for ( int index = hash & ( KNOWN_NAMES.length - 1 );
+              KNOWN_NAMES[index] != null;
+              index = ( index + 1 ) & ( KNOWN_NAMES.length - 1 ) )
+        {
+            if ( KNOWN_NAMES[index] == name || KNOWN_NAMES[index].equalsIgnoreCase( name ) )
+            {
+                return KNOWN_NAMES[index];
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Computes the hash of the lowercased name, without creating the lowercased String.
+     */
+    private static int hashIgnoreCase( String name )
+    {
+        int hash = 0;
+        for ( int i = 0; i < name.length(); i++ )
+        {
+            char c = name.charAt( i );
+            if ( c >= 'A' && c <= 'Z' )
+            {
+                c += 'a' - 'A';
+            }
+            hash = 31 * hash + c;
+        }
+        return hash;
+    }
+
+}
@@ -23,25 +23,28 @@ package org.nnsoft.shs.core.collections;
  * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
+import static java.util.Arrays.copyOf;
 import static java.util.Collections.unmodifiableList;
 import static java.util.Collections.unmodifiableSet;
-import static org.nnsoft.shs.lang.Objects.eq;
-import static org.nnsoft.shs.lang.Objects.hash;
+import static org.nnsoft.shs.core.collections.Indexes.checkIndex;
 import static org.nnsoft.shs.lang.Preconditions.checkArgument;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import org.nnsoft.shs.collections.EntryVisitor;
 import org.nnsoft.shs.collections.MultiValued;
 
 /**
  * An in-memory based {@link MultiValued} implementation.
  *
+ * Key/value pairs are stored once, in parallel arrays of keys and values, in the order they have been added;
+ * query and form parameters are usually a handful, so lookups scan the keys rather than paying a map.
+ *
  * @param <K> the type of keys maintained by this data structure.
  * @param <V> the type of mapped values.
  */
@@ -49,7 +52,19 @@ public final class SimpleMultiValued<K, V>
     implements MultiValued<K, V>
 {
 
-    private final Map<K, List<V>> adaptedMap = new HashMap<K, List<V>>();
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * The keys of the key/value pairs, in the order they have been added.
+     */
+    private Object[] keys = new Object[INITIAL_CAPACITY];
+
+    /**
+     * The values of the key/value pairs, in the order they have been added.
+     */
+    private Object[] values = new Object[INITIAL_CAPACITY];
+
+    private int size;
 
     /**
      * {@inheritDoc}
@@ -57,7 +72,7 @@ public final class SimpleMultiValued<K, V>
     public boolean contains( K key )
     {
         checkArgument( key != null, "null key not admitted" );
-        return adaptedMap.containsKey( key );
+        return indexOf( key, 0 ) >= 0;
     }
 
     /**
@@ -66,12 +81,12 @@ public final class SimpleMultiValued<K, V>
     public V getFirstValue( K key )
     {
         checkArgument( key != null, "null key not admitted" );
-        List<V> storedValues = adaptedMap.get( key );
-        if ( storedValues == null || storedValues.isEmpty() )
+        int index = indexOf( key, 0 );
+        if ( index < 0 )
         {
             return null;
         }
-        return storedValues.iterator().next();
+        return getValue( index );
     }
 
     /**
@@ -80,12 +95,12 @@ public final class SimpleMultiValued<K, V>
     public List<V> getValues( K key )
     {
         checkArgument( key != null, "null key not admitted" );
-        List<V> storedValues = adaptedMap.get( key );
-        if ( storedValues != null )
+        int index = indexOf( key, 0 );
+        if ( index < 0 )
         {
-            return unmodifiableList( storedValues );
+            return null;
         }
-        return null;
+        return unmodifiableList( valuesOf( key, index ) );
     }
 
     /**
@@ -98,160 +113,208 @@ public final class SimpleMultiValued<K, V>
     public SimpleMultiValued<K, V> addValue( K key, V value )
     {
         checkArgument( key != null, "null key not admitted" );
-        List<V> storedValues = adaptedMap.get( key );
-        if ( storedValues == null )
+
+        if ( size == keys.length )
         {
-            storedValues = new LinkedList<V>();
-            adaptedMap.put( key, storedValues );
+            keys = copyOf( keys, size << 1 );
+            values = copyOf( values, size << 1 );
         }
+        keys[size] = key;
+        values[size] = value;
+        size++;
 
-        storedValues.add( value );
         return this;
     }
 
     /**
      * {@inheritDoc}
+     *
+     * Keys are listed in the order they have been added the first time.
      */
     public Set<K> getAllKeys()
     {
-        return unmodifiableSet( adaptedMap.keySet() );
+        Set<K> allKeys = new LinkedHashSet<K>();
+        for ( int i = 0; i < size; i++ )
+        {
+            allKeys.add( getKey( i ) );
+        }
+        return unmodifiableSet( allKeys );
     }
 
     /**
      * {@inheritDoc}
+     *
+     * Keys are listed in the order they have been added the first time.
      */
     public Iterable<Entry<K, List<V>>> getAllEntries()
     {
-        return new Iterable<Map.Entry<K, List<V>>>()
+        List<Entry<K, List<V>>> entries = new ArrayList<Entry<K, List<V>>>();
+        for ( int i = 0; i < size; i++ )
         {
-
-            public Iterator<Entry<K, List<V>>> iterator()
+            K key = getKey( i );
+            if ( isFirst( key, i ) )
             {
-                return new UnmodifiableIterator<K, V>( adaptedMap.entrySet().iterator() );
+                List<V> keyValues = unmodifiableList( valuesOf( key, i ) );
+                entries.add( new SimpleImmutableEntry<K, List<V>>( key, keyValues ) );
             }
-
-        };
+        }
+        return unmodifiableList( entries );
     }
 
     /**
      * {@inheritDoc}
+     *
+     * Key/value pairs are visited in the order they have been added.
      */
-    @Override
-    public int hashCode()
+    public void forEach( EntryVisitor<? super K, ? super V> visitor )
     {
-        return hash( 1, 31, adaptedMap );
+        checkArgument( visitor != null, "null visitor not admitted" );
+        for ( int i = 0; i < size; i++ )
+        {
+            visitor.visit( getKey( i ), getValue( i ) );
+        }
     }
 
     /**
      * {@inheritDoc}
      */
-    @Override
-    public boolean equals( Object obj )
+    public int size()
     {
-        if ( this == obj )
-        {
-            return true;
-        }
+        return size;
+    }
 
-        if ( obj == null || getClass() != obj.getClass() )
-        {
-            return false;
-        }
+    /**
+     * {@inheritDoc}
+     */
+    @SuppressWarnings( "unchecked" ) // only K instances are stored
+    public K getKey( int index )
+    {
+        checkIndex( index, size );
+        return (K) keys[index];
+    }
 
-        SimpleMultiValued<?, ?> other = (SimpleMultiValued<?, ?>) obj;
-        return eq( adaptedMap, other.adaptedMap );
+    /**
+     * {@inheritDoc}
+     */
+    @SuppressWarnings( "unchecked" ) // only V instances are stored
+    public V getValue( int index )
+    {
+        checkIndex( index, size );
+        return (V) values[index];
     }
 
     /**
      * {@inheritDoc}
+     *
+     * As for a map of keys to lists of values, the order of different keys does not matter.
      */
     @Override
-    public String toString()
+    public int hashCode()
     {
-        return adaptedMap.toString();
+        int hashCode = 0;
+        for ( int i = 0; i < size; i++ )
+        {
+            K key = getKey( i );
+            if ( isFirst( key, i ) )
+            {
+                hashCode += key.hashCode() ^ valuesOf( key, i ).hashCode();
+            }
+        }
+        return hashCode;
     }
 
-    // internal collections utilities
-
     /**
-     * An iterator implementation from which is impossible remove elements.
+     * {@inheritDoc}
+     *
+     * As for a map of keys to lists of values, the order of different keys does not matter,
+     * while the values of the same key are compared in the order they have been added.
      */
-    private static final class UnmodifiableIterator<K, V>
-        implements Iterator<Entry<K, List<V>>>
+    @Override
+    public boolean equals( Object obj )
     {
-
-        private final Iterator<Entry<K, List<V>>> adapted;
-
-        public UnmodifiableIterator( Iterator<Entry<K, List<V>>> adapted )
+        if ( this == obj )
         {
-            this.adapted = adapted;
+            return true;
         }
 
-        /**
-         * {@inheritDoc}
-         */
-        public boolean hasNext()
+        if ( obj == null || getClass() != obj.getClass() )
         {
-            return adapted.hasNext();
+            return false;
         }
 
-        /**
-         * {@inheritDoc}
-         */
-        public Entry<K, List<V>> next()
+        @SuppressWarnings( "unchecked" ) // keys are compared via equals() only
+        SimpleMultiValued<K, ?> other = (SimpleMultiValued<K, ?>) obj;
+        if ( size != other.size )
         {
-            return new UnmodifiableEntry<K, V>( adapted.next() );
+            return false;
         }
 
-        /**
-         * {@inheritDoc}
-         */
-        public void remove()
+        for ( int i = 0; i < size; i++ )
         {
-            throw new UnsupportedOperationException();
+            K key = getKey( i );
+            if ( isFirst( key, i ) )
+            {
+                int otherIndex = other.indexOf( key, 0 );
+                if ( otherIndex < 0 || !valuesOf( key, i ).equals( other.valuesOf( key, otherIndex ) ) )
+                {
+                    return false;
+                }
+            }
         }
-
+        return true;
     }
 
     /**
-     * An entry implementation from which is impossible replace the value
-     * and value itself is unmodifiable.
+     * {@inheritDoc}
      */
-    private static final class UnmodifiableEntry<K, V>
-        implements Entry<K, List<V>>
+    @Override
+    public String toString()
     {
-
-        private final Entry<K, List<V>> adapted;
-
-        public UnmodifiableEntry( Entry<K, List<V>> adapted )
+        StringBuilder builder = new StringBuilder( "{" );
+        boolean first = true;
+        for ( Entry<K, List<V>> entry : getAllEntries() )
         {
-            this.adapted = adapted;
+            if ( !first )
+            {
+                builder.append( ", " );
+            }
+            builder.append( entry.getKey() ).append( '=' ).append( entry.getValue() );
+            first = false;
         }
+        return builder.append( '}' ).toString();
+    }
 
-        /**
-         * {@inheritDoc}
-         */
-        public K getKey()
-        {
-            return adapted.getKey();
-        }
+    // internal utilities
 
-        /**
-         * {@inheritDoc}
-         */
-        public List<V> getValue()
+    private int indexOf( Object key, int from )
+    {
+        for ( int i = from; i < size; i++ )
         {
-            return unmodifiableList( adapted.getValue() );
+            if ( keys[i] == key || keys[i].equals( key ) )
+            {
+                return i;
+            }
         }
+        return -1;
+    }
+
+    private boolean isFirst( K key, int index )
+    {
+        return indexOf( key, 0 ) == index;
+    }
 
-        /**
-         * {@inheritDoc}
-         */
-        public List<V> setValue( List<V> value )
+    /**
+     * Collects the values of the given key, starting from its first occurrence.
+     */
+    @SuppressWarnings( "unchecked" ) // only V instances are stored
+    private List<V> valuesOf( Object key, int first )
+    {
+        List<V> keyValues = new ArrayList<V>();
+        for ( int i = first; i >= 0; i = indexOf( key, i + 1 ) )
         {
-            throw new UnsupportedOperationException();
+            keyValues.add( (V) values[i] );
         }
-
+        return keyValues;
     }
 
 }
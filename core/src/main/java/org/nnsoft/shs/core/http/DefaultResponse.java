@@ -33,10 +33,11 @@ import java.util.Collection;
 import java.util.LinkedList;
 
 import org.nnsoft.shs.collections.MultiValued;
-import org.nnsoft.shs.core.collections.SimpleMultiValued;
+import org.nnsoft.shs.core.collections.HeadersMultiValued;
 import org.nnsoft.shs.http.Cookie;
 import org.nnsoft.shs.http.Response;
 import org.nnsoft.shs.io.ResponseBodyWriter;
+import org.nnsoft.shs.io.SizedResponseBodyWriter;
 
 /**
  * Basic {@link Response} implementation.
@@ -55,7 +56,7 @@ final class DefaultResponse
 
     private String protocolVersion = DEFAULT_PROTOCOL_VERSION;
 
-    private final SimpleMultiValued<String, String> headers = new SimpleMultiValued<String, String>();
+    private final HeadersMultiValued headers = new HeadersMultiValued();
 
     private final Collection<Cookie> cookies = new LinkedList<Cookie>();
 
@@ -140,7 +141,7 @@ final class DefaultResponse
      * NO-OP {@link ResponseBodyWriter} implementation.
      */
     private static final class NoOpResponseBodyWriter
-        implements ResponseBodyWriter
+        implements SizedResponseBodyWriter
     {
 
         @Override
@@ -149,6 +150,14 @@ final class DefaultResponse
             return null;
         }
 
+        /**
+         * {@inheritDoc}
+         */
+        public long contentLength()
+        {
+            return 0;
+        }
+
         /**
          * {@inheritDoc}
          */
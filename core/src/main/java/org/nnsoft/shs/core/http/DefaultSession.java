@@ -24,11 +24,11 @@ package org.nnsoft.shs.core.http;
  */
 
 import static java.lang.String.format;
-import static java.util.UUID.randomUUID;
 import static org.nnsoft.shs.lang.Preconditions.checkArgument;
 
 import java.util.Date;
-import java.util.UUID;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -41,21 +41,55 @@ final class DefaultSession
     implements Session
 {
 
-    private final UUID id = randomUUID();
+    private final String id;
 
     private final ConcurrentMap<String, Object> attributes = new ConcurrentHashMap<String, Object>();
 
-    private final Date creationTime = new Date();
+    private final Date creationTime;
 
-    private Date lastAccessedTime = creationTime;
+    private volatile long lastAccessedTime;
 
-    private boolean isNew = true;
+    private volatile boolean isNew;
+
+    private volatile boolean modified;
+
+    /**
+     * Creates a new session with the given identifier.
+     *
+     * @param id the session identifier
+     */
+    public DefaultSession( String id )
+    {
+        checkArgument( id != null, "Null session id not allowed" );
+        this.id = id;
+        creationTime = new Date();
+        lastAccessedTime = creationTime.getTime();
+        isNew = true;
+    }
+
+    /**
+     * Restores an existing session.
+     *
+     * @param id the session identifier
+     * @param creationTime the time when the session was created, in milliseconds
+     * @param lastAccessedTime the last time the client sent a request associated with the session, in milliseconds
+     * @param attributes the session attributes
+     */
+    public DefaultSession( String id, long creationTime, long lastAccessedTime, Map<String, Object> attributes )
+    {
+        checkArgument( id != null, "Null session id not allowed" );
+        checkArgument( attributes != null, "Null session attributes not allowed" );
+        this.id = id;
+        this.creationTime = new Date( creationTime );
+        this.lastAccessedTime = lastAccessedTime;
+        this.attributes.putAll( attributes );
+    }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public UUID getId()
+    public String getId()
     {
         return id;
     }
@@ -82,7 +116,10 @@ final class DefaultSession
     @Override
     public void removeAttribute( String name )
     {
-        attributes.remove( name );
+        if ( attributes.remove( name ) != null )
+        {
+            modified = true;
+        }
     }
 
     /**
@@ -93,6 +130,51 @@ final class DefaultSession
     {
         checkArgument( name != null, "Null attribute name not allowed" );
         attributes.put( name, value );
+        modified = true;
+    }
+
+    /**
+     * Returns a snapshot of the session attributes.
+     *
+     * @return a snapshot of the session attributes.
+     */
+    public Map<String, Object> getAttributes()
+    {
+        return new HashMap<String, Object>( attributes );
+    }
+
+    /**
+     * Checks if the session attributes have been set or removed.
+     *
+     * @return true if the session attributes have been set or removed, false otherwise.
+     */
+    public boolean isModified()
+    {
+        return modified;
+    }
+
+    /**
+     * Clears the modified flag.
+     *
+     * @return true if the session attributes had been set or removed, false otherwise.
+     */
+    public boolean clearModified()
+    {
+        boolean wasModified = modified;
+        modified = false;
+        return wasModified;
+    }
+
+    /**
+     * Replaces the session attributes with the given ones, without marking the session as modified;
+     * the attributes are never seen missing while replacing them.
+     *
+     * @param attributes the new session attributes
+     */
+    public void replaceAttributes( Map<String, Object> attributes )
+    {
+        this.attributes.putAll( attributes );
+        this.attributes.keySet().retainAll( attributes.keySet() );
     }
 
     /**
@@ -106,10 +188,12 @@ final class DefaultSession
 
     /**
      * Updates the session LastAccessedTime.
+     *
+     * @param now the current time, in milliseconds
      */
-    public synchronized void updateLastAccessedTime()
+    public void updateLastAccessedTime( long now )
     {
-        lastAccessedTime = new Date();
+        lastAccessedTime = now;
         isNew = false;
     }
 
@@ -117,7 +201,17 @@ final class DefaultSession
      * {@inheritDoc}
      */
     @Override
-    public synchronized Date getLastAccessedTime()
+    public Date getLastAccessedTime()
+    {
+        return new Date( lastAccessedTime );
+    }
+
+    /**
+     * Returns the last time the client sent a request associated with this session, in milliseconds.
+     *
+     * @return the last time the client sent a request associated with this session, in milliseconds.
+     */
+    public long getLastAccessedTimeMillis()
     {
         return lastAccessedTime;
     }
@@ -126,7 +220,7 @@ final class DefaultSession
      * {@inheritDoc}
      */
     @Override
-    public synchronized boolean isNew()
+    public boolean isNew()
     {
         return isNew;
     }
@@ -135,7 +229,7 @@ final class DefaultSession
     public String toString()
     {
         return format( "Session[id=%s, attributes=%s, creationTime=%s, lastAccessedTime=%s, isNew=%s]",
-                       id, attributes, creationTime, lastAccessedTime, isNew );
+                       id, attributes, creationTime, getLastAccessedTime(), isNew );
     }
 
 }
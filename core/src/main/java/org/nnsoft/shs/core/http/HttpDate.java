@@ -0,0 +1,217 @@
+package org.nnsoft.shs.core.http;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static java.lang.System.currentTimeMillis;
+
+/**
+ * Formats dates as required by HTTP, i.e. {@code Sun, 06 Nov 1994 08:49:37 GMT} (RFC 1123),
+ * without {@link java.text.SimpleDateFormat}, that is neither cheap nor thread safe.
+ *
+ * The current date is formatted and encoded at most once per second, the first time it is read
+ * in that second, and is shared by all the threads without locking.
+ */
+public final class HttpDate
+{
+
+    private static final char[][] DAYS_OF_WEEK = {
+        "Thu".toCharArray(), "Fri".toCharArray(), "Sat".toCharArray(), "Sun".toCharArray(),
+        "Mon".toCharArray(), "Tue".toCharArray(), "Wed".toCharArray()
+    };
+
+    private static final char[][] MONTHS = {
+        "Jan".toCharArray(), "Feb".toCharArray(), "Mar".toCharArray(), "Apr".toCharArray(),
+        "May".toCharArray(), "Jun".toCharArray(), "Jul".toCharArray(), "Aug".toCharArray(),
+        "Sep".toCharArray(), "Oct".toCharArray(), "Nov".toCharArray(), "Dec".toCharArray()
+    };
+
+    private static final int LENGTH = "Sun, 06 Nov 1994 08:49:37 GMT".length();
+
+    private static final long SECONDS_PER_DAY = 24 * 60 * 60;
+
+    private static volatile CurrentDate current = new CurrentDate( Long.MIN_VALUE, null, null );
+
+    /**
+     * Hidden constructor, this class must not be instantiated.
+     */
+    private HttpDate()
+    {
+        // do nothing
+    }
+
+    /**
+     * Returns the current date, refreshed once per second.
+     *
+     * @return the current date, refreshed once per second.
+     */
+    public static String currentDate()
+    {
+        return current().value;
+    }
+
+    /**
+     * Returns the ASCII bytes of the current date, refreshed once per second;
+     * the returned array is shared and must not be modified.
+     *
+     * @return the ASCII bytes of the current date.
+     */
+    public static byte[] currentEncodedDate()
+    {
+        return current().encoded;
+    }
+
+    /**
+     * Returns the ASCII bytes of the given date if it is the instance returned by {@link #currentDate()}
+     * in the current second, so it doesn't need to be encoded again.
+     *
+     * @param date the date has to be encoded
+     * @return the shared ASCII bytes of the given date, null if it is not the current date.
+     */
+    public static byte[] getEncoded( String date )
+    {
+        CurrentDate currentDate = current;
+        return currentDate.value == date ? currentDate.encoded : null;
+    }
+
+    /**
+     * Formats the given time.
+     *
+     * @param millis the milliseconds since the epoch
+     * @return the formatted date.
+     */
+    public static String format( long millis )
+    {
+        return new String( toChars( millis ) );
+    }
+
+    private static CurrentDate current()
+    {
+        long now = currentTimeMillis();
+        long second = now / 1000;
+
+        CurrentDate currentDate = current;
+        if ( currentDate.second != second )
+        {
+            // threads racing at the turn of the second format the same value, the last one wins
+            char[] chars = toChars( now );
+            byte[] encoded = new byte[chars.length];
+            for ( int i = 0; i < chars.length; i++ )
+            {
+                encoded[i] = (byte) chars[i];
+            }
+
+            currentDate = new CurrentDate( second, new String( chars ), encoded );
+            current = currentDate;
+        }
+        return currentDate;
+    }
+
+    private static char[] toChars( long millis )
+    {
+        long seconds = millis / 1000;
+        if ( millis % 1000 < 0 )
+        {
+            seconds--;
+        }
+        long days = seconds / SECONDS_PER_DAY;
+        int secondOfDay = (int) ( seconds % SECONDS_PER_DAY );
+        if ( secondOfDay < 0 )
+        {
+            days--;
+            secondOfDay += SECONDS_PER_DAY;
+        }
+
+        // converts the days since the epoch to the proleptic Gregorian calendar date, in eras of 400 years
+        long shifted = days + 719468; // days from 0000-03-01
+        long era = ( shifted >= 0 ? shifted : shifted - 146096 ) / 146097;
+        int dayOfEra = (int) ( shifted - era * 146097 );
+        int yearOfEra = ( dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096 ) / 365;
+        int dayOfYear = dayOfEra - ( 365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100 );
+        int shiftedMonth = ( 5 * dayOfYear + 2 ) / 153; // March is 0
+        int dayOfMonth = dayOfYear - ( 153 * shiftedMonth + 2 ) / 5 + 1;
+        int month = shiftedMonth < 10 ? shiftedMonth + 2 : shiftedMonth - 10; // January is 0
+        long year = yearOfEra + era * 400 + ( month < 2 ? 1 : 0 );
+
+        int dayOfWeek = (int) ( days % 7 );
+        if ( dayOfWeek < 0 )
+        {
+            dayOfWeek += 7;
+        }
+
+        char[] chars = new char[LENGTH];
+        copy( DAYS_OF_WEEK[dayOfWeek], chars, 0 );
+        chars[3] = ',';
+        chars[4] = ' ';
+        twoDigits( dayOfMonth, chars, 5 );
+        chars[7] = ' ';
+        copy( MONTHS[month], chars, 8 );
+        chars[11] = ' ';
+        twoDigits( (int) ( year / 100 ), chars, 12 );
+        twoDigits( (int) ( year % 100 ), chars, 14 );
+        chars[16] = ' ';
+        twoDigits( secondOfDay / 3600, chars, 17 );
+        chars[19] = ':';
+        twoDigits( secondOfDay / 60 % 60, chars, 20 );
+        chars[22] = ':';
+        twoDigits( secondOfDay % 60, chars, 23 );
+        chars[25] = ' ';
+        chars[26] = 'G';
+        chars[27] = 'M';
+        chars[28] = 'T';
+        return chars;
+    }
+
+    private static void copy( char[] source, char[] target, int offset )
+    {
+        System.arraycopy( source, 0, target, offset, source.length );
+    }
+
+    private static void twoDigits( int value, char[] target, int offset )
+    {
+        target[offset] = (char) ( '0' + value / 10 );
+        target[offset + 1] = (char) ( '0' + value % 10 );
+    }
+
+    /**
+     * The current date, immutable, formatted and encoded for the given second.
+     */
+    private static final class CurrentDate
+    {
+
+        final long second;
+
+        final String value;
+
+        final byte[] encoded;
+
+        public CurrentDate( long second, String value, byte[] encoded )
+        {
+            this.second = second;
+            this.value = value;
+            this.encoded = encoded;
+        }
+
+    }
+
+}
@@ -0,0 +1,245 @@
+package org.nnsoft.shs.core.http;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static java.lang.System.currentTimeMillis;
+import static org.nnsoft.shs.lang.Preconditions.checkArgument;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.nnsoft.shs.http.Request;
+import org.nnsoft.shs.http.Response;
+import org.nnsoft.shs.http.SessionIdGenerator;
+import org.slf4j.Logger;
+
+/**
+ * The {@link SessionManager} that keeps the HTTP {@link org.nnsoft.shs.http.Session}s off the heap,
+ * in a memory-mapped file, so they survive server restarts; the session cookie holds the session id only.
+ *
+ * Session attributes must be {@link java.io.Serializable}, sessions are restored only when first
+ * requested by the request handler and stored back only when modified.
+ */
+public final class MappedSessionManager
+    implements SessionManager
+{
+
+    /**
+     * The resolution of the sessions expiration, in milliseconds.
+     */
+    private static final long EXPIRATION_TICK = 1000;
+
+    private final Logger logger = getLogger( getClass() );
+
+    /**
+     * The file where sessions are stored.
+     */
+    private final MappedSessionStore sessionStore;
+
+    /**
+     * The generator of the new sessions identifiers.
+     */
+    private final SessionIdGenerator sessionIdGenerator;
+
+    /**
+     * The timer delegated to clean the expired sessions.
+     */
+    private final Timer sessionsCleaner = new Timer( true );
+
+    /**
+     * Creates a new sessions manager; sessions expire when not accessed for longer than the given max age.
+     *
+     * @param sessionMaxAge the sessions max age, in milliseconds
+     * @param sessionIdGenerator the generator of the new sessions identifiers
+     * @param storeFile the file where sessions are stored, reopened if already exists
+     * @param maxSessions the maximum number of sessions the store can hold
+     * @param maxSessionSize the maximum size of the serialized session attributes, in bytes
+     * @throws IOException if the sessions store cannot be opened
+     */
+    public MappedSessionManager( int sessionMaxAge,
+                                 SessionIdGenerator sessionIdGenerator,
+                                 File storeFile,
+                                 int maxSessions,
+                                 int maxSessionSize )
+        throws IOException
+    {
+        checkArgument( sessionIdGenerator != null, "Null session id generator not allowed" );
+        this.sessionIdGenerator = sessionIdGenerator;
+        sessionStore = new MappedSessionStore( storeFile, maxSessions, maxSessionSize, sessionMaxAge );
+
+        // the whole store is swept once per max age
+        int ticks = (int) Math.max( 1, sessionMaxAge / EXPIRATION_TICK );
+        int slotsPerTick = ( sessionStore.getSlotCount() + ticks - 1 ) / ticks;
+        sessionsCleaner.scheduleAtFixedRate( new SessionsExpirationTimerTask( sessionStore, slotsPerTick ),
+                                             EXPIRATION_TICK, EXPIRATION_TICK );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void manageSession( Request request )
+    {
+        MutableRequest mutableRequest = (MutableRequest) request;
+
+        // expiration slides even if the request handler doesn't ask for the session
+        String sessionId = mutableRequest.getRequestedSessionId();
+        if ( sessionId != null && sessionStore.touch( sessionId, currentTimeMillis() ) )
+        {
+            // attributes will be deserialized at the first request
+            mutableRequest.setSessionManager( this, sessionId );
+        }
+        else
+        {
+            // the session will be created at the first request
+            mutableRequest.setSessionManager( this );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DefaultSession restoreSession( String sessionId )
+    {
+        try
+        {
+            return sessionStore.get( sessionId, currentTimeMillis() );
+        }
+        catch ( IOException e )
+        {
+            logger.warn( "Session " + sessionId + " cannot be restored, ignoring it", e );
+            return null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DefaultSession createSession()
+    {
+        return new DefaultSession( sessionIdGenerator.generateSessionId() );
+    }
+
+    /**
+     * Stores the session, if created or modified while serving the request, and sends the session cookie
+     * to the client, if the session has been created.
+     *
+     * @param request the served HTTP request
+     * @param response the HTTP response will be pushed out.
+     * @throws IOException if the session cannot be stored.
+     */
+    @Override
+    public void commitSession( Request request, Response response )
+        throws IOException
+    {
+        if ( !( (MutableRequest) request ).hasSession() )
+        {
+            return;
+        }
+
+        DefaultSession session = (DefaultSession) request.getSession();
+
+        if ( session.isNew() || session.isModified() )
+        {
+            sessionStore.put( session, currentTimeMillis() );
+        }
+
+        if ( session.isNew() )
+        {
+            // no max age, sessions expiration slides while the client uses it
+            response.addCookie( new CookieBuilder()
+                                    .setDomain( request.getServerHost() )
+                                    .addPort( request.getServerPort() )
+                                    .setName( SESSION_NAME )
+                                    .setValue( session.getId() )
+                                    .setPath( "/" )
+                                    .build() );
+        }
+    }
+
+    /**
+     * Turns off the timer to clean the stored sessions and flushes them to the file, so they can be
+     * restored once restarted.
+     */
+    @Override
+    public void shutDown()
+    {
+        sessionsCleaner.cancel();
+
+        try
+        {
+            sessionStore.close();
+        }
+        catch ( IOException e )
+        {
+            logger.warn( "Sessions store cannot be flushed, sessions could not be restored", e );
+        }
+    }
+
+    /**
+     * A timer task to sweep the expired sessions, a slice of the store per tick.
+     */
+    private static final class SessionsExpirationTimerTask
+        extends TimerTask
+    {
+
+        /**
+         * The file where sessions are stored.
+         */
+        private final MappedSessionStore sessionStore;
+
+        /**
+         * The number of slots swept per tick.
+         */
+        private final int slotsPerTick;
+
+        /**
+         * Creates a new task to sweep the expired sessions.
+         *
+         * @param sessionStore the file where sessions are stored
+         * @param slotsPerTick the number of slots swept per tick
+         */
+        public SessionsExpirationTimerTask( MappedSessionStore sessionStore, int slotsPerTick )
+        {
+            this.sessionStore = sessionStore;
+            this.slotsPerTick = slotsPerTick;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run()
+        {
+            sessionStore.removeExpired( slotsPerTick, currentTimeMillis() );
+        }
+
+    }
+
+}
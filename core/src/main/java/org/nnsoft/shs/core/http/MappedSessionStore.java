@@ -0,0 +1,548 @@
+package org.nnsoft.shs.core.http;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static org.nnsoft.shs.core.io.IOUtils.closeQuietly;
+import static org.nnsoft.shs.lang.Preconditions.checkArgument;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Stores the HTTP sessions, serialized, in a memory-mapped file, so they live off the heap and
+ * survive restarts.
+ *
+ * The file is an open-addressing hash table of fixed-size slots, linearly probed; every slot holds
+ * the session id, its timestamps and its serialized attributes. Session ids must be ASCII strings.
+ *
+ * Expired sessions are swept a few slots at a time and removed shifting back the following
+ * sessions of the probing sequence, so lookups never walk over removed slots; slots of expired
+ * sessions not swept yet are reused when storing new sessions.
+ */
+final class MappedSessionStore
+{
+
+    private static final int MAGIC = 0x5348534D; // "SHSM"
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_LENGTH = 64;
+
+    private static final int SLOT_COUNT_OFFSET = 8;
+
+    private static final int SLOT_LENGTH_OFFSET = 12;
+
+    // slot layout
+
+    private static final byte EMPTY = 0;
+
+    private static final byte USED = 1;
+
+    private static final int STATE_OFFSET = 0;
+
+    private static final int ID_LENGTH_OFFSET = 1;
+
+    private static final int HASH_OFFSET = 4;
+
+    private static final int ID_OFFSET = 8;
+
+    private static final int MAX_ID_LENGTH = 64;
+
+    private static final int CREATION_TIME_OFFSET = ID_OFFSET + MAX_ID_LENGTH;
+
+    private static final int LAST_ACCESSED_TIME_OFFSET = CREATION_TIME_OFFSET + 8;
+
+    private static final int DATA_LENGTH_OFFSET = LAST_ACCESSED_TIME_OFFSET + 8;
+
+    private static final int DATA_OFFSET = DATA_LENGTH_OFFSET + 4;
+
+    private final RandomAccessFile file;
+
+    private final MappedByteBuffer buffer;
+
+    private final int slotCount;
+
+    private final int slotLength;
+
+    private final int sessionMaxAge;
+
+    /**
+     * Lookups only read the slots, while touches, stores and sweeps write them.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * The index of the next slot to sweep, guarded by the write lock.
+     */
+    private int sweepIndex;
+
+    /**
+     * Opens the sessions store, creating the file if doesn't exist yet.
+     *
+     * @param storeFile the file where sessions are stored
+     * @param maxSessions the maximum number of sessions the store can hold
+     * @param maxSessionSize the maximum size of the serialized session attributes, in bytes
+     * @param sessionMaxAge the sessions max age, in milliseconds
+     * @throws IOException if the file cannot be opened or has been created with a different layout
+     */
+    public MappedSessionStore( File storeFile, int maxSessions, int maxSessionSize, int sessionMaxAge )
+        throws IOException
+    {
+        checkArgument( storeFile != null, "Null sessions store file not allowed" );
+        checkArgument( maxSessions > 0, "Sessions store must hold at least one session" );
+        checkArgument( maxSessionSize > 0, "Sessions store must hold non empty sessions" );
+        checkArgument( sessionMaxAge > 0, "Sessions without timelive won't exist" );
+
+        // keep the table at most 3/4 full, probing sequences stay short
+        int slots = Integer.highestOneBit( (int) ( maxSessions * 4L / 3 ) );
+        if ( slots < maxSessions * 4L / 3 )
+        {
+            slots <<= 1;
+        }
+
+        slotCount = slots;
+        slotLength = ( DATA_OFFSET + maxSessionSize + 7 ) & ~7;
+        this.sessionMaxAge = sessionMaxAge;
+
+        long length = HEADER_LENGTH + (long) slotCount * slotLength;
+        checkArgument( length <= Integer.MAX_VALUE, "Sessions store cannot be larger than 2GB, %s bytes required", length );
+
+        boolean exists = storeFile.exists() && storeFile.length() > 0;
+        file = new RandomAccessFile( storeFile, "rw" );
+        try
+        {
+            if ( exists && file.length() != length )
+            {
+                throw new IOException( "Sessions store " + storeFile + " has been created with a different layout" );
+            }
+
+            file.setLength( length );
+            buffer = file.getChannel().map( READ_WRITE, 0, length );
+
+            if ( exists )
+            {
+                if ( buffer.getInt( 0 ) != MAGIC
+                     || buffer.getInt( 4 ) != VERSION
+                     || buffer.getInt( SLOT_COUNT_OFFSET ) != slotCount
+                     || buffer.getInt( SLOT_LENGTH_OFFSET ) != slotLength )
+                {
+                    throw new IOException( "Sessions store " + storeFile + " has been created with a different layout" );
+                }
+            }
+            else
+            {
+                buffer.putInt( 0, MAGIC );
+                buffer.putInt( 4, VERSION );
+                buffer.putInt( SLOT_COUNT_OFFSET, slotCount );
+                buffer.putInt( SLOT_LENGTH_OFFSET, slotLength );
+            }
+        }
+        catch ( IOException e )
+        {
+            closeQuietly( file );
+            throw e;
+        }
+    }
+
+    /**
+     * Updates the last accessed time of the session with the given id, without restoring it.
+     *
+     * @param id the session id
+     * @param now the current time, in milliseconds
+     * @return true if the session has been found and is not expired, false otherwise.
+     */
+    public boolean touch( String id, long now )
+    {
+        if ( !isStorable( id ) )
+        {
+            return false;
+        }
+
+        int hash = hash( id );
+
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try
+        {
+            int slot = find( id, hash );
+            if ( slot < 0 || isExpired( buffer.getLong( slot + LAST_ACCESSED_TIME_OFFSET ), now ) )
+            {
+                return false;
+            }
+
+            buffer.putLong( slot + LAST_ACCESSED_TIME_OFFSET, now );
+            return true;
+        }
+        finally
+        {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Restores the session with the given id; the last accessed time is not updated, see
+     * {@link #touch(String, long)}.
+     *
+     * @param id the session id
+     * @param now the current time, in milliseconds
+     * @return the restored session, null if not found or expired.
+     * @throws IOException if the session attributes cannot be deserialized
+     */
+    public DefaultSession get( String id, long now )
+        throws IOException
+    {
+        if ( !isStorable( id ) )
+        {
+            return null;
+        }
+
+        int hash = hash( id );
+        byte[] data;
+        long creationTime;
+        long lastAccessedTime;
+
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try
+        {
+            int slot = find( id, hash );
+            if ( slot < 0 )
+            {
+                return null;
+            }
+
+            lastAccessedTime = buffer.getLong( slot + LAST_ACCESSED_TIME_OFFSET );
+            if ( isExpired( lastAccessedTime, now ) )
+            {
+                return null;
+            }
+
+            int dataLength = buffer.getInt( slot + DATA_LENGTH_OFFSET );
+            if ( dataLength < 0 || DATA_OFFSET + dataLength > slotLength )
+            {
+                throw new IOException( "Session " + id + " is corrupted in the sessions store" );
+            }
+
+            creationTime = buffer.getLong( slot + CREATION_TIME_OFFSET );
+            data = new byte[dataLength];
+            read( slot + DATA_OFFSET, data );
+        }
+        finally
+        {
+            readLock.unlock();
+        }
+
+        return new DefaultSession( id, creationTime, lastAccessedTime, SessionAttributesCodec.deserialize( data ) );
+    }
+
+    /**
+     * Stores the session, replacing the previously stored values.
+     *
+     * @param session the session to store
+     * @param now the current time, in milliseconds
+     * @throws IOException if the session cannot be stored
+     */
+    public void put( DefaultSession session, long now )
+        throws IOException
+    {
+        String id = session.getId();
+        if ( !isStorable( id ) )
+        {
+            throw new IOException( "Session id " + id + " is not an ASCII string up to " + MAX_ID_LENGTH + " chars" );
+        }
+
+        byte[] data = SessionAttributesCodec.serialize( session.getAttributes() );
+        if ( DATA_OFFSET + data.length > slotLength )
+        {
+            throw new IOException( "Session " + id + " is too large to be stored: " + data.length + " bytes" );
+        }
+
+        int hash = hash( id );
+
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try
+        {
+            int slot = find( id, hash );
+            if ( slot < 0 )
+            {
+                slot = allocate( hash, now );
+                if ( slot < 0 )
+                {
+                    throw new IOException( "Sessions store is full, session " + id + " cannot be stored" );
+                }
+
+                buffer.put( slot + ID_LENGTH_OFFSET, (byte) id.length() );
+                buffer.putInt( slot + HASH_OFFSET, hash );
+                for ( int i = 0; i < id.length(); i++ )
+                {
+                    buffer.put( slot + ID_OFFSET + i, (byte) id.charAt( i ) );
+                }
+                buffer.put( slot + STATE_OFFSET, USED );
+            }
+
+            buffer.putLong( slot + CREATION_TIME_OFFSET, session.getCreationTime().getTime() );
+            buffer.putLong( slot + LAST_ACCESSED_TIME_OFFSET, now );
+            buffer.putInt( slot + DATA_LENGTH_OFFSET, data.length );
+            write( slot + DATA_OFFSET, data );
+        }
+        finally
+        {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Removes the expired sessions from the next slots of the table, the sweep continues from
+     * where the previous one stopped.
+     *
+     * @param slots the number of slots to sweep
+     * @param now the current time, in milliseconds
+     * @return the number of removed sessions
+     */
+    public int removeExpired( int slots, long now )
+    {
+        int removed = 0;
+
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try
+        {
+            for ( int swept = 0; swept < slots && swept < slotCount; )
+            {
+                int slot = HEADER_LENGTH + sweepIndex * slotLength;
+
+                if ( USED == buffer.get( slot + STATE_OFFSET )
+                     && isExpired( buffer.getLong( slot + LAST_ACCESSED_TIME_OFFSET ), now ) )
+                {
+                    // a following session may be shifted back in the same slot, it has to be checked again
+                    remove( sweepIndex );
+                    removed++;
+                }
+                else
+                {
+                    sweepIndex = ( sweepIndex + 1 ) & ( slotCount - 1 );
+                    swept++;
+                }
+            }
+        }
+        finally
+        {
+            writeLock.unlock();
+        }
+
+        return removed;
+    }
+
+    /**
+     * Returns the number of slots of the table.
+     *
+     * @return the number of slots of the table
+     */
+    public int getSlotCount()
+    {
+        return slotCount;
+    }
+
+    /**
+     * Flushes the stored sessions to the file and closes it.
+     *
+     * @throws IOException if any error occurs while flushing the sessions
+     */
+    public void close()
+        throws IOException
+    {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try
+        {
+            buffer.force();
+        }
+        finally
+        {
+            writeLock.unlock();
+            file.close();
+        }
+    }
+
+    /**
+     * Finds the slot that holds the session with the given id.
+     *
+     * @return the slot offset, -1 if not found.
+     */
+    private int find( String id, int hash )
+    {
+        for ( int i = 0, index = hash & ( slotCount - 1 ); i < slotCount; i++, index = ( index + 1 ) & ( slotCount - 1 ) )
+        {
+            int slot = HEADER_LENGTH + index * slotLength;
+
+            if ( EMPTY == buffer.get( slot + STATE_OFFSET ) )
+            {
+                return -1;
+            }
+
+            if ( hash == buffer.getInt( slot + HASH_OFFSET ) && matches( slot, id ) )
+            {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the first slot, along the probing sequence, that is empty or holds an expired session.
+     *
+     * @return the slot offset, -1 if the store is full.
+     */
+    private int allocate( int hash, long now )
+    {
+        for ( int i = 0, index = hash & ( slotCount - 1 ); i < slotCount; i++, index = ( index + 1 ) & ( slotCount - 1 ) )
+        {
+            int slot = HEADER_LENGTH + index * slotLength;
+
+            if ( EMPTY == buffer.get( slot + STATE_OFFSET )
+                 || isExpired( buffer.getLong( slot + LAST_ACCESSED_TIME_OFFSET ), now ) )
+            {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Empties the slot at the given index, shifting back the following sessions of the probing
+     * sequence that would not be found anymore.
+     */
+    private void remove( int index )
+    {
+        int mask = slotCount - 1;
+        int hole = index;
+
+        for ( int next = ( index + 1 ) & mask; next != index; next = ( next + 1 ) & mask )
+        {
+            int slot = HEADER_LENGTH + next * slotLength;
+
+            if ( EMPTY == buffer.get( slot + STATE_OFFSET ) )
+            {
+                break;
+            }
+
+            // the session can fill the hole only if its probing sequence starts before the hole
+            int home = buffer.getInt( slot + HASH_OFFSET ) & mask;
+            if ( ( ( next - home ) & mask ) >= ( ( next - hole ) & mask ) )
+            {
+                copy( slot, HEADER_LENGTH + hole * slotLength );
+                hole = next;
+            }
+        }
+
+        buffer.put( HEADER_LENGTH + hole * slotLength + STATE_OFFSET, EMPTY );
+    }
+
+    private void copy( int sourceSlot, int targetSlot )
+    {
+        int dataLength = buffer.getInt( sourceSlot + DATA_LENGTH_OFFSET );
+        int length = dataLength < 0 || DATA_OFFSET + dataLength > slotLength ? slotLength : DATA_OFFSET + dataLength;
+
+        ByteBuffer source = buffer.duplicate();
+        source.position( sourceSlot );
+        source.limit( sourceSlot + length );
+
+        ByteBuffer target = buffer.duplicate();
+        target.position( targetSlot );
+        target.put( source );
+    }
+
+    private boolean matches( int slot, String id )
+    {
+        if ( id.length() != buffer.get( slot + ID_LENGTH_OFFSET ) )
+        {
+            return false;
+        }
+
+        for ( int i = 0; i < id.length(); i++ )
+        {
+            if ( (byte) id.charAt( i ) != buffer.get( slot + ID_OFFSET + i ) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isExpired( long lastAccessedTime, long now )
+    {
+        return now - lastAccessedTime > sessionMaxAge;
+    }
+
+    private void read( int offset, byte[] data )
+    {
+        // duplicates have their own position, the shared buffer can be read concurrently
+        ByteBuffer slice = buffer.duplicate();
+        slice.position( offset );
+        slice.get( data );
+    }
+
+    private void write( int offset, byte[] data )
+    {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position( offset );
+        slice.put( data );
+    }
+
+    /**
+     * Checks the id fits in a slot; ids are stored one byte per char, only ASCII chars are allowed.
+     */
+    private static boolean isStorable( String id )
+    {
+        if ( id.length() > MAX_ID_LENGTH )
+        {
+            return false;
+        }
+
+        for ( int i = 0; i < id.length(); i++ )
+        {
+            if ( id.charAt( i ) > 0x7F )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash( String id )
+    {
+        int hash = id.hashCode();
+        // spreads the higher bits, slots are indexed by the lower ones
+        return hash ^ ( hash >>> 16 );
+    }
+
+}
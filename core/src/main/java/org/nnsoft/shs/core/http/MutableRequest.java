@@ -35,6 +35,7 @@ import java.util.List;
 import java.util.Queue;
 
 import org.nnsoft.shs.collections.MultiValued;
+import org.nnsoft.shs.core.collections.HeadersMultiValued;
 import org.nnsoft.shs.core.collections.SimpleMultiValued;
 import org.nnsoft.shs.http.Cookie;
 import org.nnsoft.shs.http.Request;
@@ -59,6 +60,10 @@ public final class MutableRequest
 
     private String path;
 
+    private String[] pathParameterNames;
+
+    private int[] pathParameterOffsets;
+
     private String protocolName;
 
     private String protocolVersion;
@@ -69,7 +74,17 @@ public final class MutableRequest
 
     private Session session;
 
-    private final SimpleMultiValued<String, String> headers = new SimpleMultiValued<String, String>();
+    private String requestedSessionId;
+
+    private SessionManager sessionManager;
+
+    private String restorableSessionId;
+
+    private boolean sessionCreated;
+
+    private boolean responseCacheable;
+
+    private final HeadersMultiValued headers = new HeadersMultiValued();
 
     private final SimpleMultiValued<String, String> queryStringParameters = new SimpleMultiValued<String, String>();
 
@@ -156,6 +171,43 @@ public final class MutableRequest
         this.path = path;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public String getPathParameter( String name )
+    {
+        if ( pathParameterNames == null )
+        {
+            return null;
+        }
+
+        for ( int i = 0; i < pathParameterNames.length; i++ )
+        {
+            if ( pathParameterNames[i].equals( name ) )
+            {
+                // segments are extracted only when requested
+                return path.substring( pathParameterOffsets[i * 2], pathParameterOffsets[i * 2 + 1] );
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Sets the path parameters captured by the route template that matched the request path.
+     *
+     * @param names the template parameters names.
+     * @param offsets the start/end offsets, in the path, of the segment captured by each parameter.
+     */
+    public void setPathParameters( String[] names, int[] offsets )
+    {
+        checkArgument( names != null, "Null path parameters names not allowed" );
+        checkArgument( offsets != null && offsets.length >= names.length * 2,
+                       "Path parameters offsets don't match the names" );
+        this.pathParameterNames = names;
+        this.pathParameterOffsets = offsets;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -364,6 +416,20 @@ public final class MutableRequest
     @Override
     public Session getSession()
     {
+        if ( session == null && sessionManager != null )
+        {
+            if ( restorableSessionId != null )
+            {
+                session = sessionManager.restoreSession( restorableSessionId );
+                restorableSessionId = null;
+            }
+
+            if ( session == null )
+            {
+                session = sessionManager.createSession();
+                sessionCreated = true;
+            }
+        }
         return session;
     }
 
@@ -378,6 +444,89 @@ public final class MutableRequest
         this.session = session;
     }
 
+    /**
+     * Returns the session id sent by the client in the session cookie.
+     *
+     * @return the session id sent by the client, null if not sent.
+     */
+    public String getRequestedSessionId()
+    {
+        return requestedSessionId;
+    }
+
+    /**
+     * Sets the session id sent by the client in the session cookie.
+     *
+     * @param requestedSessionId the session id sent by the client.
+     */
+    public void setRequestedSessionId( String requestedSessionId )
+    {
+        this.requestedSessionId = requestedSessionId;
+    }
+
+    /**
+     * Checks the response to this request can be stored by the responses cache.
+     *
+     * @return true if the handler that served this request opted in the responses cache, false otherwise.
+     */
+    public boolean isResponseCacheable()
+    {
+        return responseCacheable;
+    }
+
+    /**
+     * Marks the response to this request can be stored by the responses cache.
+     *
+     * @param responseCacheable flag to mark the handler that served this request opted in the responses cache.
+     */
+    public void setResponseCacheable( boolean responseCacheable )
+    {
+        this.responseCacheable = responseCacheable;
+    }
+
+    /**
+     * Sets the manager that creates the user session, when first requested.
+     *
+     * @param sessionManager the manager that creates the user session.
+     */
+    void setSessionManager( SessionManager sessionManager )
+    {
+        this.sessionManager = sessionManager;
+    }
+
+    /**
+     * Sets the manager that restores the user session with the given id, when first requested;
+     * if the session cannot be restored, a new one will be created.
+     *
+     * @param sessionManager the manager that restores the user session.
+     * @param restorableSessionId the id of the session to restore.
+     */
+    void setSessionManager( SessionManager sessionManager, String restorableSessionId )
+    {
+        this.sessionManager = sessionManager;
+        this.restorableSessionId = restorableSessionId;
+    }
+
+    /**
+     * Checks if the user session has been created while serving this request.
+     *
+     * @return true if the user session has been created while serving this request, false otherwise.
+     */
+    boolean isSessionCreated()
+    {
+        return sessionCreated;
+    }
+
+    /**
+     * Checks if the user session has been restored or created, without creating it.
+     *
+     * @return true if the user session has been restored or created, false otherwise.
+     */
+    boolean hasSession()
+    {
+        return session != null;
+    }
+
     /**
      * {@inheritDoc}
      */
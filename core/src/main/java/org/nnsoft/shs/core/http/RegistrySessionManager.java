@@ -0,0 +1,341 @@
+package org.nnsoft.shs.core.http;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static java.lang.System.currentTimeMillis;
+import static org.nnsoft.shs.lang.Preconditions.checkArgument;
+
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.nnsoft.shs.http.Request;
+import org.nnsoft.shs.http.Response;
+import org.nnsoft.shs.http.SessionIdGenerator;
+
+/**
+ * The {@link SessionManager} that keeps the HTTP {@link org.nnsoft.shs.http.Session}s in a registry,
+ * the session cookie holds the session id only.
+ */
+public final class RegistrySessionManager
+    implements SessionManager
+{
+
+    /**
+     * The resolution of the sessions expiration, in milliseconds.
+     */
+    private static final long EXPIRATION_TICK = 1000;
+
+    /**
+     * The registry where sessions have to be stored, indexed by the session cookie value.
+     */
+    private final ConcurrentMap<String, DefaultSession> sessionsRegistry = new ConcurrentHashMap<String, DefaultSession>();
+
+    /**
+     * The timer delegated to clean the expired sessions.
+     */
+    private final Timer sessionsCleaner = new Timer( true );
+
+    /**
+     * The expiration schedule of the registered sessions.
+     */
+    private final SessionExpiryWheel expiryWheel;
+
+    /**
+     * The generator of the new sessions identifiers.
+     */
+    private final SessionIdGenerator sessionIdGenerator;
+
+    /**
+     * The replicator of the sessions to the peer servers, can be null.
+     */
+    private final SessionReplicator replicator;
+
+    /**
+     * Creates a new sessions manager; sessions expire when not accessed for longer than the given max age.
+     *
+     * @param sessionMaxAge the sessions max age, in milliseconds
+     */
+    public RegistrySessionManager( int sessionMaxAge )
+    {
+        this( sessionMaxAge, new SecureRandomSessionIdGenerator() );
+    }
+
+    /**
+     * Creates a new sessions manager; sessions expire when not accessed for longer than the given max age.
+     *
+     * @param sessionMaxAge the sessions max age, in milliseconds
+     * @param sessionIdGenerator the generator of the new sessions identifiers
+     */
+    public RegistrySessionManager( int sessionMaxAge, SessionIdGenerator sessionIdGenerator )
+    {
+        this( sessionMaxAge, sessionIdGenerator, null );
+    }
+
+    /**
+     * Creates a new sessions manager; sessions expire when not accessed for longer than the given max age.
+     *
+     * @param sessionMaxAge the sessions max age, in milliseconds
+     * @param sessionIdGenerator the generator of the new sessions identifiers
+     * @param replicator the replicator of the sessions to the peer servers, can be null
+     */
+    public RegistrySessionManager( int sessionMaxAge, SessionIdGenerator sessionIdGenerator, SessionReplicator replicator )
+    {
+        checkArgument( sessionIdGenerator != null, "Null session id generator not allowed" );
+        this.sessionIdGenerator = sessionIdGenerator;
+        this.replicator = replicator;
+        expiryWheel = new SessionExpiryWheel( sessionsRegistry, sessionMaxAge, EXPIRATION_TICK, currentTimeMillis() );
+        sessionsCleaner.scheduleAtFixedRate( new SessionsExpirationTimerTask( expiryWheel ), EXPIRATION_TICK, EXPIRATION_TICK );
+
+        if ( replicator != null )
+        {
+            replicator.start( this );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void manageSession( Request request )
+    {
+        MutableRequest mutableRequest = (MutableRequest) request;
+
+        // the session id has already been extracted by the parser
+        DefaultSession session = lookupSession( mutableRequest.getRequestedSessionId() );
+
+        if ( session != null )
+        {
+            mutableRequest.setSession( session );
+        }
+        else
+        {
+            // the session will be created at the first request
+            mutableRequest.setSessionManager( this );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DefaultSession restoreSession( String sessionId )
+    {
+        return lookupSession( sessionId );
+    }
+
+    /**
+     * Looks up the session with the given id, updating its last accessed time.
+     *
+     * @param sessionId the session id sent by the client, can be null
+     * @return the session with the given id, null if not found or expired.
+     */
+    DefaultSession lookupSession( String sessionId )
+    {
+        if ( sessionId == null )
+        {
+            return null;
+        }
+
+        DefaultSession session = sessionsRegistry.get( sessionId );
+        if ( session == null )
+        {
+            return null;
+        }
+
+        long now = currentTimeMillis();
+
+        // the wheel could not have been swept yet
+        if ( expiryWheel.isExpired( session, now ) )
+        {
+            return null;
+        }
+
+        long lastAccessedTime = session.getLastAccessedTimeMillis();
+        session.updateLastAccessedTime( now );
+
+        // peers need to know the session is still in use, once per expiration tick is enough
+        if ( replicator != null && now / EXPIRATION_TICK != lastAccessedTime / EXPIRATION_TICK )
+        {
+            replicator.accessed( session, now );
+        }
+
+        return session;
+    }
+
+    /**
+     * Applies a session created or modified on a peer server.
+     *
+     * @param sessionId the session id
+     * @param creationTime the time when the session was created, in milliseconds
+     * @param lastAccessedTime the last time the client sent a request associated with the session, in milliseconds
+     * @param attributes the session attributes
+     */
+    void applyReplica( String sessionId, long creationTime, long lastAccessedTime, Map<String, Object> attributes )
+    {
+        DefaultSession session = sessionsRegistry.get( sessionId );
+
+        if ( session == null )
+        {
+            session = new DefaultSession( sessionId, creationTime, lastAccessedTime, attributes );
+
+            DefaultSession previous = sessionsRegistry.putIfAbsent( sessionId, session );
+            if ( previous == null )
+            {
+                expiryWheel.schedule( session );
+                return;
+            }
+            session = previous;
+        }
+
+        session.replaceAttributes( attributes );
+        applyAccess( session, lastAccessedTime );
+    }
+
+    /**
+     * Applies the access to a session on a peer server.
+     *
+     * @param sessionId the session id
+     * @param lastAccessedTime the time the client accessed the session, in milliseconds
+     */
+    void applyAccess( String sessionId, long lastAccessedTime )
+    {
+        DefaultSession session = sessionsRegistry.get( sessionId );
+        if ( session != null )
+        {
+            applyAccess( session, lastAccessedTime );
+        }
+    }
+
+    private static void applyAccess( DefaultSession session, long lastAccessedTime )
+    {
+        // accesses can be replicated late
+        if ( lastAccessedTime > session.getLastAccessedTimeMillis() )
+        {
+            session.updateLastAccessedTime( lastAccessedTime );
+        }
+    }
+
+    /**
+     * Creates a new session, puts it in the registry and schedule for expiration.
+     *
+     * @return the new session
+     */
+    @Override
+    public DefaultSession createSession()
+    {
+        DefaultSession session = new DefaultSession( sessionIdGenerator.generateSessionId() );
+
+        sessionsRegistry.put( session.getId(), session );
+
+        expiryWheel.schedule( session );
+
+        return session;
+    }
+
+    /**
+     * Sends the session cookie to the client, if the session has been created while serving the request.
+     *
+     * @param request the served HTTP request
+     * @param response the HTTP response will be pushed out.
+     */
+    @Override
+    public void commitSession( Request request, Response response )
+    {
+        MutableRequest mutableRequest = (MutableRequest) request;
+
+        if ( replicator != null && mutableRequest.hasSession() )
+        {
+            DefaultSession session = (DefaultSession) request.getSession();
+            if ( session.clearModified() || mutableRequest.isSessionCreated() )
+            {
+                replicator.replicate( session );
+            }
+        }
+
+        if ( !mutableRequest.isSessionCreated() )
+        {
+            return;
+        }
+
+        // no max age, sessions expiration slides while the client uses it
+        response.addCookie( new CookieBuilder()
+                                .setDomain( request.getServerHost() )
+                                .addPort( request.getServerPort() )
+                                .setName( SESSION_NAME )
+                                .setValue( request.getSession().getId() )
+                                .setPath( "/" )
+                                .build() );
+    }
+
+    /**
+     * Turns off the timer to clean the registered sessions and the replication, if any.
+     */
+    @Override
+    public void shutDown()
+    {
+        sessionsCleaner.cancel();
+
+        if ( replicator != null )
+        {
+            replicator.shutDown();
+        }
+    }
+
+    /**
+     * A timer task to sweep the expired sessions, once per tick.
+     */
+    private static final class SessionsExpirationTimerTask
+        extends TimerTask
+    {
+
+        /**
+         * The expiration schedule of the registered sessions.
+         */
+        private final SessionExpiryWheel expiryWheel;
+
+        /**
+         * Creates a new task to sweep the expired sessions.
+         *
+         * @param expiryWheel the expiration schedule of the registered sessions
+         */
+        public SessionsExpirationTimerTask( SessionExpiryWheel expiryWheel )
+        {
+            this.expiryWheel = expiryWheel;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run()
+        {
+            expiryWheel.advance( currentTimeMillis() );
+        }
+
+    }
+
+}
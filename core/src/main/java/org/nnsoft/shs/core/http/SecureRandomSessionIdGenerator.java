@@ -0,0 +1,58 @@
+package org.nnsoft.shs.core.http;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static org.nnsoft.shs.core.http.SecureRandoms.current;
+import static org.nnsoft.shs.core.http.UrlSafeBase64.encode;
+
+import java.security.SecureRandom;
+
+import org.nnsoft.shs.http.SessionIdGenerator;
+
+/**
+ * The default {@link SessionIdGenerator}: every thread owns its {@link SecureRandom}, a {@code SHA1PRNG}
+ * seeded once, so threads serving requests never contend it, and identifiers are 128 random bits
+ * encoded as 22 URL-safe base64 characters.
+ */
+public final class SecureRandomSessionIdGenerator
+    implements SessionIdGenerator
+{
+
+    /**
+     * The number of random bytes of each session id.
+     */
+    private static final int ID_LENGTH = 16;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String generateSessionId()
+    {
+        byte[] bytes = new byte[ID_LENGTH];
+        current().nextBytes( bytes );
+        return encode( bytes );
+    }
+
+}
@@ -0,0 +1,90 @@
+package org.nnsoft.shs.core.http;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * Provides a {@link SecureRandom} per thread.
+ *
+ * The default {@link SecureRandom} on Linux, {@code NativePRNG}, serializes {@code nextBytes()} through a lock
+ * shared by the whole JVM; threads own a {@code SHA1PRNG} instead, seeded once by the system source
+ * and then generating bytes without any contention.
+ */
+final class SecureRandoms
+{
+
+    private static final String ALGORITHM = "SHA1PRNG";
+
+    private static final int SEED_LENGTH = 32;
+
+    /**
+     * The system source, used only to seed the per thread generators.
+     */
+    private static final SecureRandom SEEDS = new SecureRandom();
+
+    private static final ThreadLocal<SecureRandom> RANDOMS = new ThreadLocal<SecureRandom>()
+    {
+
+        @Override
+        protected SecureRandom initialValue()
+        {
+            SecureRandom random;
+            try
+            {
+                random = SecureRandom.getInstance( ALGORITHM );
+            }
+            catch ( NoSuchAlgorithmException e )
+            {
+                // not available on this JVM, the default generator is still secure
+                return new SecureRandom();
+            }
+
+            // seeding before the first use replaces the self-seeding
+            random.setSeed( SEEDS.generateSeed( SEED_LENGTH ) );
+            return random;
+        }
+
+    };
+
+    /**
+     * Hidden constructor, this class must not be instantiated.
+     */
+    private SecureRandoms()
+    {
+        // do nothing
+    }
+
+    /**
+     * Returns the {@link SecureRandom} owned by the current thread.
+     *
+     * @return the {@link SecureRandom} owned by the current thread.
+     */
+    public static SecureRandom current()
+    {
+        return RANDOMS.get();
+    }
+
+}
@@ -0,0 +1,179 @@
+package org.nnsoft.shs.core.http;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Compact binary format of the session attributes: strings and primitive wrappers, the most common
+ * session attributes, are written directly, the other values through Java serialization.
+ */
+final class SessionAttributesCodec
+{
+
+    private static final byte STRING = 1;
+
+    private static final byte INTEGER = 2;
+
+    private static final byte LONG = 3;
+
+    private static final byte BOOLEAN = 4;
+
+    private static final byte OBJECT = 5;
+
+    /**
+     * Hidden constructor, this class must not be instantiated.
+     */
+    private SessionAttributesCodec()
+    {
+        // do nothing
+    }
+
+    /**
+     * Serializes the attributes.
+     *
+     * @param attributes the attributes to serialize
+     * @return the serialized attributes
+     * @throws IOException if any attribute cannot be serialized
+     */
+    public static byte[] serialize( Map<String, Object> attributes )
+        throws IOException
+    {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream( data );
+
+        output.writeInt( attributes.size() );
+        for ( Entry<String, Object> attribute : attributes.entrySet() )
+        {
+            output.writeUTF( attribute.getKey() );
+
+            Object value = attribute.getValue();
+            if ( value instanceof String )
+            {
+                output.writeByte( STRING );
+                output.writeUTF( (String) value );
+            }
+            else if ( value instanceof Integer )
+            {
+                output.writeByte( INTEGER );
+                output.writeInt( (Integer) value );
+            }
+            else if ( value instanceof Long )
+            {
+                output.writeByte( LONG );
+                output.writeLong( (Long) value );
+            }
+            else if ( value instanceof Boolean )
+            {
+                output.writeByte( BOOLEAN );
+                output.writeBoolean( (Boolean) value );
+            }
+            else
+            {
+                ByteArrayOutputStream object = new ByteArrayOutputStream();
+                ObjectOutputStream objectOutput = new ObjectOutputStream( object );
+                objectOutput.writeObject( value );
+                objectOutput.close();
+
+                output.writeByte( OBJECT );
+                output.writeInt( object.size() );
+                object.writeTo( output );
+            }
+        }
+
+        output.close();
+        return data.toByteArray();
+    }
+
+    /**
+     * Deserializes the attributes.
+     *
+     * @param data the serialized attributes
+     * @return the deserialized attributes
+     * @throws IOException if the attributes cannot be deserialized
+     */
+    public static Map<String, Object> deserialize( byte[] data )
+        throws IOException
+    {
+        DataInputStream input = new DataInputStream( new ByteArrayInputStream( data ) );
+
+        int size = input.readInt();
+        Map<String, Object> attributes = new HashMap<String, Object>( size * 4 / 3 + 1 );
+        for ( int i = 0; i < size; i++ )
+        {
+            String name = input.readUTF();
+
+            byte type = input.readByte();
+            switch ( type )
+            {
+                case STRING:
+                    attributes.put( name, input.readUTF() );
+                    break;
+
+                case INTEGER:
+                    attributes.put( name, input.readInt() );
+                    break;
+
+                case LONG:
+                    attributes.put( name, input.readLong() );
+                    break;
+
+                case BOOLEAN:
+                    attributes.put( name, input.readBoolean() );
+                    break;
+
+                case OBJECT:
+                    int length = input.readInt();
+                    ObjectInputStream objectInput =
+                        new ObjectInputStream( new ByteArrayInputStream( data, data.length - input.available(), length ) );
+                    try
+                    {
+                        attributes.put( name, objectInput.readObject() );
+                    }
+                    catch ( ClassNotFoundException e )
+                    {
+                        throw new IOException( "Session attribute " + name + " cannot be restored, class "
+                                               + e.getMessage() + " not found" );
+                    }
+                    input.skipBytes( length );
+                    break;
+
+                default:
+                    throw new IOException( "Session attribute " + name + " has an unknown type " + type );
+            }
+        }
+
+        return attributes;
+    }
+
+}
@@ -0,0 +1,176 @@
+package org.nnsoft.shs.core.http;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A lazily swept timing wheel that expires the sessions not accessed for longer than their max age.
+ *
+ * Sessions are put, once, in the slot of the tick they would expire if never accessed again;
+ * accessing a session only updates its last accessed time, so sliding the expiration costs O(1)
+ * and no lock. When the wheel reaches a slot, the sessions still in use are moved to the slot
+ * of their new expiration tick, the others are removed from the registry.
+ *
+ * Slots are lock-free queues, {@link #schedule(DefaultSession)} can be invoked by any thread,
+ * {@link #advance(long)} by one thread only.
+ */
+final class SessionExpiryWheel
+{
+
+    private final ConcurrentMap<String, DefaultSession> sessionsRegistry;
+
+    private final long sessionMaxAge;
+
+    private final long tickDuration;
+
+    private final Queue<DefaultSession>[] slots;
+
+    private long lastTick;
+
+    /**
+     * Creates a new wheel with enough slots to cover the sessions max age.
+     *
+     * @param sessionsRegistry the registry where sessions have to be removed from
+     * @param sessionMaxAge the sessions max age, in milliseconds
+     * @param tickDuration the wheel resolution, in milliseconds
+     * @param now the current time, in milliseconds
+     */
+    @SuppressWarnings( "unchecked" ) // generic arrays can't be created
+    public SessionExpiryWheel( ConcurrentMap<String, DefaultSession> sessionsRegistry,
+                               long sessionMaxAge,
+                               long tickDuration,
+                               long now )
+    {
+        this.sessionsRegistry = sessionsRegistry;
+        this.sessionMaxAge = sessionMaxAge;
+        this.tickDuration = tickDuration;
+
+        // sessions can't be scheduled farther than max age, plus the current and a rounding slot
+        slots = (Queue<DefaultSession>[]) new Queue<?>[(int) ( sessionMaxAge / tickDuration ) + 2];
+        for ( int i = 0; i < slots.length; i++ )
+        {
+            slots[i] = new ConcurrentLinkedQueue<DefaultSession>();
+        }
+
+        lastTick = now / tickDuration;
+    }
+
+    /**
+     * Schedules the expiration of a new session.
+     *
+     * @param session the session has to expire
+     */
+    public void schedule( DefaultSession session )
+    {
+        slots[slotOf( expirationOf( session ) )].offer( session );
+    }
+
+    /**
+     * Checks if the given session is expired.
+     *
+     * @param session the session to check
+     * @param now the current time, in milliseconds
+     * @return true if the session is expired, false otherwise.
+     */
+    public boolean isExpired( DefaultSession session, long now )
+    {
+        return expirationOf( session ) <= now;
+    }
+
+    /**
+     * Sweeps the slots of all the ticks elapsed since the last invocation.
+     *
+     * @param now the current time, in milliseconds
+     */
+    public void advance( long now )
+    {
+        long currentTick = now / tickDuration;
+
+        // after a long pause, each slot has to be swept only once
+        long firstTick = Math.max( lastTick + 1, currentTick - slots.length + 1 );
+
+        for ( long tick = firstTick; tick <= currentTick; tick++ )
+        {
+            sweep( (int) ( tick % slots.length ), now );
+        }
+
+        lastTick = currentTick;
+    }
+
+    private void sweep( int slot, long now )
+    {
+        Queue<DefaultSession> queue = slots[slot];
+        List<DefaultSession> stillInSlot = null;
+
+        DefaultSession session;
+        while ( ( session = queue.poll() ) != null )
+        {
+            long expiration = expirationOf( session );
+
+            if ( expiration <= now )
+            {
+                sessionsRegistry.remove( session.getId(), session );
+            }
+            else
+            {
+                int newSlot = slotOf( expiration );
+                if ( newSlot == slot )
+                {
+                    // re-offering now would make the sweep never end
+                    if ( stillInSlot == null )
+                    {
+                        stillInSlot = new LinkedList<DefaultSession>();
+                    }
+                    stillInSlot.add( session );
+                }
+                else
+                {
+                    slots[newSlot].offer( session );
+                }
+            }
+        }
+
+        if ( stillInSlot != null )
+        {
+            queue.addAll( stillInSlot );
+        }
+    }
+
+    private long expirationOf( DefaultSession session )
+    {
+        return session.getLastAccessedTimeMillis() + sessionMaxAge;
+    }
+
+    private int slotOf( long expiration )
+    {
+        // rounds up, sessions are never removed before their expiration
+        return (int) ( ( ( expiration + tickDuration - 1 ) / tickDuration ) % slots.length );
+    }
+
+}
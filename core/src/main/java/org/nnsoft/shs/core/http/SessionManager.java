@@ -23,149 +23,61 @@ package org.nnsoft.shs.core.http;
  * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
-import static java.util.UUID.fromString;
+import java.io.IOException;
 
-import java.util.Iterator;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-
-import org.nnsoft.shs.http.Cookie;
 import org.nnsoft.shs.http.Request;
 import org.nnsoft.shs.http.Response;
+import org.nnsoft.shs.http.Session;
 
 /**
- * The SessionRegistry is the HTTP {@link org.nnsoft.shs.http.Session} manager.
+ * The SessionManager is the HTTP {@link Session} lifecycle manager: it restores the sessions
+ * of incoming requests and hands them back to the clients once requests have been served.
  */
-public final class SessionManager
+public interface SessionManager
 {
 
-    private static final String SESSION_NAME = "SHSSESSIONID";
-
     /**
-     * The registry where sessions have to be stored.
+     * The name of the cookie that holds the session.
      */
-    private final ConcurrentMap<UUID, DefaultSession> sessionsRegistry = new ConcurrentHashMap<UUID, DefaultSession>();
+    String SESSION_NAME = "SHSSESSIONID";
 
     /**
-     * The timer delegated to clean the expired sessions.
+     * Manages the request session: if the client sends a request which contains
+     * a valid session then it will be restored, otherwise a new one will be created
+     * only if the request handler asks for it.
+     *
+     * @param request the received HTTP request
      */
-    private final Timer sessionsCleaner = new Timer( true );
+    void manageSession( Request request );
 
     /**
-     * The sessions max age (in milliseconds).
+     * Restores the session with the given id, when first requested by the request handler.
+     *
+     * @param sessionId the session id sent by the client
+     * @return the restored session, null if not found or expired.
      */
-    private final int sessionMaxAge;
+    Session restoreSession( String sessionId );
 
     /**
+     * Creates a new session, when first requested by the request handler.
      *
-     * @param sessionMaxAge the max
+     * @return the new session
      */
-    public SessionManager( int sessionMaxAge )
-    {
-        this.sessionMaxAge = sessionMaxAge;
-    }
+    Session createSession();
 
     /**
-     * Manages the request session: if the client sends a request which contains
-     * the session id that is currently managed by the server (and didn't expire)
-     * then will be retrieved and restored, otherwise it will create a new one.
+     * Sends the session cookie to the client, if needed.
      *
-     * @param request the received HTTP request
+     * @param request the served HTTP request
      * @param response the HTTP response will be pushed out.
+     * @throws IOException if the session cannot be stored.
      */
-    public void manageSession( Request request, Response response )
-    {
-        DefaultSession session = null;
-
-        // check first the session is present in the registry
-
-        Iterator<Cookie> cookies = request.getCookies().iterator();
-        while ( session != null || cookies.hasNext() )
-        {
-            Cookie cookie = cookies.next();
-            if ( SESSION_NAME.equals( cookie.getName() ) )
-            {
-                UUID sessionId = fromString( SESSION_NAME );
-                session = sessionsRegistry.get( sessionId );
-                if ( session != null )
-                {
-                    session.updateLastAccessedTime();
-                }
-            }
-        }
-
-        // creates a new session, puts it in the registry and schedule for deletion
-
-        if ( session == null )
-        {
-            session = new DefaultSession();
-
-            sessionsRegistry.put( session.getId(), session );
-
-            sessionsCleaner.schedule( new SessionRemoverTimerTask( sessionsRegistry, session.getId() ), sessionMaxAge );
-
-            response.addCookie( new CookieBuilder()
-                                    .setDomain( request.getServerHost() )
-                                    .addPort( request.getServerPort() )
-                                    .setMaxAge( sessionMaxAge )
-                                    .setName( SESSION_NAME )
-                                    .setValue( session.getId().toString() )
-                                    .setPath( "/" )
-                                    .build() );
-        }
-
-        ( (MutableRequest) request ).setSession( session );
-    }
-
-    /**
-     * Turns off the timer to clean the registered sessions.
-     */
-    public void shutDown()
-    {
-        sessionsCleaner.cancel();
-    }
+    void commitSession( Request request, Response response )
+        throws IOException;
 
     /**
-     * A timer task to remove sessions from registry when expired.
+     * Releases the resources used to manage the sessions.
      */
-    private static final class SessionRemoverTimerTask
-        extends TimerTask
-    {
-
-        /**
-         * The registry where session has to be removed from.
-         */
-        private final ConcurrentMap<UUID, DefaultSession> sessionsRegistry;
-
-        /**
-         * The session id to remove.
-         */
-        private final UUID sessionId;
-
-        /**
-         * Creates a new task to remove sessions from registry when expired.
-         *
-         * @param sessionsRegistry the registry where session has to be removed from
-         * @param sessionId the session id to remove
-         */
-        public SessionRemoverTimerTask( ConcurrentMap<UUID, DefaultSession> sessionsRegistry, UUID sessionId )
-        {
-            this.sessionsRegistry = sessionsRegistry;
-            this.sessionId = sessionId;
-        }
-
-        /**
-         * {@inheritDoc}
-         */
-        @Override
-        public void run()
-        {
-            sessionsRegistry.remove( sessionId );
-        }
-
-    }
+    void shutDown();
 
 }
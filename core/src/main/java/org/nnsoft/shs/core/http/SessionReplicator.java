@@ -0,0 +1,641 @@
+package org.nnsoft.shs.core.http;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static org.nnsoft.shs.lang.Preconditions.checkArgument;
+import static org.nnsoft.shs.lang.Preconditions.checkState;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+
+/**
+ * Replicates the sessions of a {@link RegistrySessionManager} to the peer servers, over TCP.
+ *
+ * Requests threads just enqueue the created, modified and accessed sessions in a bounded queue:
+ * a dedicated thread drains it, encodes the events in batches and streams them to every peer,
+ * events are dropped rather than delayed when the queue is full or a peer is unreachable.
+ * Events received from the peers are applied asynchronously, by a thread per connection.
+ *
+ * Only the configured peers hosts can connect and every frame is signed with HMAC-SHA256, using
+ * the secret key shared by the peers: frames are decoded, and attributes deserialized, only once
+ * their signature has been verified.
+ *
+ * Sessions are not removed by replication: accesses are replicated too, so every server
+ * expires the same sessions.
+ */
+public final class SessionReplicator
+{
+
+    private static final int MAGIC = 0x53485352; // "SHSR"
+
+    private static final byte PUT = 1;
+
+    private static final byte ACCESS = 2;
+
+    private static final int MAX_PENDING_EVENTS = 64 * 1024;
+
+    private static final int MAX_BATCH_SIZE = 1024;
+
+    /**
+     * Larger frames are refused before being read.
+     */
+    private static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private static final int MAC_LENGTH = 32;
+
+    private static final int CONNECT_TIMEOUT = 1000;
+
+    /**
+     * Unreachable peers are not contacted again before this delay, in milliseconds.
+     */
+    private static final long RECONNECT_DELAY = 1000;
+
+    private final Logger logger = getLogger( getClass() );
+
+    private final ServerSocket listener;
+
+    private final List<Peer> peers = new ArrayList<Peer>();
+
+    /**
+     * The hosts allowed to connect, the peers ones.
+     */
+    private final Set<InetAddress> peerHosts = new HashSet<InetAddress>();
+
+    private final SecretKeySpec signatureKey;
+
+    private final BlockingQueue<ReplicationEvent> events = new ArrayBlockingQueue<ReplicationEvent>( MAX_PENDING_EVENTS );
+
+    private final List<Socket> connections = new CopyOnWriteArrayList<Socket>();
+
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    private RegistrySessionManager sessionManager;
+
+    private Thread sender;
+
+    private Thread acceptor;
+
+    private volatile boolean running;
+
+    /**
+     * Creates a new replicator, listening for the peers events on the given address.
+     *
+     * @param listenAddress the address where receiving the events from the peers
+     * @param secretKey the secret shared by the peers to sign the events, at least 16 bytes long
+     * @param peerAddresses the addresses of the peers the events have to be sent to
+     * @throws IOException if the listener cannot be bound
+     */
+    public SessionReplicator( InetSocketAddress listenAddress, byte[] secretKey, List<InetSocketAddress> peerAddresses )
+        throws IOException
+    {
+        checkArgument( listenAddress != null, "Null replication listen address not allowed" );
+        checkArgument( secretKey != null && secretKey.length >= 16, "Secret key must be at least 16 bytes long" );
+        checkArgument( peerAddresses != null, "Null replication peers not allowed" );
+
+        for ( InetSocketAddress peerAddress : peerAddresses )
+        {
+            checkArgument( !peerAddress.isUnresolved(), "Replication peer %s cannot be resolved", peerAddress );
+            peers.add( new Peer( peerAddress ) );
+            peerHosts.add( peerAddress.getAddress() );
+        }
+
+        signatureKey = new SecretKeySpec( secretKey, MAC_ALGORITHM );
+
+        listener = new ServerSocket();
+        listener.setReuseAddress( true );
+        listener.bind( listenAddress );
+    }
+
+    /**
+     * Returns the address where the events from the peers are received.
+     *
+     * @return the address where the events from the peers are received.
+     */
+    public InetSocketAddress getLocalAddress()
+    {
+        return (InetSocketAddress) listener.getLocalSocketAddress();
+    }
+
+    /**
+     * Starts sending and receiving the events of the given sessions manager.
+     *
+     * @param sessionManager the manager of the replicated sessions
+     */
+    void start( RegistrySessionManager sessionManager )
+    {
+        checkState( this.sessionManager == null, "Replicator already started" );
+        this.sessionManager = sessionManager;
+        running = true;
+
+        sender = new Thread( new Runnable()
+        {
+
+            @Override
+            public void run()
+            {
+                send();
+            }
+
+        }, "sessions-replication-sender" );
+        sender.setDaemon( true );
+        sender.start();
+
+        acceptor = new Thread( new Runnable()
+        {
+
+            @Override
+            public void run()
+            {
+                accept();
+            }
+
+        }, "sessions-replication-listener" );
+        acceptor.setDaemon( true );
+        acceptor.start();
+    }
+
+    /**
+     * Replicates the created or modified session.
+     *
+     * @param session the created or modified session
+     */
+    void replicate( DefaultSession session )
+    {
+        enqueue( new ReplicationEvent( PUT, session, session.getLastAccessedTimeMillis() ) );
+    }
+
+    /**
+     * Replicates the access to the session, sliding its expiration on the peers.
+     *
+     * @param session the accessed session
+     * @param now the access time, in milliseconds
+     */
+    void accessed( DefaultSession session, long now )
+    {
+        enqueue( new ReplicationEvent( ACCESS, session, now ) );
+    }
+
+    private void enqueue( ReplicationEvent event )
+    {
+        if ( !events.offer( event ) && droppedEvents.incrementAndGet() % MAX_PENDING_EVENTS == 1 )
+        {
+            logger.warn( "Sessions replication can't keep up, {} events dropped so far", droppedEvents.get() );
+        }
+    }
+
+    /**
+     * Stops the replication, closing all the connections.
+     */
+    public void shutDown()
+    {
+        running = false;
+        close( listener );
+
+        if ( sender != null )
+        {
+            sender.interrupt();
+        }
+
+        for ( Peer peer : peers )
+        {
+            peer.close();
+        }
+        for ( Socket connection : connections )
+        {
+            close( connection );
+        }
+    }
+
+    private void send()
+    {
+        Mac mac = newMac();
+        List<ReplicationEvent> batch = new ArrayList<ReplicationEvent>( MAX_BATCH_SIZE );
+        ByteArrayOutputStream encodedEvents = new ByteArrayOutputStream();
+
+        while ( running )
+        {
+            try
+            {
+                batch.add( events.take() );
+            }
+            catch ( InterruptedException e )
+            {
+                break;
+            }
+            events.drainTo( batch, MAX_BATCH_SIZE - 1 );
+
+            // events are encoded one by one, a session that can't be serialized doesn't drop the others
+            int count = 0;
+            for ( ReplicationEvent event : batch )
+            {
+                try
+                {
+                    encodedEvents.write( encode( event ) );
+                    count++;
+                }
+                catch ( IOException e )
+                {
+                    logger.warn( "Session " + event.session.getId()
+                                 + " cannot be replicated, attributes can't be serialized", e );
+                }
+                catch ( RuntimeException e )
+                {
+                    // attributes can be modified by the requests threads while serialized, the sender must not die
+                    logger.warn( "Session " + event.session.getId()
+                                 + " cannot be replicated, attributes serialization failed", e );
+                }
+            }
+            batch.clear();
+
+            if ( count > 0 )
+            {
+                byte[] frame = frame( mac, count, encodedEvents );
+                for ( Peer peer : peers )
+                {
+                    peer.send( frame );
+                }
+            }
+            encodedEvents.reset();
+        }
+    }
+
+    /**
+     * Builds the signed frame of the encoded events: the frame length, the events count, the events
+     * and the signature of both count and events.
+     */
+    private static byte[] frame( Mac mac, int count, ByteArrayOutputStream encodedEvents )
+    {
+        int length = 4 + encodedEvents.size() + MAC_LENGTH;
+        ByteArrayOutputStream frame = new ByteArrayOutputStream( 4 + length );
+        DataOutputStream output = new DataOutputStream( frame );
+
+        try
+        {
+            output.writeInt( length );
+            output.writeInt( count );
+            encodedEvents.writeTo( output );
+
+            byte[] signed = frame.toByteArray();
+            mac.update( signed, 4, signed.length - 4 );
+            output.write( mac.doFinal() );
+            output.close();
+        }
+        catch ( IOException e )
+        {
+            // never thrown writing in memory
+            throw new IllegalStateException( e );
+        }
+
+        return frame.toByteArray();
+    }
+
+    private static byte[] encode( ReplicationEvent event )
+        throws IOException
+    {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream( encoded );
+        DefaultSession session = event.session;
+
+        output.writeByte( event.type );
+        output.writeUTF( session.getId() );
+        output.writeLong( event.time );
+
+        if ( PUT == event.type )
+        {
+            // the attributes snapshot is taken here, out of the requests threads
+            byte[] attributes = SessionAttributesCodec.serialize( session.getAttributes() );
+            output.writeLong( session.getCreationTime().getTime() );
+            output.writeInt( attributes.length );
+            output.write( attributes );
+        }
+        output.close();
+
+        return encoded.toByteArray();
+    }
+
+    private void accept()
+    {
+        while ( running )
+        {
+            final Socket connection;
+            try
+            {
+                connection = listener.accept();
+            }
+            catch ( IOException e )
+            {
+                if ( running )
+                {
+                    logger.warn( "Sessions replication listener failed", e );
+                }
+                return;
+            }
+
+            if ( !peerHosts.contains( connection.getInetAddress() ) )
+            {
+                logger.warn( "{} is not a sessions replication peer, closing the connection",
+                             connection.getRemoteSocketAddress() );
+                close( connection );
+                continue;
+            }
+
+            connections.add( connection );
+
+            Thread receiver = new Thread( new Runnable()
+            {
+
+                @Override
+                public void run()
+                {
+                    receive( connection );
+                }
+
+            }, "sessions-replication-receiver-" + connection.getRemoteSocketAddress() );
+            receiver.setDaemon( true );
+            receiver.start();
+        }
+    }
+
+    private void receive( Socket connection )
+    {
+        try
+        {
+            DataInputStream input = new DataInputStream( new BufferedInputStream( connection.getInputStream() ) );
+
+            if ( MAGIC != input.readInt() )
+            {
+                logger.warn( "{} is not a sessions replication peer, closing the connection",
+                             connection.getRemoteSocketAddress() );
+                return;
+            }
+
+            Mac mac = newMac();
+            while ( running )
+            {
+                int length = input.readInt();
+                if ( length < 4 + MAC_LENGTH || length > MAX_FRAME_LENGTH )
+                {
+                    throw new IOException( "Invalid sessions replication frame length " + length );
+                }
+
+                byte[] frame = new byte[length];
+                input.readFully( frame );
+
+                // nothing is decoded before the frame is authenticated
+                int signatureOffset = length - MAC_LENGTH;
+                mac.update( frame, 0, signatureOffset );
+                if ( !isSignature( mac.doFinal(), frame, signatureOffset ) )
+                {
+                    logger.warn( "Sessions replication frame from {} has not a valid signature, is the secret key shared by the peers?",
+                                 connection.getRemoteSocketAddress() );
+                    return;
+                }
+
+                DataInputStream events = new DataInputStream( new ByteArrayInputStream( frame, 0, signatureOffset ) );
+                int count = events.readInt();
+                for ( int i = 0; i < count; i++ )
+                {
+                    byte type = events.readByte();
+                    String id = events.readUTF();
+                    long time = events.readLong();
+
+                    if ( PUT == type )
+                    {
+                        long creationTime = events.readLong();
+                        byte[] attributes = new byte[events.readInt()];
+                        events.readFully( attributes );
+
+                        sessionManager.applyReplica( id, creationTime, time, SessionAttributesCodec.deserialize( attributes ) );
+                    }
+                    else if ( ACCESS == type )
+                    {
+                        sessionManager.applyAccess( id, time );
+                    }
+                    else
+                    {
+                        throw new IOException( "Unknown sessions replication event " + type );
+                    }
+                }
+            }
+        }
+        catch ( EOFException e )
+        {
+            // peer closed the connection
+        }
+        catch ( IOException e )
+        {
+            if ( running )
+            {
+                logger.warn( "Sessions replication from " + connection.getRemoteSocketAddress() + " failed", e );
+            }
+        }
+        finally
+        {
+            connections.remove( connection );
+            close( connection );
+        }
+    }
+
+    private Mac newMac()
+    {
+        try
+        {
+            Mac mac = Mac.getInstance( MAC_ALGORITHM );
+            mac.init( signatureKey );
+            return mac;
+        }
+        catch ( GeneralSecurityException e )
+        {
+            throw new IllegalStateException( "HMAC-SHA256 not supported by the current JVM", e );
+        }
+    }
+
+    /**
+     * Compares the expected signature with the one at the end of the frame in constant time,
+     * not to leak how many bytes match.
+     */
+    private static boolean isSignature( byte[] expected, byte[] frame, int offset )
+    {
+        int result = 0;
+        for ( int i = 0; i < MAC_LENGTH; i++ )
+        {
+            result |= expected[i] ^ frame[offset + i];
+        }
+        return result == 0;
+    }
+
+    // sockets are not Closeable in Java 6
+
+    private static void close( Socket socket )
+    {
+        if ( socket != null )
+        {
+            try
+            {
+                socket.close();
+            }
+            catch ( IOException e )
+            {
+                // close quietly
+            }
+        }
+    }
+
+    private static void close( ServerSocket serverSocket )
+    {
+        try
+        {
+            serverSocket.close();
+        }
+        catch ( IOException e )
+        {
+            // close quietly
+        }
+    }
+
+    /**
+     * A session created, modified or accessed.
+     */
+    private static final class ReplicationEvent
+    {
+
+        final byte type;
+
+        final DefaultSession session;
+
+        final long time;
+
+        public ReplicationEvent( byte type, DefaultSession session, long time )
+        {
+            this.type = type;
+            this.session = session;
+            this.time = time;
+        }
+
+    }
+
+    /**
+     * A server the events have to be sent to, connected lazily.
+     */
+    private final class Peer
+    {
+
+        private final InetSocketAddress address;
+
+        private Socket socket;
+
+        private DataOutputStream output;
+
+        private long nextConnectionAttempt;
+
+        public Peer( InetSocketAddress address )
+        {
+            this.address = address;
+        }
+
+        public synchronized void send( byte[] frame )
+        {
+            if ( output == null && !connect() )
+            {
+                return;
+            }
+
+            try
+            {
+                output.write( frame );
+                output.flush();
+            }
+            catch ( IOException e )
+            {
+                logger.warn( "Sessions replication to {} failed: {}", address, e.getMessage() );
+                close();
+            }
+        }
+
+        private boolean connect()
+        {
+            long now = System.currentTimeMillis();
+            if ( now < nextConnectionAttempt )
+            {
+                return false;
+            }
+
+            Socket connecting = new Socket();
+            try
+            {
+                connecting.setTcpNoDelay( true );
+                connecting.connect( address, CONNECT_TIMEOUT );
+
+                output = new DataOutputStream( new BufferedOutputStream( connecting.getOutputStream() ) );
+                output.writeInt( MAGIC );
+                socket = connecting;
+                return true;
+            }
+            catch ( IOException e )
+            {
+                logger.warn( "Sessions replication peer {} not reachable: {}", address, e.getMessage() );
+                SessionReplicator.close( connecting );
+                output = null;
+                nextConnectionAttempt = now + RECONNECT_DELAY;
+                return false;
+            }
+        }
+
+        public synchronized void close()
+        {
+            SessionReplicator.close( socket );
+            socket = null;
+            output = null;
+        }
+
+    }
+
+}
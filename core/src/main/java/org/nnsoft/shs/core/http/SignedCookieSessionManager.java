@@ -0,0 +1,418 @@
+package org.nnsoft.shs.core.http;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static java.lang.System.arraycopy;
+import static java.lang.System.currentTimeMillis;
+import static java.util.Arrays.copyOf;
+import static javax.crypto.Cipher.DECRYPT_MODE;
+import static javax.crypto.Cipher.ENCRYPT_MODE;
+import static org.nnsoft.shs.core.http.UrlSafeBase64.decode;
+import static org.nnsoft.shs.core.http.UrlSafeBase64.encode;
+import static org.nnsoft.shs.lang.Preconditions.checkArgument;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.nnsoft.shs.http.Request;
+import org.nnsoft.shs.http.Response;
+import org.nnsoft.shs.http.SessionIdGenerator;
+import org.slf4j.Logger;
+
+/**
+ * The {@link SessionManager} that stores the HTTP {@link org.nnsoft.shs.http.Session}s in the session cookie:
+ * attributes are serialized, optionally encrypted, and signed with HMAC-SHA256, so neither a registry
+ * nor an expiration timer are needed and every server sharing the same secret key can restore them.
+ *
+ * Session attributes must be {@link java.io.Serializable} and small enough to fit in a cookie.
+ */
+public final class SignedCookieSessionManager
+    implements SessionManager
+{
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private static final String CIPHER_ALGORITHM = "AES/CBC/PKCS5Padding";
+
+    private static final int IV_LENGTH = 16;
+
+    private static final int ENCRYPTION_KEY_LENGTH = 16;
+
+    /**
+     * The maximum length of the session cookie value, user agents are not required to store bigger cookies.
+     */
+    private static final int MAX_COOKIE_VALUE_LENGTH = 4000;
+
+    private final Logger logger = getLogger( getClass() );
+
+    private final int sessionMaxAge;
+
+    /**
+     * Not modified sessions are sent back to the client, to slide their expiration,
+     * only when older than this interval.
+     */
+    private final int refreshInterval;
+
+    private final SessionIdGenerator sessionIdGenerator;
+
+    private final SecretKeySpec signatureKey;
+
+    private final SecretKeySpec encryptionKey;
+
+    private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>()
+    {
+
+        @Override
+        protected Mac initialValue()
+        {
+            try
+            {
+                Mac mac = Mac.getInstance( MAC_ALGORITHM );
+                mac.init( signatureKey );
+                return mac;
+            }
+            catch ( GeneralSecurityException e )
+            {
+                throw new IllegalStateException( "HMAC-SHA256 not supported by the current JVM", e );
+            }
+        }
+
+    };
+
+    private final ThreadLocal<Cipher> ciphers = new ThreadLocal<Cipher>()
+    {
+
+        @Override
+        protected Cipher initialValue()
+        {
+            try
+            {
+                return Cipher.getInstance( CIPHER_ALGORITHM );
+            }
+            catch ( GeneralSecurityException e )
+            {
+                throw new IllegalStateException( "AES not supported by the current JVM", e );
+            }
+        }
+
+    };
+
+    /**
+     * Creates a new sessions manager; sessions expire when not accessed for longer than the given max age.
+     *
+     * @param sessionMaxAge the sessions max age, in milliseconds
+     * @param sessionIdGenerator the generator of the new sessions identifiers
+     * @param secretKey the secret the signature and encryption keys are derived from, at least 16 bytes long
+     * @param encrypt true if the session content has to be encrypted, false if just signed
+     */
+    public SignedCookieSessionManager( int sessionMaxAge,
+                                       SessionIdGenerator sessionIdGenerator,
+                                       byte[] secretKey,
+                                       boolean encrypt )
+    {
+        checkArgument( sessionMaxAge > 0, "Sessions without timelive won't exist" );
+        checkArgument( sessionIdGenerator != null, "Null session id generator not allowed" );
+        checkArgument( secretKey != null && secretKey.length >= 16, "Secret key must be at least 16 bytes long" );
+
+        this.sessionMaxAge = sessionMaxAge;
+        this.refreshInterval = sessionMaxAge / 10;
+        this.sessionIdGenerator = sessionIdGenerator;
+
+        // distinct keys for distinct purposes, derived from the same secret
+        signatureKey = new SecretKeySpec( derive( secretKey, "signature" ), MAC_ALGORITHM );
+        encryptionKey = encrypt
+                        ? new SecretKeySpec( copyOf( derive( secretKey, "encryption" ), ENCRYPTION_KEY_LENGTH ), "AES" )
+                        : null;
+    }
+
+    private static byte[] derive( byte[] secretKey, String purpose )
+    {
+        try
+        {
+            Mac mac = Mac.getInstance( MAC_ALGORITHM );
+            mac.init( new SecretKeySpec( secretKey, MAC_ALGORITHM ) );
+            return mac.doFinal( purpose.getBytes( "US-ASCII" ) );
+        }
+        catch ( GeneralSecurityException e )
+        {
+            throw new IllegalStateException( "HMAC-SHA256 not supported by the current JVM", e );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( "US-ASCII not supported by the current JVM", e );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void manageSession( Request request )
+    {
+        MutableRequest mutableRequest = (MutableRequest) request;
+
+        DefaultSession session = decodeSession( mutableRequest.getRequestedSessionId(), currentTimeMillis() );
+
+        if ( session != null )
+        {
+            mutableRequest.setSession( session );
+        }
+        else
+        {
+            // the session will be created at the first request
+            mutableRequest.setSessionManager( this );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DefaultSession restoreSession( String sessionId )
+    {
+        return decodeSession( sessionId, currentTimeMillis() );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DefaultSession createSession()
+    {
+        return new DefaultSession( sessionIdGenerator.generateSessionId() );
+    }
+
+    /**
+     * Sends the session cookie to the client, if the session has been created or modified while serving
+     * the request, or its expiration has to slide.
+     *
+     * @param request the served HTTP request
+     * @param response the HTTP response will be pushed out.
+     * @throws IOException if the session attributes cannot be serialized or don't fit in the cookie.
+     */
+    @Override
+    public void commitSession( Request request, Response response )
+        throws IOException
+    {
+        if ( !( (MutableRequest) request ).hasSession() )
+        {
+            return;
+        }
+
+        DefaultSession session = (DefaultSession) request.getSession();
+        long now = currentTimeMillis();
+
+        if ( !session.isNew() && !session.isModified()
+             && now - session.getLastAccessedTimeMillis() < refreshInterval )
+        {
+            return;
+        }
+
+        String value = encodeSession( session, now );
+
+        if ( value.length() > MAX_COOKIE_VALUE_LENGTH )
+        {
+            throw new IOException( "Session " + session.getId() + " is too large to be stored in a cookie: "
+                                   + value.length() + " chars" );
+        }
+
+        // no max age, sessions expiration is verified when restoring them
+        response.addCookie( new CookieBuilder()
+                                .setDomain( request.getServerHost() )
+                                .addPort( request.getServerPort() )
+                                .setName( SESSION_NAME )
+                                .setValue( value )
+                                .setPath( "/" )
+                                .build() );
+    }
+
+    /**
+     * Nothing to release, sessions are stored by clients.
+     */
+    @Override
+    public void shutDown()
+    {
+        // do nothing
+    }
+
+    /**
+     * Serializes the session in a signed, and optionally encrypted, cookie value.
+     *
+     * @param session the session to serialize
+     * @param now the current time, in milliseconds
+     * @return the session cookie value
+     * @throws IOException if the session attributes cannot be serialized
+     */
+    String encodeSession( DefaultSession session, long now )
+        throws IOException
+    {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream( buffer );
+        output.writeUTF( session.getId() );
+        output.writeLong( session.getCreationTime().getTime() );
+        output.writeLong( now );
+        output.writeObject( session.getAttributes() );
+        output.close();
+
+        byte[] data = buffer.toByteArray();
+
+        if ( encryptionKey != null )
+        {
+            data = encrypt( data );
+        }
+
+        return encode( data ) + '.' + encode( macs.get().doFinal( data ) );
+    }
+
+    /**
+     * Restores the session from the cookie value, once the signature has been verified.
+     *
+     * @param value the session cookie value sent by the client, can be null
+     * @param now the current time, in milliseconds
+     * @return the restored session, null if the value is not valid or the session expired
+     */
+    DefaultSession decodeSession( String value, long now )
+    {
+        if ( value == null )
+        {
+            return null;
+        }
+
+        int separator = value.indexOf( '.' );
+        if ( separator < 0 )
+        {
+            return null;
+        }
+
+        byte[] data = decode( value, 0, separator );
+        byte[] signature = decode( value, separator + 1, value.length() - separator - 1 );
+
+        // never deserialize what was not signed by us
+        if ( data == null || signature == null || !isEqual( macs.get().doFinal( data ), signature ) )
+        {
+            if ( logger.isDebugEnabled() )
+            {
+                logger.debug( "Session cookie {} has not a valid signature, ignoring it", value );
+            }
+            return null;
+        }
+
+        try
+        {
+            if ( encryptionKey != null )
+            {
+                data = decrypt( data );
+            }
+
+            ObjectInputStream input = new ObjectInputStream( new ByteArrayInputStream( data ) );
+            String id = input.readUTF();
+            long creationTime = input.readLong();
+            long lastAccessedTime = input.readLong();
+
+            if ( now - lastAccessedTime > sessionMaxAge )
+            {
+                return null;
+            }
+
+            @SuppressWarnings( "unchecked" ) // signed, so written by this manager
+            Map<String, Object> attributes = (Map<String, Object>) input.readObject();
+
+            return new DefaultSession( id, creationTime, lastAccessedTime, attributes );
+        }
+        catch ( GeneralSecurityException e )
+        {
+            logger.warn( "Signed session cookie cannot be decrypted, is the secret key shared by other servers?", e );
+        }
+        catch ( ClassNotFoundException e )
+        {
+            logger.warn( "Session attributes cannot be restored, ignoring the session", e );
+        }
+        catch ( IOException e )
+        {
+            logger.warn( "Session attributes cannot be restored, ignoring the session", e );
+        }
+        return null;
+    }
+
+    private byte[] encrypt( byte[] data )
+        throws IOException
+    {
+        byte[] iv = new byte[IV_LENGTH];
+        SecureRandoms.current().nextBytes( iv );
+
+        try
+        {
+            Cipher cipher = ciphers.get();
+            cipher.init( ENCRYPT_MODE, encryptionKey, new IvParameterSpec( iv ) );
+
+            byte[] encrypted = new byte[IV_LENGTH + cipher.getOutputSize( data.length )];
+            arraycopy( iv, 0, encrypted, 0, IV_LENGTH );
+            int length = IV_LENGTH + cipher.doFinal( data, 0, data.length, encrypted, IV_LENGTH );
+            return length == encrypted.length ? encrypted : copyOf( encrypted, length );
+        }
+        catch ( GeneralSecurityException e )
+        {
+            throw new IOException( "Session cannot be encrypted: " + e.getMessage() );
+        }
+    }
+
+    private byte[] decrypt( byte[] data )
+        throws GeneralSecurityException
+    {
+        Cipher cipher = ciphers.get();
+        cipher.init( DECRYPT_MODE, encryptionKey, new IvParameterSpec( data, 0, IV_LENGTH ) );
+        return cipher.doFinal( data, IV_LENGTH, data.length - IV_LENGTH );
+    }
+
+    /**
+     * Compares the signatures in constant time, not to leak how many bytes match.
+     */
+    private static boolean isEqual( byte[] expected, byte[] actual )
+    {
+        if ( expected.length != actual.length )
+        {
+            return false;
+        }
+
+        int result = 0;
+        for ( int i = 0; i < expected.length; i++ )
+        {
+            result |= expected[i] ^ actual[i];
+        }
+        return result == 0;
+    }
+
+}
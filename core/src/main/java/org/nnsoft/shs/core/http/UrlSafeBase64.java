@@ -0,0 +1,144 @@
+package org.nnsoft.shs.core.http;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static java.util.Arrays.fill;
+
+/**
+ * Base64 codec that uses the URL safe alphabet and omits the padding,
+ * so encoded values can be sent as cookie values without quoting.
+ */
+final class UrlSafeBase64
+{
+
+    /**
+     * The base64 alphabet safe for URLs and cookie values.
+     */
+    private static final char[] ALPHABET =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+    /**
+     * The alphabet index of each ASCII char, -1 if not part of the alphabet.
+     */
+    private static final int[] INDEXES = new int[128];
+
+    static
+    {
+        fill( INDEXES, -1 );
+        for ( int i = 0; i < ALPHABET.length; i++ )
+        {
+            INDEXES[ALPHABET[i]] = i;
+        }
+    }
+
+    /**
+     * Hidden constructor, this class must not be instantiated.
+     */
+    private UrlSafeBase64()
+    {
+        // do nothing
+    }
+
+    /**
+     * Encodes the input bytes in base64, using the URL safe alphabet and without padding.
+     *
+     * @param bytes the bytes to encode
+     * @return the encoded bytes
+     */
+    public static String encode( byte[] bytes )
+    {
+        char[] encoded = new char[( bytes.length * 4 + 2 ) / 3];
+        int index = 0;
+        int i = 0;
+
+        for ( ; i + 2 < bytes.length; i += 3 )
+        {
+            int chunk = ( bytes[i] & 0xff ) << 16 | ( bytes[i + 1] & 0xff ) << 8 | ( bytes[i + 2] & 0xff );
+            encoded[index++] = ALPHABET[chunk >>> 18];
+            encoded[index++] = ALPHABET[( chunk >>> 12 ) & 0x3f];
+            encoded[index++] = ALPHABET[( chunk >>> 6 ) & 0x3f];
+            encoded[index++] = ALPHABET[chunk & 0x3f];
+        }
+
+        int remaining = bytes.length - i;
+        if ( remaining > 0 )
+        {
+            int chunk = ( bytes[i] & 0xff ) << 16;
+            if ( remaining == 2 )
+            {
+                chunk |= ( bytes[i + 1] & 0xff ) << 8;
+            }
+            encoded[index++] = ALPHABET[chunk >>> 18];
+            encoded[index++] = ALPHABET[( chunk >>> 12 ) & 0x3f];
+            if ( remaining == 2 )
+            {
+                encoded[index++] = ALPHABET[( chunk >>> 6 ) & 0x3f];
+            }
+        }
+
+        return new String( encoded );
+    }
+
+    /**
+     * Decodes the input chars, encoded in base64 using the URL safe alphabet and without padding.
+     *
+     * @param encoded the chars to decode
+     * @param offset the index of the first char to decode
+     * @param length the number of chars to decode
+     * @return the decoded bytes, null if the input is not a valid encoded value
+     */
+    public static byte[] decode( String encoded, int offset, int length )
+    {
+        if ( length % 4 == 1 )
+        {
+            return null;
+        }
+
+        byte[] decoded = new byte[length * 3 / 4];
+        int index = 0;
+        int chunk = 0;
+        int bits = 0;
+
+        for ( int i = offset; i < offset + length; i++ )
+        {
+            char c = encoded.charAt( i );
+            int value = c < INDEXES.length ? INDEXES[c] : -1;
+            if ( value < 0 )
+            {
+                return null;
+            }
+
+            chunk = chunk << 6 | value;
+            bits += 6;
+            if ( bits >= 8 )
+            {
+                bits -= 8;
+                decoded[index++] = (byte) ( chunk >>> bits );
+            }
+        }
+
+        return decoded;
+    }
+
+}
@@ -23,12 +23,14 @@ package org.nnsoft.shs.core.http.parse;
  * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
+import static org.nnsoft.shs.core.http.SessionManager.SESSION_NAME;
 import static org.nnsoft.shs.core.http.parse.ParserStatus.COOKIE_NAME;
 import static org.nnsoft.shs.core.http.parse.ParserStatus.COOKIE_VALUE;
 
 import org.nnsoft.shs.core.http.CookieBuilder;
 import org.nnsoft.shs.core.http.MutableRequest;
 import org.nnsoft.shs.core.http.RequestParseException;
+import org.nnsoft.shs.http.Cookie;
 
 final class CookieParserTrigger
     implements ParserTrigger
@@ -46,7 +48,15 @@ final class CookieParserTrigger
             return COOKIE_VALUE;
         }
 
-        request.addCookie( cookieBuilder.setValue( token ).build() );
+        Cookie cookie = cookieBuilder.setValue( token ).build();
+        request.addCookie( cookie );
+
+        // the session lookup won't need to scan the cookies
+        if ( SESSION_NAME.equals( cookie.getName() ) )
+        {
+            request.setRequestedSessionId( token );
+        }
+
         return COOKIE_NAME;
     }
 
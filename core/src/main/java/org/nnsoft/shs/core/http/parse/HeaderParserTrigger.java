@@ -49,11 +49,11 @@ final class HeaderParserTrigger
         {
             headerNamePtr = token;
 
-            if ( USER_AGENT.equals( headerNamePtr ) )
+            if ( USER_AGENT.equalsIgnoreCase( headerNamePtr ) )
             {
                 return HEADER_USER_AGENT_VALUE;
             }
-            else if ( COOKIE.equals( headerNamePtr ) )
+            else if ( COOKIE.equalsIgnoreCase( headerNamePtr ) )
             {
                 headerNamePtr = null; // no longer needed
                 return COOKIE_NAME; // switch to cookie trigger
@@ -63,7 +63,7 @@ final class HeaderParserTrigger
         {
             request.addHeader( headerNamePtr, token );
 
-            if ( CONTENT_LENGTH.equals( headerNamePtr ) )
+            if ( CONTENT_LENGTH.equalsIgnoreCase( headerNamePtr ) )
             {
                 try
                 {
@@ -0,0 +1,168 @@
+package org.nnsoft.shs.core.http.parse;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static org.nnsoft.shs.http.Headers.ACCEPT;
+import static org.nnsoft.shs.http.Headers.ACCEPT_CHARSET;
+import static org.nnsoft.shs.http.Headers.ACCEPT_ENCODING;
+import static org.nnsoft.shs.http.Headers.ACCEPT_LANGUAGE;
+import static org.nnsoft.shs.http.Headers.AUTHORIZATION;
+import static org.nnsoft.shs.http.Headers.CACHE_CONTROL;
+import static org.nnsoft.shs.http.Headers.CONNECTION;
+import static org.nnsoft.shs.http.Headers.CONTENT_ENCODING;
+import static org.nnsoft.shs.http.Headers.CONTENT_LENGTH;
+import static org.nnsoft.shs.http.Headers.CONTENT_TYPE;
+import static org.nnsoft.shs.http.Headers.COOKIE;
+import static org.nnsoft.shs.http.Headers.DATE;
+import static org.nnsoft.shs.http.Headers.EXPECT;
+import static org.nnsoft.shs.http.Headers.FROM;
+import static org.nnsoft.shs.http.Headers.HOST;
+import static org.nnsoft.shs.http.Headers.IF_MATCH;
+import static org.nnsoft.shs.http.Headers.IF_MODIFIED_SINCE;
+import static org.nnsoft.shs.http.Headers.IF_NONE_MATCH;
+import static org.nnsoft.shs.http.Headers.IF_RANGE;
+import static org.nnsoft.shs.http.Headers.IF_UNMODIFIED_SINCE;
+import static org.nnsoft.shs.http.Headers.KEEP_ALIVE;
+import static org.nnsoft.shs.http.Headers.MAX_FORWARDS;
+import static org.nnsoft.shs.http.Headers.PRAGMA;
+import static org.nnsoft.shs.http.Headers.PROXY_AUTHORIZATION;
+import static org.nnsoft.shs.http.Headers.RANGE;
+import static org.nnsoft.shs.http.Headers.REFERER;
+import static org.nnsoft.shs.http.Headers.TE;
+import static org.nnsoft.shs.http.Headers.TRAILER;
+import static org.nnsoft.shs.http.Headers.TRANSFER_ENCODING;
+import static org.nnsoft.shs.http.Headers.UPGRADE;
+import static org.nnsoft.shs.http.Headers.USER_AGENT;
+import static org.nnsoft.shs.http.Headers.VIA;
+import static org.nnsoft.shs.http.Headers.WARNING;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nnsoft.shs.http.Request.Method;
+
+/**
+ * The tokens that appear in almost every request - methods, protocol and request header names -
+ * so the parser can share a single instance of them rather than decoding a new String each time.
+ */
+final class KnownTokens
+{
+
+    private static final String HTTP = "HTTP";
+
+    private static final String HTTP_10 = "1.0";
+
+    private static final String HTTP_11 = "1.1";
+
+    /**
+     * Tokens grouped by length, to compare only the candidates with the right size.
+     */
+    private static final String[][] TOKENS_BY_LENGTH;
+
+    static
+    {
+        List<String> tokens = new ArrayList<String>();
+
+        for ( Method method : Method.values() )
+        {
+            tokens.add( method.name() );
+        }
+
+        tokens.add( HTTP );
+        tokens.add( HTTP_10 );
+        tokens.add( HTTP_11 );
+
+        String[] headers = {
+            ACCEPT, ACCEPT_CHARSET, ACCEPT_ENCODING, ACCEPT_LANGUAGE, AUTHORIZATION, CACHE_CONTROL,
+            CONNECTION, CONTENT_ENCODING, CONTENT_LENGTH, CONTENT_TYPE, COOKIE, DATE, EXPECT, FROM,
+            HOST, IF_MATCH, IF_MODIFIED_SINCE, IF_NONE_MATCH, IF_RANGE, IF_UNMODIFIED_SINCE, KEEP_ALIVE,
+            MAX_FORWARDS, PRAGMA, PROXY_AUTHORIZATION, RANGE, REFERER, TE, TRAILER, TRANSFER_ENCODING,
+            UPGRADE, USER_AGENT, VIA, WARNING
+        };
+        for ( String header : headers )
+        {
+            tokens.add( header );
+        }
+
+        int maxLength = 0;
+        for ( String token : tokens )
+        {
+            maxLength = Math.max( maxLength, token.length() );
+        }
+
+        List<List<String>> byLength = new ArrayList<List<String>>( maxLength + 1 );
+        for ( int i = 0; i <= maxLength; i++ )
+        {
+            byLength.add( new ArrayList<String>() );
+        }
+        for ( String token : tokens )
+        {
+            byLength.get( token.length() ).add( token );
+        }
+
+        TOKENS_BY_LENGTH = new String[maxLength + 1][];
+        for ( int i = 0; i <= maxLength; i++ )
+        {
+            TOKENS_BY_LENGTH[i] = byLength.get( i ).toArray( new String[byLength.get( i ).size()] );
+        }
+    }
+
+    /**
+     * Hidden constructor, this class must not be instantiated.
+     */
+    private KnownTokens()
+    {
+        // do nothing
+    }
+
+    /**
+     * Looks up the shared instance of the token represented by the input ASCII bytes.
+     *
+     * @param bytes the token bytes.
+     * @param length the number of valid bytes in the input array.
+     * @return the shared instance of the token, null if the token is not well known.
+     */
+    public static String lookup( byte[] bytes, int length )
+    {
+        if ( length >= TOKENS_BY_LENGTH.length )
+        {
+            return null;
+        }
+
+        candidates: for ( String candidate : TOKENS_BY_LENGTH[length] )
+        {
+            for ( int i = 0; i < length; i++ )
+            {
+                if ( candidate.charAt( i ) != bytes[i] )
+                {
+                    continue candidates;
+                }
+            }
+            return candidate;
+        }
+
+        return null;
+    }
+
+}
@@ -23,6 +23,7 @@ package org.nnsoft.shs.core.http.parse;
  * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
+import static java.lang.Boolean.getBoolean;
 import static org.nnsoft.shs.core.http.parse.ParserStatus.BODY_CONSUMING;
 import static org.nnsoft.shs.core.http.parse.ParserStatus.COMPLETE;
 import static org.nnsoft.shs.core.http.parse.ParserStatus.COOKIE_NAME;
@@ -38,13 +39,12 @@ import static org.nnsoft.shs.core.http.parse.ParserStatus.PROTOCOL_NAME;
 import static org.nnsoft.shs.core.http.parse.ParserStatus.PROTOCOL_VERSION;
 import static org.nnsoft.shs.core.http.parse.ParserStatus.QS_PARAM_NAME;
 import static org.nnsoft.shs.core.http.parse.ParserStatus.QS_PARAM_VALUE;
-import static org.nnsoft.shs.core.io.IOUtils.toUtf8CharBuffer;
+import static org.nnsoft.shs.core.io.IOUtils.toUtf8String;
 import static org.nnsoft.shs.http.Headers.CONTENT_TYPE;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
 import java.util.EnumMap;
 import java.util.LinkedList;
 import java.util.Map;
@@ -57,34 +57,55 @@ import org.nnsoft.shs.http.Request;
 import org.slf4j.Logger;
 
 /**
- * An LL(0) {@link Request} pull parser that incrementally rebuilds the HTTP Request.
+ * An LL(0) {@link Request} pull parser that incrementally rebuilds the HTTP Request,
+ * scanning the raw bytes without decoding the whole chunk first.
  *
  * This class is not thread-safe!
  */
 public final class RequestStreamingParser
 {
 
+    /**
+     * The system property that, set to {@code true} at startup, enables the parser tracing.
+     */
+    public static final String TRACE_PROPERTY = "shs.parser.trace";
+
     private static final Logger logger = getLogger( RequestStreamingParser.class );
 
-    private static final char CARRIAGE_RETURN = '\r';
+    /**
+     * Fixed once the class is loaded, so when disabled the JIT removes the tracing from the parse loop.
+     */
+    private static final boolean TRACE = getBoolean( TRACE_PROPERTY );
+
+    private static final byte CARRIAGE_RETURN = '\r';
+
+    private static final byte NEW_LINE = '\n';
 
-    private static final char NEW_LINE = '\n';
+    private static final byte TOKEN_SEPARATOR = ' ';
 
-    private static final char TOKEN_SEPARATOR = ' ';
+    private static final byte HEADER_SEPARATOR = ';';
 
-    private static final char HEADER_SEPARATOR = ';';
+    private static final byte QUERY_STRING_SEPARATOR = '?';
 
-    private static final char QUERY_STRING_SEPARATOR = '?';
+    private static final byte PARAMETER_SEPARATOR = '&';
 
-    private static final char PARAMETER_SEPARATOR = '&';
+    private static final byte KEY_VALUE_SEPARATOR = '=';
 
-    private static final char KEY_VALUE_SEPARATOR = '=';
+    private static final byte PROTOCOL_VERSION_SEPARATOR = '/';
 
-    private static final char PROTOCOL_VERSION_SEPARATOR = '/';
+    private static final byte HEADER_NAME_SEPARATOR = ':';
 
-    private static final char HEADER_NAME_SEPARATOR = ':';
+    private static final byte HEADER_VALUES_SEPARATOR = ',';
 
-    private static final char HEADER_VALUES_SEPARATOR = ',';
+    /**
+     * All the delimiters above are lower than {@code '@'}, any byte greater or equal
+     * is simply part of the current token.
+     */
+    private static final int FIRST_LITERAL_BYTE = 0x40;
+
+    private static final long LITERAL_WORD_MASK = 0x4040404040404040L;
+
+    private static final long HIGH_BITS_MASK = 0x8080808080808080L;
 
     private static final String FORM_URLENCODED = "application/x-www-form-urlencoded";
 
@@ -92,7 +113,7 @@ public final class RequestStreamingParser
 
     private final Map<ParserStatus, ParserTrigger> parserTriggers = new EnumMap<ParserStatus, ParserTrigger>( ParserStatus.class );
 
-    private StringBuilder accumulator = new StringBuilder();
+    private final TokenBuffer accumulator = new TokenBuffer();
 
     private ParserStatus status = ParserStatus.METHOD;
 
@@ -157,19 +178,40 @@ public final class RequestStreamingParser
         }
         else
         {
-            CharBuffer charBuffer = toUtf8CharBuffer( messageBuffer );
-            dance: while ( charBuffer.hasRemaining() )
+            dance: while ( messageBuffer.hasRemaining() )
             {
-                char current = charBuffer.get();
+                if ( isRequestMessageComplete() )
+                {
+                    break dance;
+                }
 
-                if ( logger.isDebugEnabled() )
+                // form parameters count the consumed bytes one by one
+                if ( PARAM_NAME != status && PARAM_VALUE != status )
                 {
-                    logger.debug( "{} consuming char: `{}'", status, current );
+                    int literals = literalRunLength( messageBuffer );
+                    if ( literals > 0 )
+                    {
+                        if ( TRACE && logger.isDebugEnabled() )
+                        {
+                            ByteBuffer run = messageBuffer.duplicate();
+                            run.limit( run.position() + literals );
+                            logger.debug( "{} consuming chars: `{}'", status, toUtf8String( run ) );
+                        }
+
+                        accumulator.append( messageBuffer, literals );
+
+                        if ( !messageBuffer.hasRemaining() )
+                        {
+                            break dance;
+                        }
+                    }
                 }
 
-                if ( isRequestMessageComplete() )
+                byte current = messageBuffer.get();
+
+                if ( TRACE && logger.isDebugEnabled() )
                 {
-                    break dance;
+                    logger.debug( "{} consuming char: `{}'", status, (char) current );
                 }
 
                 switch ( current )
@@ -265,7 +307,7 @@ public final class RequestStreamingParser
                         }
                         else if ( request.getContentLength() > 0 )
                         {
-                            if ( logger.isDebugEnabled() )
+                            if ( TRACE && logger.isDebugEnabled() )
                             {
                                 logger.debug( "Consuming request body of length {}", request.getContentLength() );
                             }
@@ -279,8 +321,6 @@ public final class RequestStreamingParser
                             {
                                 forceSwitch( current, BODY_CONSUMING );
 
-                                messageBuffer.position( charBuffer.position() );
-
                                 consumeBody( messageBuffer );
                                 break dance;
                             }
@@ -316,7 +356,7 @@ public final class RequestStreamingParser
                         tokenFound();
                         status = COMPLETE;
 
-                        if ( logger.isDebugEnabled() )
+                        if ( TRACE && logger.isDebugEnabled() )
                         {
                             logger.debug( "Request body consumed" );
                         }
@@ -326,21 +366,53 @@ public final class RequestStreamingParser
         }
     }
 
-    private void forceSwitch( char trigger, ParserStatus newStatus )
+    /**
+     * Counts, starting from the current buffer position, the bytes that are not delimiters,
+     * checking 8 bytes at time until a word contains at least one byte lower than {@code '@'}.
+     *
+     * @param buffer the buffer containing the request chunk
+     * @return the number of bytes that can be appended to the current token as they are
+     */
+    private static int literalRunLength( ByteBuffer buffer )
+    {
+        int position = buffer.position();
+        int limit = buffer.limit();
+        int index = position;
+
+        while ( index + 8 <= limit )
+        {
+            long word = buffer.getLong( index );
+            // high bit set for (at least) the first byte lower than 0x40
+            if ( ( ( word - LITERAL_WORD_MASK ) & ~word & HIGH_BITS_MASK ) != 0 )
+            {
+                break;
+            }
+            index += 8;
+        }
+
+        while ( index < limit && ( buffer.get( index ) & 0xFF ) >= FIRST_LITERAL_BYTE )
+        {
+            index++;
+        }
+
+        return index - position;
+    }
+
+    private void forceSwitch( byte trigger, ParserStatus newStatus )
     {
-        if ( logger.isDebugEnabled() )
+        if ( TRACE && logger.isDebugEnabled() )
         {
-            logger.debug( "{} trigger char: `{}' -> next status {}", new Object[] { status, trigger, newStatus } );
+            logger.debug( "{} trigger char: `{}' -> next status {}", new Object[] { status, (char) trigger, newStatus } );
         }
         status = newStatus;
     }
 
     private boolean isConsumingToken()
     {
-        return accumulator.length() > 0;
+        return !accumulator.isEmpty();
     }
 
-    private void append( char current )
+    private void append( byte current )
     {
         accumulator.append( current );
     }
@@ -348,15 +420,29 @@ public final class RequestStreamingParser
     private void tokenFound()
         throws RequestParseException
     {
-        String token = accumulator.toString();
+        String token;
+        switch ( status )
+        {
+            case METHOD:
+            case PROTOCOL_NAME:
+            case PROTOCOL_VERSION:
+            case HEADER_NAME:
+                token = accumulator.toKnownToken();
+                break;
+
+            default:
+                token = accumulator.toString();
+                break;
+        }
+
         ParserStatus newStatus = parserTriggers.get( status ).onToken( status, token, request );
 
-        if ( logger.isDebugEnabled() )
+        if ( TRACE && logger.isDebugEnabled() )
         {
             logger.debug( "{} consuming token: `{}' -> next status {}", new Object[] { status, token, newStatus } );
         }
 
-        accumulator = new StringBuilder();
+        accumulator.reset();
         status = newStatus;
     }
 
@@ -369,21 +455,28 @@ public final class RequestStreamingParser
             bodyConsumerOutputStream = new ByteBufferEnqueuerOutputStream( requestBody );
         }
 
-        while ( buffer.hasRemaining() && bodyConsumerOutputStream.getWrittenBytes() <= request.getContentLength() )
+        long missing = request.getContentLength() - bodyConsumerOutputStream.getWrittenBytes();
+        int length = (int) Math.min( buffer.remaining(), missing );
+
+        // don't consume more than the declared length
+        int limit = buffer.limit();
+        buffer.limit( buffer.position() + length );
+        try
         {
-            try
-            {
-                bodyConsumerOutputStream.write( buffer.get() );
-            }
-            catch ( IOException e )
-            {
-                throw new RequestParseException( "An error occurred while consuming request body", e );
-            }
+            bodyConsumerOutputStream.write( buffer );
+        }
+        catch ( IOException e )
+        {
+            throw new RequestParseException( "An error occurred while consuming request body", e );
+        }
+        finally
+        {
+            buffer.limit( limit );
         }
 
         if ( request.getContentLength() == bodyConsumerOutputStream.getWrittenBytes() )
         {
-            if ( logger.isDebugEnabled() )
+            if ( TRACE && logger.isDebugEnabled() )
             {
                 logger.debug( "Request body consumed" );
             }
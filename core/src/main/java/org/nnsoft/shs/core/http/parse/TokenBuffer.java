@@ -0,0 +1,147 @@
+package org.nnsoft.shs.core.http.parse;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static java.lang.System.arraycopy;
+import static java.nio.charset.Charset.forName;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A reusable accumulator of the raw bytes of a request token,
+ * converted to {@code String} only once the token is complete.
+ *
+ * This class is not thread-safe!
+ */
+final class TokenBuffer
+{
+
+    private static final Charset UTF_8 = forName( "UTF-8" );
+
+    private static final int INITIAL_CAPACITY = 128;
+
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+
+    private char[] chars = new char[INITIAL_CAPACITY];
+
+    private int length;
+
+    /**
+     * Appends a single byte.
+     *
+     * @param current the byte has to be appended.
+     */
+    public void append( byte current )
+    {
+        ensureCapacity( length + 1 );
+        bytes[length++] = current;
+    }
+
+    /**
+     * Appends, in bulk, {@code count} bytes read from the input buffer.
+     *
+     * @param buffer the buffer where reading the bytes from.
+     * @param count the number of bytes that have to be read.
+     */
+    public void append( ByteBuffer buffer, int count )
+    {
+        ensureCapacity( length + count );
+        buffer.get( bytes, length, count );
+        length += count;
+    }
+
+    /**
+     * Verifies at least one byte has been accumulated.
+     *
+     * @return true if at least one byte has been accumulated, false otherwise.
+     */
+    public boolean isEmpty()
+    {
+        return length == 0;
+    }
+
+    /**
+     * Discards the accumulated bytes, retaining the allocated memory.
+     */
+    public void reset()
+    {
+        length = 0;
+    }
+
+    /**
+     * Returns the well known shared instance of the accumulated token, if any,
+     * or decodes it otherwise.
+     *
+     * @return the accumulated token.
+     * @see KnownTokens
+     */
+    public String toKnownToken()
+    {
+        String token = KnownTokens.lookup( bytes, length );
+        if ( token != null )
+        {
+            return token;
+        }
+        return toString();
+    }
+
+    /**
+     * Decodes the accumulated bytes, without involving the UTF-8 decoder if they are all ASCII.
+     *
+     * @return the accumulated token.
+     */
+    @Override
+    public String toString()
+    {
+        if ( chars.length < length )
+        {
+            chars = new char[bytes.length];
+        }
+
+        for ( int i = 0; i < length; i++ )
+        {
+            byte current = bytes[i];
+            if ( current < 0 )
+            {
+                // multi-byte sequence, let the decoder handle it
+                return new String( bytes, 0, length, UTF_8 );
+            }
+            chars[i] = (char) current;
+        }
+
+        return new String( chars, 0, length );
+    }
+
+    private void ensureCapacity( int capacity )
+    {
+        if ( bytes.length < capacity )
+        {
+            byte[] newBytes = new byte[Math.max( capacity, bytes.length << 1 )];
+            arraycopy( bytes, 0, newBytes, 0, length );
+            bytes = newBytes;
+        }
+    }
+
+}
@@ -0,0 +1,316 @@
+package org.nnsoft.shs.core.http.serialize;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static java.util.Arrays.copyOf;
+import static org.nnsoft.shs.core.http.HttpDate.getEncoded;
+import static org.nnsoft.shs.http.Headers.DATE;
+
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.nnsoft.shs.http.Headers;
+import org.nnsoft.shs.http.Response.Status;
+
+/**
+ * Encodes the head of an HTTP response - status line, headers and cookies - in a single byte array,
+ * reused by the thread that serializes the response.
+ *
+ * Status lines, the {@link Headers} names and the separators are encoded once;
+ * other names and values are copied char by char while they are ASCII, and encoded as UTF-8 otherwise.
+ *
+ * This class is not thread safe, use {@link #get()} to obtain the instance owned by the current thread.
+ */
+final class ResponseHeadEncoder
+{
+
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+    private static final String HTTP = "HTTP";
+
+    private static final String HTTP_11 = "1.1";
+
+    private static final String HTTP_10 = "1.0";
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Arrays grown beyond this size are not retained by the thread after the encoding.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+
+    private static final byte[] CRLF = ascii( "\r\n" );
+
+    private static final byte[] COLON_SPACE = ascii( ": " );
+
+    /**
+     * The {@code HTTP/1.1} status lines, CRLF included, indexed by the {@link Status} ordinal.
+     */
+    private static final byte[][] HTTP_11_STATUS_LINES = statusLines( HTTP_11 );
+
+    /**
+     * The {@code HTTP/1.0} status lines, CRLF included, indexed by the {@link Status} ordinal.
+     */
+    private static final byte[][] HTTP_10_STATUS_LINES = statusLines( HTTP_10 );
+
+    /**
+     * The {@link Headers} names, followed by {@code ": "}.
+     */
+    private static final Map<String, byte[]> HEADER_PREFIXES = new HashMap<String, byte[]>();
+
+    static
+    {
+        for ( Field field : Headers.class.getFields() )
+        {
+            if ( String.class == field.getType() )
+            {
+                try
+                {
+                    String name = (String) field.get( null );
+                    HEADER_PREFIXES.put( name, ascii( name + ": " ) );
+                }
+                catch ( IllegalAccessException e )
+                {
+                    // interfaces fields are always public
+                }
+            }
+        }
+    }
+
+    private static final ThreadLocal<ResponseHeadEncoder> ENCODERS = new ThreadLocal<ResponseHeadEncoder>()
+    {
+
+        @Override
+        protected ResponseHeadEncoder initialValue()
+        {
+            return new ResponseHeadEncoder();
+        }
+
+    };
+
+    /**
+     * Returns the empty encoder owned by the current thread.
+     *
+     * @return the empty encoder owned by the current thread.
+     */
+    public static ResponseHeadEncoder get()
+    {
+        ResponseHeadEncoder encoder = ENCODERS.get();
+        encoder.length = 0;
+        return encoder;
+    }
+
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+
+    private int length;
+
+    private ResponseHeadEncoder()
+    {
+        // use get()
+    }
+
+    /**
+     * Writes the status line.
+     *
+     * @param protocolName the response protocol name
+     * @param protocolVersion the response protocol version
+     * @param status the response status
+     * @return this encoder instance
+     */
+    public ResponseHeadEncoder statusLine( String protocolName, String protocolVersion, Status status )
+    {
+        if ( HTTP.equals( protocolName ) && HTTP_11.equals( protocolVersion ) )
+        {
+            return write( HTTP_11_STATUS_LINES[status.ordinal()] );
+        }
+        if ( HTTP.equals( protocolName ) && HTTP_10.equals( protocolVersion ) )
+        {
+            return write( HTTP_10_STATUS_LINES[status.ordinal()] );
+        }
+        return write( protocolName ).write( '/' ).write( protocolVersion ).write( ' ' )
+               .write( status.getStatusCode() ).write( ' ' ).write( status.getStatusText() ).write( CRLF );
+    }
+
+    /**
+     * Writes a header line.
+     *
+     * @param name the header name
+     * @param value the header value
+     * @return this encoder instance
+     */
+    public ResponseHeadEncoder header( String name, String value )
+    {
+        if ( DATE == name )
+        {
+            // the current date is encoded once per second
+            byte[] encodedDate = getEncoded( value );
+            if ( encodedDate != null )
+            {
+                return headerName( name ).write( encodedDate ).write( CRLF );
+            }
+        }
+        return headerName( name ).write( value ).write( CRLF );
+    }
+
+    /**
+     * Writes the header name followed by {@code ": "}, so the caller can write a composite value.
+     *
+     * @param name the header name
+     * @return this encoder instance
+     */
+    public ResponseHeadEncoder headerName( String name )
+    {
+        byte[] prefix = HEADER_PREFIXES.get( name );
+        if ( prefix != null )
+        {
+            return write( prefix );
+        }
+        return write( name ).write( COLON_SPACE );
+    }
+
+    /**
+     * Writes the empty line that separates the head from the body.
+     *
+     * @return this encoder instance
+     */
+    public ResponseHeadEncoder endOfLine()
+    {
+        return write( CRLF );
+    }
+
+    /**
+     * Writes a char, that must be ASCII.
+     *
+     * @param c the ASCII char
+     * @return this encoder instance
+     */
+    public ResponseHeadEncoder write( char c )
+    {
+        ensureCapacity( 1 );
+        bytes[length++] = (byte) c;
+        return this;
+    }
+
+    /**
+     * Writes the decimal representation of a non negative integer.
+     *
+     * @param value the non negative integer
+     * @return this encoder instance
+     */
+    public ResponseHeadEncoder write( int value )
+    {
+        int digits = 1;
+        for ( int i = value; i >= 10; i /= 10 )
+        {
+            digits++;
+        }
+
+        ensureCapacity( digits );
+        length += digits;
+        int index = length;
+        int remaining = value;
+        do
+        {
+            bytes[--index] = (byte) ( '0' + remaining % 10 );
+            remaining /= 10;
+        }
+        while ( remaining > 0 );
+        return this;
+    }
+
+    /**
+     * Writes a String, ASCII chars are copied as they are, the others are encoded as UTF-8.
+     *
+     * @param value the String to write, {@code null} is written as {@code "null"}
+     * @return this encoder instance
+     */
+    public ResponseHeadEncoder write( String value )
+    {
+        String current = String.valueOf( value );
+        int size = current.length();
+        ensureCapacity( size );
+        for ( int i = 0; i < size; i++ )
+        {
+            char c = current.charAt( i );
+            if ( c >= 0x80 )
+            {
+                return write( current.substring( i ).getBytes( UTF_8 ) );
+            }
+            bytes[length++] = (byte) c;
+        }
+        return this;
+    }
+
+    /**
+     * Copies the encoded head in a new buffer, ready to be sent.
+     *
+     * @return the encoded head, ready to be sent.
+     */
+    public ByteBuffer toByteBuffer()
+    {
+        ByteBuffer encoded = ByteBuffer.wrap( copyOf( bytes, length ) );
+        if ( bytes.length > MAX_RETAINED_CAPACITY )
+        {
+            bytes = new byte[INITIAL_CAPACITY];
+        }
+        return encoded;
+    }
+
+    private ResponseHeadEncoder write( byte[] encoded )
+    {
+        ensureCapacity( encoded.length );
+        System.arraycopy( encoded, 0, bytes, length, encoded.length );
+        length += encoded.length;
+        return this;
+    }
+
+    private void ensureCapacity( int more )
+    {
+        if ( length + more > bytes.length )
+        {
+            bytes = copyOf( bytes, Math.max( bytes.length << 1, length + more ) );
+        }
+    }
+
+    private static byte[][] statusLines( String protocolVersion )
+    {
+        Status[] statuses = Status.values();
+        byte[][] statusLines = new byte[statuses.length][];
+        for ( Status status : statuses )
+        {
+            statusLines[status.ordinal()] = ascii( HTTP + '/' + protocolVersion + ' ' + status.getStatusCode() + ' '
+                                                   + status.getStatusText() + "\r\n" );
+        }
+        return statusLines;
+    }
+
+    private static byte[] ascii( String value )
+    {
+        return value.getBytes( Charset.forName( "US-ASCII" ) );
+    }
+
+}
@@ -23,49 +23,59 @@ package org.nnsoft.shs.core.http.serialize;
  * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
-import static java.lang.String.format;
 import static java.lang.System.currentTimeMillis;
 import static java.nio.channels.Channels.newChannel;
-import static java.nio.channels.SelectionKey.OP_WRITE;
-import static java.util.Locale.US;
-import static org.nnsoft.shs.core.io.IOUtils.utf8ByteBuffer;
+import static org.nnsoft.shs.core.io.ByteBufferEnqueuerOutputStream.EOM;
 import static org.nnsoft.shs.http.Headers.CONTENT_ENCODING;
 import static org.nnsoft.shs.http.Headers.CONTENT_LENGTH;
 import static org.nnsoft.shs.http.Headers.CONTENT_TYPE;
+import static org.nnsoft.shs.http.Headers.SET_COOKIE;
+import static org.nnsoft.shs.http.Headers.TRANSFER_ENCODING;
 import static org.nnsoft.shs.lang.Preconditions.checkArgument;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Formatter;
 import java.util.LinkedList;
-import java.util.List;
-import java.util.Map.Entry;
 import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.zip.GZIPOutputStream;
 
+import org.nnsoft.shs.collections.MultiValued;
+import org.nnsoft.shs.core.http.HttpDate;
 import org.nnsoft.shs.core.io.ByteBufferEnqueuerOutputStream;
+import org.nnsoft.shs.core.io.ByteBufferResponseBodyWriter;
+import org.nnsoft.shs.core.io.FileRegion;
+import org.nnsoft.shs.core.io.FileResponseBodyWriter;
+import org.nnsoft.shs.core.io.OutboundQueue;
 import org.nnsoft.shs.http.Cookie;
 import org.nnsoft.shs.http.Response;
+import org.nnsoft.shs.io.ResponseBodyWriter;
+import org.nnsoft.shs.io.SizedResponseBodyWriter;
 
 /**
  * Serializes an HTTP {@link Response} to the target output stream
  *
+ * Bodies of small, known, size are rendered in memory before the head is sent; the others
+ * are sent while generated, using the {@code chunked} Transfer-Encoding when the size is unknown
+ * and the client speaks HTTP/1.1. Files not compressed are transferred without copies in user space.
+ *
  * This class is not thread safe, create a new instance for each serialization.
  */
 public final class ResponseSerializer
 {
 
-    private static final SimpleDateFormat dateFormat = new SimpleDateFormat( "EEE, dd MMM yyyy HH:mm:ss zzz", US ); // RFC1123
+    private static final String GZIP = "gzip";
 
-    private static final String END_PADDING = "\r\n";
+    private static final String CHUNKED = "chunked";
 
-    private static final String GZIP = "gzip";
+    private static final String HTTP_11 = "1.1";
+
+    /**
+     * Bodies of known size up to this threshold are rendered in memory before being sent.
+     */
+    private static final long MAX_BUFFERED_BODY_SIZE = 16 * 1024;
 
-    private final Queue<ByteBuffer> responseBuffers = new ConcurrentLinkedQueue<ByteBuffer>();
+    private final OutboundQueue responseBuffers = new OutboundQueue();
 
     private final SelectionKey key;
 
@@ -73,6 +83,12 @@ public final class ResponseSerializer
 
     private Response response;
 
+    private boolean recording;
+
+    private ByteBuffer encodedHead;
+
+    private ByteBuffer encodedBody;
+
     /**
      * Creates a new serializer instance.
      *
@@ -96,6 +112,38 @@ public final class ResponseSerializer
         this.gzipSupported = gzipSupported;
     }
 
+    /**
+     * Asks the serializer to keep a copy of the encoded head and of the body, when the body
+     * is fully available in memory, so the response can be replayed without serializing it again.
+     *
+     * Must be invoked before {@link #serialize(Response)}.
+     */
+    public void recordEncodedResponse()
+    {
+        recording = true;
+    }
+
+    /**
+     * Returns the encoded head - status line, headers, cookies and the blank line - of the serialized response.
+     *
+     * @return the encoded head, null if the response has not been recorded.
+     */
+    public ByteBuffer getEncodedHead()
+    {
+        return encodedHead;
+    }
+
+    /**
+     * Returns the encoded body of the serialized response.
+     *
+     * @return the encoded body, null if the response has not been recorded
+     *         or its body has been sent while generated.
+     */
+    public ByteBuffer getEncodedBody()
+    {
+        return encodedBody;
+    }
+
     /**
      * Streams the input {@link Response} instance to the target output stream.
      *
@@ -108,108 +156,266 @@ public final class ResponseSerializer
         checkArgument( response != null, "Null Response cannot be serialized." );
         this.response = response;
 
-        // print the body, so it will calculate the response size and populate the right HTTP header
-        Queue<ByteBuffer> body = createBodyBuffer();
+        ResponseBodyWriter bodyWriter = response.getBodyWriter();
 
-        // emit the protocol first
-        emitProtocol();
+        if ( bodyWriter.contentType() != null )
+        {
+            response.addHeader( CONTENT_TYPE, bodyWriter.contentType() );
+        }
 
-        // key can start writing the protocol first
-        key.attach( responseBuffers );
-        key.interestOps( OP_WRITE );
+        if ( !gzipSupported && bodyWriter instanceof FileResponseBodyWriter )
+        {
+            serializeFileRegion( ( (FileResponseBodyWriter) bodyWriter ).openRegion() );
+            return;
+        }
 
-        // headers are now complete
-        emitHeaders();
+        if ( !gzipSupported && bodyWriter instanceof ByteBufferResponseBodyWriter )
+        {
+            serializeContent( ( (ByteBufferResponseBodyWriter) bodyWriter ).getContent() );
+            return;
+        }
 
-        // cookies can go safety out
-        emitCookies();
+        long contentLength = -1;
+        if ( bodyWriter instanceof SizedResponseBodyWriter )
+        {
+            contentLength = ( (SizedResponseBodyWriter) bodyWriter ).contentLength();
+        }
 
-        // separate the head from the body
-        responseBuffers.offer( utf8ByteBuffer( END_PADDING ) );
+        if ( contentLength >= 0 && contentLength <= MAX_BUFFERED_BODY_SIZE )
+        {
+            serializeBuffered();
+        }
+        else if ( contentLength >= 0 && !gzipSupported )
+        {
+            response.addHeader( CONTENT_LENGTH, String.valueOf( contentLength ) );
+            serializeStreaming( false );
+        }
+        else if ( HTTP_11.equals( response.getProtocolVersion() ) )
+        {
+            response.addHeader( TRANSFER_ENCODING, CHUNKED );
+            serializeStreaming( true );
+        }
+        else
+        {
+            // HTTP/1.0 clients need the Content-Length to know where the body ends
+            serializeBuffered();
+        }
+    }
+
+    /**
+     * Renders the whole body in memory, then sends the response with the computed Content-Length.
+     *
+     * @throws IOException if any error occurs while streaming
+     */
+    private void serializeBuffered()
+        throws IOException
+    {
+        // print the body, so it will calculate the response size and populate the right HTTP header
+        Queue<ByteBuffer> body = createBodyBuffer();
+
+        emitHead();
+
+        if ( recording )
+        {
+            encodedBody = concat( body );
+        }
 
         // re-enqeue the body one piece at time
-        // responseBuffers is under producer/consumer pattern
         while ( !body.isEmpty() )
         {
             responseBuffers.offer( body.remove() );
         }
+
+        // the whole response is ready, the event loop can write it with as few system calls as possible
+        responseBuffers.attachTo( key );
     }
 
     /**
-     * Writes the protocol reply.
+     * Sends the head followed by the ready-to-send content, without copying it.
      *
+     * @param content the body content
      * @throws IOException if any error occurs while streaming
      */
-    private void emitProtocol()
+    private void serializeContent( ByteBuffer content )
         throws IOException
     {
-        emit( "%s/%s %s %s%n",
-               response.getProtocolName(),
-               response.getProtocolVersion(),
-               response.getStatus().getStatusCode(),
-               response.getStatus().getStatusText() );
+        response.addHeader( CONTENT_LENGTH, String.valueOf( content.remaining() ) );
+
+        emitHead();
+
+        if ( recording )
+        {
+            encodedBody = content.duplicate();
+        }
+
+        responseBuffers.offer( content );
+        responseBuffers.offer( EOM );
+
+        responseBuffers.attachTo( key );
     }
 
     /**
-     * Writes the HTTP Headers.
+     * Sends the head followed by the file, transferred by the event loop straight to the socket.
      *
+     * @param region the file region has to be transferred
      * @throws IOException if any error occurs while streaming
      */
-    private void emitHeaders()
+    private void serializeFileRegion( FileRegion region )
         throws IOException
     {
-        for ( Entry<String, List<String>> header : response.getHeaders().getAllEntries() )
+        boolean enqueued = false;
+        try
         {
-            Formatter formatter = new Formatter().format( "%s: ", header.getKey() );
+            response.addHeader( CONTENT_LENGTH, String.valueOf( region.getCount() ) );
 
-            int counter = 0;
-            for ( String headerValue : header.getValue() )
+            emitHead();
+
+            responseBuffers.offer( region );
+            enqueued = true;
+        }
+        finally
+        {
+            // once enqueued, the region is closed by the queue
+            if ( !enqueued )
             {
-                formatter.format( "%s%s", ( counter++ > 0 ? ", " : "" ), headerValue );
+                region.close();
             }
+        }
+        responseBuffers.offer( EOM );
 
-            formatter.format( "%n" );
+        responseBuffers.attachTo( key );
+    }
 
-            emit( formatter.toString() );
+    /**
+     * Sends the head immediately, then the body while it is generated.
+     *
+     * @param chunked flag to mark the body has to be framed in chunks.
+     * @throws IOException if any error occurs while streaming
+     */
+    private void serializeStreaming( boolean chunked )
+        throws IOException
+    {
+        if ( gzipSupported )
+        {
+            response.addHeader( CONTENT_ENCODING, GZIP );
+        }
+
+        emitHead();
+
+        // the client can start receiving the head while the body is generated
+        responseBuffers.attachTo( key );
+
+        StreamingBodyOutputStream target = new StreamingBodyOutputStream( responseBuffers, chunked );
+
+        if ( gzipSupported )
+        {
+            GZIPOutputStream gzipTarget = new GZIPOutputStream( target );
+
+            response.getBodyWriter().write( newChannel( gzipTarget ) );
+
+            gzipTarget.finish();
         }
+        else
+        {
+            response.getBodyWriter().write( newChannel( target ) );
+        }
+
+        target.close();
     }
 
     /**
-     * Writes the HTTP Cookies.
+     * Writes the status line, the headers and the cookies in a single buffer.
      *
      * @throws IOException if any error occurs while streaming
      */
-    private void emitCookies()
+    private void emitHead()
         throws IOException
+    {
+        ResponseHeadEncoder head = ResponseHeadEncoder.get();
+
+        // emit the protocol first
+        emitProtocol( head );
+
+        // headers are now complete
+        emitHeaders( head );
+
+        // cookies can go safety out
+        emitCookies( head );
+
+        // separate the head from the body
+        head.endOfLine();
+
+        ByteBuffer encoded = head.toByteBuffer();
+
+        if ( recording )
+        {
+            encodedHead = encoded.duplicate();
+        }
+
+        responseBuffers.offer( encoded );
+    }
+
+    /**
+     * Writes the protocol reply.
+     *
+     * @param head the response head encoder
+     */
+    private void emitProtocol( ResponseHeadEncoder head )
+    {
+        head.statusLine( response.getProtocolName(), response.getProtocolVersion(), response.getStatus() );
+    }
+
+    /**
+     * Writes the HTTP Headers.
+     *
+     * @param head the response head encoder
+     */
+    private void emitHeaders( ResponseHeadEncoder head )
+    {
+        MultiValued<String, String> headers = response.getHeaders();
+        for ( int i = 0; i < headers.size(); i++ )
+        {
+            head.header( headers.getKey( i ), headers.getValue( i ) );
+        }
+    }
+
+    /**
+     * Writes the HTTP Cookies.
+     *
+     * @param head the response head encoder
+     */
+    private void emitCookies( ResponseHeadEncoder head )
     {
         for ( Cookie cookie : response.getCookies() )
         {
-            Formatter formatter = new Formatter()
-                                     .format( "Set-Cookie: %s=%s; Path=%s; Domain=%s;",
-                                              cookie.getName(), cookie.getValue(), cookie.getPath(), cookie.getDomain() );
+            head.headerName( SET_COOKIE )
+                .write( cookie.getName() ).write( '=' ).write( cookie.getValue() )
+                .write( "; Path=" ).write( cookie.getPath() )
+                .write( "; Domain=" ).write( cookie.getDomain() ).write( ';' );
 
             if ( !cookie.getPorts().isEmpty() )
             {
-                formatter.format( " Port=\"" );
+                head.write( " Port=\"" );
                 int i = 0;
                 for ( Integer port : cookie.getPorts() )
                 {
-                    formatter.format( "%s%s", ( i++ > 0 ? "," : "" ), port );
+                    if ( i++ > 0 )
+                    {
+                        head.write( ',' );
+                    }
+                    head.write( port.intValue() );
                 }
-                formatter.format( "\";" );
+                head.write( "\";" );
             }
 
             if ( cookie.getMaxAge() != -1 )
             {
-                Date expirationDate = new Date( cookie.getMaxAge() * 1000 + currentTimeMillis() );
-                String expires = dateFormat.format( expirationDate );
-
-                formatter.format( " Expires=%s;", expires );
+                head.write( " Expires=" ).write( HttpDate.format( cookie.getMaxAge() * 1000L + currentTimeMillis() ) ).write( ';' );
             }
 
             // secure field ignored since HTTPs is not supported in this version
 
-            emit( formatter.format( " HttpOnly%n" ).toString() );
+            head.write( " HttpOnly" ).endOfLine();
         }
     }
 
@@ -224,11 +430,6 @@ public final class ResponseSerializer
     {
         final Queue<ByteBuffer> bodyBuffers = new LinkedList<ByteBuffer>();
 
-        if ( response.getBodyWriter().contentType() != null )
-        {
-            response.addHeader( CONTENT_TYPE, response.getBodyWriter().contentType() );
-        }
-
         ByteBufferEnqueuerOutputStream target = new ByteBufferEnqueuerOutputStream( bodyBuffers );
 
         if ( gzipSupported )
@@ -248,27 +449,34 @@ public final class ResponseSerializer
         target.flush();
         target.close();
 
-        long writtenBytes = target.getWrittenBytes();
-
-        if ( writtenBytes > 0 )
-        {
-            response.addHeader( CONTENT_LENGTH, String.valueOf( writtenBytes ) );
-        }
+        // empty bodies need the header as well, keep-alive clients would wait for the connection to be closed
+        response.addHeader( CONTENT_LENGTH, String.valueOf( target.getWrittenBytes() ) );
 
         return bodyBuffers;
     }
 
     /**
-     * Generic method to emit UTF message and enqueues the resultant chunk in the response queue.
+     * Copies the given body chunks in a single buffer, leaving them untouched.
      *
-     * @param messageTemplate the String message format
-     * @param args the message template placeholders variables
-     * @throws IOException if any error occurs while streaming
+     * @param body the body chunks
+     * @return the buffer that contains the whole body
      */
-    private void emit( String messageTemplate, Object...args )
-        throws IOException
+    private static ByteBuffer concat( Queue<ByteBuffer> body )
     {
-        responseBuffers.offer( utf8ByteBuffer( format( messageTemplate, args ) ) );
+        int size = 0;
+        for ( ByteBuffer chunk : body )
+        {
+            size += chunk.remaining();
+        }
+
+        ByteBuffer copy = ByteBuffer.allocateDirect( size );
+        for ( ByteBuffer chunk : body )
+        {
+            copy.put( chunk.duplicate() );
+        }
+        copy.flip();
+
+        return copy;
     }
 
 }
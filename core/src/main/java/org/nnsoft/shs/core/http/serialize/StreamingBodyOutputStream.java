@@ -0,0 +1,183 @@
+package org.nnsoft.shs.core.http.serialize;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static java.nio.ByteBuffer.allocate;
+import static java.nio.ByteBuffer.wrap;
+import static org.nnsoft.shs.core.io.ByteBufferEnqueuerOutputStream.EOM;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.nnsoft.shs.core.io.OutboundQueue;
+
+/**
+ * An {@link OutputStream} that sends the response body to the client while it is generated,
+ * optionally framing it according to the {@code chunked} Transfer-Encoding.
+ *
+ * The producer is blocked while the client doesn't consume fast enough the already sent data.
+ */
+final class StreamingBodyOutputStream
+    extends OutputStream
+{
+
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    private static final byte[] HEX_DIGITS = { '0', '1', '2', '3', '4', '5', '6', '7',
+                                               '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+
+    private static final byte[] CRLF = { '\r', '\n' };
+
+    private static final byte[] LAST_CHUNK = { '0', '\r', '\n', '\r', '\n' };
+
+    private final OutboundQueue responseBuffers;
+
+    private final boolean chunked;
+
+    private ByteBuffer currentChunk = allocate( CHUNK_SIZE );
+
+    /**
+     * Creates a new streaming body instance.
+     *
+     * @param responseBuffers the queue already attached to the client connection.
+     * @param chunked flag to mark the body has to be framed in chunks.
+     */
+    public StreamingBodyOutputStream( OutboundQueue responseBuffers, boolean chunked )
+    {
+        this.responseBuffers = responseBuffers;
+        this.chunked = chunked;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write( int b )
+        throws IOException
+    {
+        if ( !currentChunk.hasRemaining() )
+        {
+            flush();
+        }
+        currentChunk.put( (byte) ( b & 0xFF ) );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write( byte[] b, int off, int len )
+        throws IOException
+    {
+        int remaining = len;
+        int offset = off;
+        while ( remaining > 0 )
+        {
+            if ( !currentChunk.hasRemaining() )
+            {
+                flush();
+            }
+
+            int length = Math.min( remaining, currentChunk.remaining() );
+            currentChunk.put( b, offset, length );
+
+            offset += length;
+            remaining -= length;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush()
+        throws IOException
+    {
+        if ( currentChunk.position() == 0 )
+        {
+            return;
+        }
+
+        currentChunk.flip();
+
+        if ( chunked )
+        {
+            responseBuffers.offer( chunkHeader( currentChunk.remaining() ) );
+            responseBuffers.offer( currentChunk );
+            responseBuffers.offer( wrap( CRLF ) );
+        }
+        else
+        {
+            responseBuffers.offer( currentChunk );
+        }
+
+        currentChunk = allocate( CHUNK_SIZE );
+
+        // slow clients: don't let the whole body pile up in memory
+        responseBuffers.awaitDrain();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        flush();
+
+        if ( chunked )
+        {
+            responseBuffers.offer( wrap( LAST_CHUNK ) );
+        }
+        responseBuffers.offer( EOM );
+    }
+
+    /**
+     * Encodes the chunk size, in hex, followed by CRLF.
+     *
+     * @param size the chunk size
+     * @return the chunk size line
+     */
+    private static ByteBuffer chunkHeader( int size )
+    {
+        // up to 8 hex digits, plus CRLF
+        byte[] header = new byte[10];
+        int position = header.length;
+
+        header[--position] = '\n';
+        header[--position] = '\r';
+        int remaining = size;
+        do
+        {
+            header[--position] = HEX_DIGITS[remaining & 0xF];
+            remaining >>>= 4;
+        }
+        while ( remaining != 0 );
+
+        return wrap( header, position, header.length - position );
+    }
+
+}
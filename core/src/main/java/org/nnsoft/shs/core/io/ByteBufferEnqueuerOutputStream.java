@@ -88,6 +88,63 @@ public final class ByteBufferEnqueuerOutputStream
         currentPtr.put( (byte) ( b & 0xFF ) );
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write( byte[] b, int off, int len )
+        throws IOException
+    {
+        checkArgument( b != null, "Null byte array cannot be written" );
+        checkArgument( off >= 0 && len >= 0 && off + len <= b.length, "Out of bounds: offset %s, length %s", off, len );
+
+        int remaining = len;
+        int offset = off;
+        while ( remaining > 0 )
+        {
+            if ( !currentPtr.hasRemaining() )
+            {
+                flush();
+            }
+
+            int length = Math.min( remaining, currentPtr.remaining() );
+            currentPtr.put( b, offset, length );
+
+            offset += length;
+            remaining -= length;
+        }
+
+        writtenBytes += len;
+    }
+
+    /**
+     * Writes, in bulk, all the remaining bytes of the input buffer.
+     *
+     * @param src the buffer whose remaining bytes have to be written.
+     * @throws IOException if any error occurs while writing.
+     */
+    public void write( ByteBuffer src )
+        throws IOException
+    {
+        checkArgument( src != null, "Null ByteBuffer cannot be written" );
+
+        int length = src.remaining();
+        int limit = src.limit();
+        while ( src.hasRemaining() )
+        {
+            if ( !currentPtr.hasRemaining() )
+            {
+                flush();
+            }
+
+            src.limit( src.position() + Math.min( src.remaining(), currentPtr.remaining() ) );
+            currentPtr.put( src );
+            src.limit( limit );
+        }
+
+        writtenBytes += length;
+    }
+
     /**
      * {@inheritDoc}
      */
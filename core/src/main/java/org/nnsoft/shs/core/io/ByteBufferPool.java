@@ -0,0 +1,91 @@
+package org.nnsoft.shs.core.io;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static java.nio.ByteBuffer.allocateDirect;
+import static org.nnsoft.shs.lang.Preconditions.checkArgument;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.Queue;
+
+/**
+ * A bounded pool of direct {@link ByteBuffer}s of fixed capacity, that are expensive
+ * to allocate and to release but can be passed to the socket without further copies.
+ *
+ * This class is not thread-safe, it is meant to be confined in a single event loop.
+ */
+public final class ByteBufferPool
+{
+
+    private final Queue<ByteBuffer> buffers = new LinkedList<ByteBuffer>();
+
+    private final int bufferSize;
+
+    private final int maxPooledBuffers;
+
+    /**
+     * Creates a new pool instance.
+     *
+     * @param bufferSize the capacity, in bytes, of the pooled buffers.
+     * @param maxPooledBuffers the maximum number of idle buffers retained by the pool.
+     */
+    public ByteBufferPool( int bufferSize, int maxPooledBuffers )
+    {
+        checkArgument( bufferSize > 0, "Buffers size must be a positive integer" );
+        checkArgument( maxPooledBuffers >= 0, "Negative max number of pooled buffers not allowed" );
+        this.bufferSize = bufferSize;
+        this.maxPooledBuffers = maxPooledBuffers;
+    }
+
+    /**
+     * Borrows a cleared buffer from the pool, allocating a new one if the pool is empty.
+     *
+     * @return a cleared buffer.
+     */
+    public ByteBuffer acquire()
+    {
+        ByteBuffer buffer = buffers.poll();
+        if ( buffer == null )
+        {
+            buffer = allocateDirect( bufferSize );
+        }
+        return buffer;
+    }
+
+    /**
+     * Gives a buffer back to the pool; it is discarded if the pool is already full.
+     *
+     * @param buffer the buffer previously acquired from this pool.
+     */
+    public void release( ByteBuffer buffer )
+    {
+        if ( buffer != null && buffers.size() < maxPooledBuffers )
+        {
+            buffer.clear();
+            buffers.offer( buffer );
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+package org.nnsoft.shs.core.io;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static org.nnsoft.shs.lang.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import org.nnsoft.shs.io.SizedResponseBodyWriter;
+
+/**
+ * Generates a body response from a ready-to-send {@link ByteBuffer}, i.e. a cached file.
+ */
+public final class ByteBufferResponseBodyWriter
+    implements SizedResponseBodyWriter
+{
+
+    private final String contentType;
+
+    private final ByteBuffer content;
+
+    /**
+     * Creates a new ResponseBodyWriter given the content has to be sent.
+     *
+     * @param contentType the mime type of the content, can be null.
+     * @param content the content has to be sent, it won't be modified.
+     */
+    public ByteBufferResponseBodyWriter( String contentType, ByteBuffer content )
+    {
+        checkArgument( content != null, "Null content cannot be sent" );
+        this.contentType = contentType;
+        this.content = content;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String contentType()
+    {
+        return contentType;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long contentLength()
+    {
+        return content.remaining();
+    }
+
+    /**
+     * Returns a view of the content, that can be enqueued for the client as it is.
+     *
+     * @return a view of the content.
+     */
+    public ByteBuffer getContent()
+    {
+        return content.duplicate();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write( WritableByteChannel output )
+        throws IOException
+    {
+        ByteBuffer view = getContent();
+        while ( view.hasRemaining() )
+        {
+            output.write( view );
+        }
+    }
+
+}
@@ -0,0 +1,225 @@
+package org.nnsoft.shs.core.io;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static java.lang.System.currentTimeMillis;
+import static java.nio.ByteBuffer.allocate;
+import static java.nio.ByteBuffer.allocateDirect;
+import static org.nnsoft.shs.core.io.FileResponseBodyWriter.contentTypeOf;
+import static org.nnsoft.shs.core.io.IOUtils.closeQuietly;
+import static org.nnsoft.shs.lang.Preconditions.checkArgument;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.nnsoft.shs.io.SizedResponseBodyWriter;
+
+/**
+ * A size-bounded, least recently used, cache of small files content, kept in ready-to-send buffers.
+ *
+ * Cached files are checked for modifications at most once per second, so hot hits don't touch the file system.
+ *
+ * This class is thread-safe.
+ */
+public final class FileCache
+{
+
+    private static final long VALIDATION_INTERVAL = 1000;
+
+    private final Map<File, CachedFile> entries = new LinkedHashMap<File, CachedFile>( 16, 0.75f, true );
+
+    private final long maxBytes;
+
+    private final long maxFileSize;
+
+    private final boolean direct;
+
+    private long usedBytes;
+
+    /**
+     * Creates a new file cache.
+     *
+     * @param maxBytes the maximum number of bytes, of all cached files, the cache can hold.
+     * @param maxFileSize the size, in bytes, of the largest file that can be cached.
+     * @param direct flag to mark files have to be held in direct, off-heap, buffers.
+     */
+    public FileCache( long maxBytes, long maxFileSize, boolean direct )
+    {
+        checkArgument( maxBytes > 0, "Cache size must be a positive number" );
+        checkArgument( maxFileSize > 0 && maxFileSize <= Integer.MAX_VALUE,
+                       "Max cacheable file size must be a positive number not greater than %s", Integer.MAX_VALUE );
+        this.maxBytes = maxBytes;
+        this.maxFileSize = maxFileSize;
+        this.direct = direct;
+    }
+
+    /**
+     * Returns the body writer of the input file content, loading it in the cache if needed.
+     *
+     * @param file the file has to be sent.
+     * @return the body writer of the cached file content, null if the file doesn't exist,
+     *         is not a regular file, or is too large to be cached.
+     * @throws IOException if any error occurs while loading the file
+     */
+    public SizedResponseBodyWriter get( File file )
+        throws IOException
+    {
+        checkArgument( file != null, "Null file cannot be looked up" );
+
+        long now = currentTimeMillis();
+
+        CachedFile cached;
+        synchronized ( this )
+        {
+            cached = entries.get( file );
+        }
+
+        if ( cached != null )
+        {
+            if ( now - cached.validated < VALIDATION_INTERVAL )
+            {
+                return cached.bodyWriter;
+            }
+
+            if ( file.lastModified() == cached.lastModified && file.length() == cached.length )
+            {
+                cached.validated = now;
+                return cached.bodyWriter;
+            }
+
+            remove( file, cached );
+        }
+
+        if ( !file.isFile() )
+        {
+            return null;
+        }
+
+        long length = file.length();
+        if ( length > maxFileSize || length > maxBytes )
+        {
+            return null;
+        }
+
+        long lastModified = file.lastModified();
+        ByteBuffer content = load( file, (int) length );
+
+        cached = new CachedFile( lastModified, content.remaining(), now,
+                                 new ByteBufferResponseBodyWriter( contentTypeOf( file ), content ) );
+        put( file, cached );
+
+        return cached.bodyWriter;
+    }
+
+    /**
+     * Discards all the cached files.
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    private ByteBuffer load( File file, int length )
+        throws IOException
+    {
+        ByteBuffer content = direct ? allocateDirect( length ) : allocate( length );
+
+        FileChannel channel = new FileInputStream( file ).getChannel();
+        try
+        {
+            while ( content.hasRemaining() && channel.read( content ) != -1 )
+            {
+                // keep reading
+            }
+        }
+        finally
+        {
+            closeQuietly( channel );
+        }
+
+        content.flip();
+        return content.asReadOnlyBuffer();
+    }
+
+    private synchronized void put( File file, CachedFile cached )
+    {
+        CachedFile previous = entries.put( file, cached );
+        if ( previous != null )
+        {
+            usedBytes -= previous.length;
+        }
+        usedBytes += cached.length;
+
+        // evict the least recently used files
+        Iterator<CachedFile> eldest = entries.values().iterator();
+        while ( usedBytes > maxBytes && eldest.hasNext() )
+        {
+            CachedFile evicted = eldest.next();
+            if ( evicted != cached )
+            {
+                usedBytes -= evicted.length;
+                eldest.remove();
+            }
+        }
+    }
+
+    private synchronized void remove( File file, CachedFile cached )
+    {
+        // another thread could have already reloaded it
+        if ( entries.get( file ) == cached )
+        {
+            entries.remove( file );
+            usedBytes -= cached.length;
+        }
+    }
+
+    private static final class CachedFile
+    {
+
+        final long lastModified;
+
+        final long length;
+
+        final ByteBufferResponseBodyWriter bodyWriter;
+
+        volatile long validated;
+
+        public CachedFile( long lastModified, long length, long validated, ByteBufferResponseBodyWriter bodyWriter )
+        {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.validated = validated;
+            this.bodyWriter = bodyWriter;
+        }
+
+    }
+
+}
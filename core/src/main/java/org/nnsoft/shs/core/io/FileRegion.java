@@ -0,0 +1,129 @@
+package org.nnsoft.shs.core.io;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static org.nnsoft.shs.core.io.IOUtils.closeQuietly;
+import static org.nnsoft.shs.lang.Preconditions.checkArgument;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A region of a file that is transferred to the client directly by the kernel,
+ * without copying its content in user space.
+ *
+ * This class is not thread-safe, once enqueued it is confined in the event loop.
+ */
+public final class FileRegion
+    implements Closeable
+{
+
+    private final FileChannel fileChannel;
+
+    private final long count;
+
+    private long position;
+
+    /**
+     * Opens the whole input file as a region that has to be transferred.
+     *
+     * @param file the file has to be transferred.
+     * @throws IOException if the file cannot be opened.
+     */
+    public FileRegion( File file )
+        throws IOException
+    {
+        checkArgument( file != null, "Null file cannot be transferred" );
+        fileChannel = new FileInputStream( file ).getChannel();
+        try
+        {
+            count = fileChannel.size();
+        }
+        catch ( IOException e )
+        {
+            closeQuietly( fileChannel );
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of bytes of the region.
+     *
+     * @return the number of bytes of the region.
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Verifies the whole region has been transferred.
+     *
+     * @return true if the whole region has been transferred, false otherwise.
+     */
+    public boolean isComplete()
+    {
+        return position >= count;
+    }
+
+    /**
+     * Transfers as many bytes as the target channel accepts, starting from where the previous transfer stopped.
+     *
+     * @param target the channel where the region has to be transferred to.
+     * @return the number of transferred bytes.
+     * @throws IOException if any error occurs while transferring or the file has been truncated.
+     */
+    public long transferTo( WritableByteChannel target )
+        throws IOException
+    {
+        if ( isComplete() )
+        {
+            // empty files have nothing to transfer
+            return 0;
+        }
+
+        long transferred = fileChannel.transferTo( position, count - position, target );
+
+        if ( transferred == 0 && position >= fileChannel.size() )
+        {
+            throw new IOException( "File has been truncated while being transferred" );
+        }
+
+        position += transferred;
+        return transferred;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close()
+    {
+        closeQuietly( fileChannel );
+    }
+
+}
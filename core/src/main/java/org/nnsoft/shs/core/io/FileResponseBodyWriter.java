@@ -33,13 +33,13 @@ import java.nio.channels.WritableByteChannel;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.nnsoft.shs.io.ResponseBodyWriter;
+import org.nnsoft.shs.io.SizedResponseBodyWriter;
 
 /**
  * Generates a body response from a {@link File}.
  */
 public final class FileResponseBodyWriter
-    implements ResponseBodyWriter
+    implements SizedResponseBodyWriter
 {
 
     /**
@@ -235,11 +235,43 @@ public final class FileResponseBodyWriter
     @Override
     public String contentType()
     {
-        int extensionSeparator = toBeTransfered.getName().lastIndexOf( '.' );
-        String extension = toBeTransfered.getName().substring( ++extensionSeparator );
+        return contentTypeOf( toBeTransfered );
+    }
+
+    /**
+     * Guesses the mime type of the input file, given its extension.
+     *
+     * @param file the file which mime type has to be guessed.
+     * @return the file mime type, null if unknown.
+     */
+    static String contentTypeOf( File file )
+    {
+        int extensionSeparator = file.getName().lastIndexOf( '.' );
+        String extension = file.getName().substring( ++extensionSeparator );
         return CONTENT_TYPES.get( extension );
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long contentLength()
+    {
+        return toBeTransfered.length();
+    }
+
+    /**
+     * Opens the file as a region that the server can transfer to the client without copies.
+     *
+     * @return the whole file region.
+     * @throws IOException if the file cannot be opened.
+     */
+    public FileRegion openRegion()
+        throws IOException
+    {
+        return new FileRegion( toBeTransfered );
+    }
+
     /**
      * {@inheritDoc}
      */
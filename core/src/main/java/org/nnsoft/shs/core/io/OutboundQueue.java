@@ -0,0 +1,364 @@
+package org.nnsoft.shs.core.io;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static java.nio.channels.SelectionKey.OP_WRITE;
+import static org.nnsoft.shs.core.io.ByteBufferEnqueuerOutputStream.EOM;
+import static org.nnsoft.shs.lang.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SelectionKey;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The queue of buffers that have to be sent to a client, terminated by the
+ * {@link ByteBufferEnqueuerOutputStream#EOM} marker.
+ *
+ * Buffers are enqueued by one producer and drained by the event loop that owns the connection,
+ * using gathering writes: many buffers go out with a single system call and buffers
+ * partially accepted by the socket are kept at their position until the next write.
+ * {@link FileRegion}s are transferred straight from the file to the socket.
+ *
+ * While the message is still being produced, the event loop can {@link #suspend()} writing
+ * once the queue has been drained; the next {@link #offer(ByteBuffer)} will arm {@code OP_WRITE} again.
+ * Producers that generate large messages can throttle themselves via {@link #awaitDrain()}.
+ */
+public final class OutboundQueue
+{
+
+    private static final long DEFAULT_HIGH_WATERMARK = 256 * 1024;
+
+    private static final long DEFAULT_LOW_WATERMARK = 64 * 1024;
+
+    /**
+     * Either {@link ByteBuffer}s or {@link FileRegion}s.
+     */
+    private final Queue<Object> buffers = new ConcurrentLinkedQueue<Object>();
+
+    private final AtomicLong pendingBytes = new AtomicLong();
+
+    private final AtomicBoolean suspended = new AtomicBoolean();
+
+    private final long highWatermark;
+
+    private final long lowWatermark;
+
+    private volatile SelectionKey key;
+
+    private volatile boolean producerWaiting;
+
+    private volatile boolean closed;
+
+    /**
+     * Creates a new queue with default watermarks.
+     */
+    public OutboundQueue()
+    {
+        this( DEFAULT_HIGH_WATERMARK, DEFAULT_LOW_WATERMARK );
+    }
+
+    /**
+     * Creates a new queue.
+     *
+     * @param highWatermark the number of pending bytes above which producers are blocked.
+     * @param lowWatermark the number of pending bytes below which blocked producers are resumed.
+     */
+    public OutboundQueue( long highWatermark, long lowWatermark )
+    {
+        checkArgument( lowWatermark >= 0, "Negative low watermark not allowed" );
+        checkArgument( highWatermark >= lowWatermark, "High watermark must be greater or equal than the low watermark" );
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+    }
+
+    /**
+     * Enqueues a buffer that has to be sent to the client.
+     *
+     * @param buffer the buffer that has to be sent to the client.
+     */
+    public void offer( ByteBuffer buffer )
+    {
+        checkArgument( buffer != null, "Null buffer cannot be enqueued" );
+        pendingBytes.addAndGet( buffer.remaining() );
+        buffers.offer( buffer );
+
+        // the event loop drained the queue while the message was produced, wake it up
+        if ( suspended.compareAndSet( true, false ) )
+        {
+            arm();
+        }
+    }
+
+    /**
+     * Enqueues a file region that has to be transferred to the client, without copying it in user space.
+     * Regions are not taken in account by the watermarks, since they are not kept in memory.
+     *
+     * @param region the file region that has to be transferred to the client.
+     */
+    public void offer( FileRegion region )
+    {
+        checkArgument( region != null, "Null file region cannot be enqueued" );
+        buffers.offer( region );
+
+        if ( suspended.compareAndSet( true, false ) )
+        {
+            arm();
+        }
+    }
+
+    /**
+     * Hands the queue over to the event loop that owns the connection, that starts writing
+     * the enqueued buffers as soon as possible.
+     *
+     * @param key the selection key that currently holds the client/server connection.
+     */
+    public void attachTo( SelectionKey key )
+    {
+        checkArgument( key != null, "Null SelectionKey not allowd." );
+        this.key = key;
+        key.attach( this );
+        arm();
+    }
+
+    /**
+     * Stops the event loop writing until the next buffer is enqueued;
+     * meant to be invoked by the event loop once it drained the queue.
+     */
+    public void suspend()
+    {
+        key.interestOps( 0 );
+        suspended.set( true );
+
+        // a buffer could have been enqueued before the suspension was visible to the producer
+        if ( !buffers.isEmpty() && suspended.compareAndSet( true, false ) )
+        {
+            key.interestOps( OP_WRITE );
+        }
+    }
+
+    /**
+     * Blocks the producer while too many bytes are waiting to be sent to a slow client.
+     *
+     * @throws IOException if the connection has been closed while waiting.
+     */
+    public void awaitDrain()
+        throws IOException
+    {
+        if ( pendingBytes.get() > highWatermark )
+        {
+            synchronized ( this )
+            {
+                producerWaiting = true;
+                try
+                {
+                    while ( !closed && pendingBytes.get() > lowWatermark )
+                    {
+                        wait();
+                    }
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    throw new IOException( "Interrupted while waiting the client consuming the response" );
+                }
+                finally
+                {
+                    producerWaiting = false;
+                }
+            }
+        }
+
+        if ( closed )
+        {
+            throw new IOException( "Connection closed while the response was still being sent" );
+        }
+    }
+
+    /**
+     * Marks the connection as closed, releasing the blocked producer, if any.
+     */
+    public void close()
+    {
+        closed = true;
+
+        Object pending;
+        while ( ( pending = buffers.poll() ) != null )
+        {
+            if ( pending instanceof FileRegion )
+            {
+                ( (FileRegion) pending ).close();
+            }
+        }
+
+        synchronized ( this )
+        {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Verifies there are no buffers waiting to be sent.
+     *
+     * @return true if there are no buffers waiting to be sent, false otherwise.
+     */
+    public boolean isEmpty()
+    {
+        return buffers.isEmpty();
+    }
+
+    /**
+     * Writes as many enqueued buffers as the target channel accepts.
+     *
+     * @param channel the channel where the buffers have to be written to.
+     * @param scratch the array used to gather the buffers, at most {@code scratch.length}
+     *        buffers are written with a single system call.
+     * @return true if the whole message, up to the EOM marker, has been written,
+     *         false if the channel doesn't accept more bytes or the queue has been drained
+     *         before the EOM marker.
+     * @throws IOException if any error occurs while writing.
+     */
+    public boolean writeTo( GatheringByteChannel channel, ByteBuffer[] scratch )
+        throws IOException
+    {
+        while ( true )
+        {
+            Object head = buffers.peek();
+
+            if ( head instanceof FileRegion )
+            {
+                FileRegion region = (FileRegion) head;
+                region.transferTo( channel );
+
+                if ( !region.isComplete() )
+                {
+                    // socket send buffer is full
+                    return false;
+                }
+
+                region.close();
+                buffers.poll();
+                continue;
+            }
+
+            int length = 0;
+            boolean endOfMessage = false;
+
+            // gather the buffers up to the next file region, if any
+            Iterator<Object> pending = buffers.iterator();
+            while ( length < scratch.length && pending.hasNext() )
+            {
+                Object current = pending.next();
+                if ( EOM == current )
+                {
+                    endOfMessage = true;
+                    break;
+                }
+                if ( current instanceof FileRegion )
+                {
+                    break;
+                }
+                scratch[length++] = (ByteBuffer) current;
+            }
+
+            if ( length > 0 )
+            {
+                onWritten( channel.write( scratch, 0, length ) );
+            }
+
+            // discard what has been completely written, the rest stays at its position
+            boolean channelFull = false;
+            for ( int i = 0; i < length; i++ )
+            {
+                if ( !channelFull && !scratch[i].hasRemaining() )
+                {
+                    buffers.poll();
+                }
+                else
+                {
+                    channelFull = true;
+                }
+                scratch[i] = null;
+            }
+
+            if ( channelFull )
+            {
+                return false;
+            }
+
+            if ( endOfMessage )
+            {
+                buffers.poll();
+                return true;
+            }
+
+            if ( buffers.peek() instanceof FileRegion )
+            {
+                continue;
+            }
+
+            if ( length < scratch.length )
+            {
+                // nothing else has been enqueued yet
+                return false;
+            }
+        }
+    }
+
+    private void onWritten( long written )
+    {
+        if ( pendingBytes.addAndGet( -written ) <= lowWatermark && producerWaiting )
+        {
+            synchronized ( this )
+            {
+                notifyAll();
+            }
+        }
+    }
+
+    private void arm()
+    {
+        SelectionKey current = key;
+        if ( current != null )
+        {
+            try
+            {
+                current.interestOps( OP_WRITE );
+                // the event loop could be blocked in select(), let it notice the new interest
+                current.selector().wakeup();
+            }
+            catch ( CancelledKeyException e )
+            {
+                // connection already closed, the producer will be notified on next awaitDrain()
+            }
+        }
+    }
+
+}
@@ -23,16 +23,32 @@ package org.nnsoft.shs.core;
  * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.nnsoft.shs.core.http.ResponseFactory.newResponse;
+import static org.nnsoft.shs.http.Headers.ALLOW;
+import static org.nnsoft.shs.http.Headers.HOST;
+import static org.nnsoft.shs.http.Request.Method.GET;
+import static org.nnsoft.shs.http.Request.Method.OPTIONS;
+import static org.nnsoft.shs.http.Request.Method.POST;
+import static org.nnsoft.shs.http.Response.Status.METHOD_NOT_ALLOWED;
+import static org.nnsoft.shs.http.Response.Status.NOT_FOUND;
+import static org.nnsoft.shs.http.Response.Status.OK;
+
+import java.io.IOException;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.nnsoft.shs.core.http.MutableRequest;
+import org.nnsoft.shs.http.BaseRequestHandler;
 import org.nnsoft.shs.http.Request;
+import org.nnsoft.shs.http.Request.Method;
 import org.nnsoft.shs.http.RequestHandler;
 import org.nnsoft.shs.http.Response;
 
@@ -116,6 +132,91 @@ public final class RequestBinderTestCase
         verify( mock2, never() ).handle( request, response );
     }
 
+    @Test
+    public void notAllowedMethodsAreRejectedByTheRouteTable()
+        throws Exception
+    {
+        dispatcher.addRequestHandler( "/get", new GetRequestHandler() );
+
+        Response response = newResponse();
+        dispatcher.dispatch( newRequest( POST, "/get" ), response );
+
+        assertEquals( METHOD_NOT_ALLOWED, response.getStatus() );
+        assertEquals( "OPTIONS, GET", response.getHeaders().getFirstValue( ALLOW ) );
+        assertNull( response.getHeaders().getFirstValue( "X-Handled" ) );
+    }
+
+    @Test
+    public void optionsAreRepliedByTheRouteTable()
+        throws Exception
+    {
+        dispatcher.addRequestHandler( "/get", new GetRequestHandler() );
+        dispatcher.addRequestHandler( "/get", new GetRequestHandler(), POST );
+
+        Response response = newResponse();
+        dispatcher.dispatch( newRequest( OPTIONS, "/get" ), response );
+
+        assertEquals( OK, response.getStatus() );
+        assertEquals( "OPTIONS, GET, POST", response.getHeaders().getFirstValue( ALLOW ) );
+    }
+
+    @Test
+    public void allowedMethodsAreDispatched()
+        throws Exception
+    {
+        dispatcher.addRequestHandler( "/get", new GetRequestHandler() );
+
+        Response response = newResponse();
+        dispatcher.dispatch( newRequest( GET, "/get" ), response );
+
+        assertEquals( OK, response.getStatus() );
+        assertEquals( "true", response.getHeaders().getFirstValue( "X-Handled" ) );
+    }
+
+    @Test
+    public void virtualHostsAreSelectedByHostHeader()
+        throws Exception
+    {
+        dispatcher.getVirtualHost( "Example.org" ).addRequestHandler( "/get", new GetRequestHandler() );
+
+        Response response = newResponse();
+        MutableRequest request = newRequest( GET, "/get" );
+        request.addHeader( HOST, "EXAMPLE.org:8080" );
+        dispatcher.dispatch( request, response );
+
+        assertEquals( OK, response.getStatus() );
+        assertEquals( "true", response.getHeaders().getFirstValue( "X-Handled" ) );
+
+        // not configured hosts fall back to the default routes
+        response = newResponse();
+        request = newRequest( GET, "/get" );
+        request.addHeader( HOST, "localhost" );
+        dispatcher.dispatch( request, response );
+
+        assertEquals( NOT_FOUND, response.getStatus() );
+    }
+
+    private static MutableRequest newRequest( Method method, String path )
+    {
+        MutableRequest request = new MutableRequest();
+        request.setMethod( method );
+        request.setPath( path );
+        return request;
+    }
+
+    private static final class GetRequestHandler
+        extends BaseRequestHandler
+    {
+
+        @Override
+        protected void get( Request request, Response response )
+            throws IOException
+        {
+            response.addHeader( "X-Handled", "true" );
+        }
+
+    }
+
     private static Request newMockRequest( String path )
     {
         final Request request = mock( Request.class );
@@ -0,0 +1,150 @@
+package org.nnsoft.shs.core;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.nnsoft.shs.core.http.HttpDate.currentDate;
+import static org.nnsoft.shs.core.http.HttpDate.format;
+import static org.nnsoft.shs.core.http.ResponseFactory.newResponse;
+import static org.nnsoft.shs.http.Headers.HOST;
+import static org.nnsoft.shs.http.Request.Method.GET;
+import static org.nnsoft.shs.http.Response.Status.OK;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.nnsoft.shs.core.http.MutableRequest;
+import org.nnsoft.shs.core.io.ByteBufferResponseBodyWriter;
+import org.nnsoft.shs.core.io.OutboundQueue;
+import org.nnsoft.shs.core.io.ThrottledChannel;
+import org.nnsoft.shs.http.Response;
+
+public final class ResponseCacheTestCase
+{
+
+    private static final String HEAD = "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\n";
+
+    private ResponseCache responseCache;
+
+    @Before
+    public void setUp()
+    {
+        responseCache = new ResponseCache( 10 );
+    }
+
+    @Test
+    public void responsesAreCacheableOnlyWhenHandlersOptIn()
+    {
+        Response response = newResponse();
+        response.setStatus( OK );
+        response.setBody( new ByteBufferResponseBodyWriter( "text/plain", ByteBuffer.wrap( "hello".getBytes() ) ) );
+
+        MutableRequest request = newRequest();
+        assertFalse( ResponseCache.isCacheable( request, response ) );
+
+        request.setResponseCacheable( true );
+        assertTrue( ResponseCache.isCacheable( request, response ) );
+    }
+
+    @Test
+    public void queryStringIsPartOfTheKey()
+    {
+        MutableRequest stored = newRequest();
+        stored.addQueryStringParameter( "x", "1" );
+        responseCache.store( stored, true, false, ByteBuffer.wrap( HEAD.getBytes() ), ByteBuffer.wrap( "hello".getBytes() ) );
+
+        MutableRequest same = newRequest();
+        same.addQueryStringParameter( "x", "1" );
+        assertNotNull( responseCache.lookup( same, true, false ) );
+
+        MutableRequest other = newRequest();
+        other.addQueryStringParameter( "x", "2" );
+        assertNull( responseCache.lookup( other, true, false ) );
+
+        assertNull( responseCache.lookup( newRequest(), true, false ) );
+    }
+
+    @Test
+    public void decodedQueryValuesDoNotCollide()
+    {
+        MutableRequest stored = newRequest();
+        stored.addQueryStringParameter( "x", "1&y=2" );
+        responseCache.store( stored, true, false, ByteBuffer.wrap( HEAD.getBytes() ), ByteBuffer.wrap( "hello".getBytes() ) );
+
+        MutableRequest other = newRequest();
+        other.addQueryStringParameter( "x", "1" );
+        other.addQueryStringParameter( "y", "2" );
+        assertNull( responseCache.lookup( other, true, false ) );
+    }
+
+    @Test
+    public void dateIsPatchedInTheRecordedHead()
+        throws IOException
+    {
+        String head = "HTTP/1.1 200 OK\r\nDate: " + format( 0 ) + "\r\nContent-Length: 5\r\n\r\n";
+        responseCache.store( newRequest(), true, false, ByteBuffer.wrap( head.getBytes() ), ByteBuffer.wrap( "hello".getBytes() ) );
+
+        String expected = "HTTP/1.1 200 OK\r\nDate: " + currentDate() + "\r\nContent-Length: 5\r\n\r\nhello";
+        assertEquals( expected, replay( responseCache.lookup( newRequest(), true, false ) ) );
+        // hits share the patched head, each one with its own position
+        assertEquals( expected, replay( responseCache.lookup( newRequest(), true, false ) ) );
+    }
+
+    @Test
+    public void headsWithoutDateAreReplayedAsTheyAre()
+        throws IOException
+    {
+        responseCache.store( newRequest(), true, false, ByteBuffer.wrap( HEAD.getBytes() ), ByteBuffer.wrap( "hello".getBytes() ) );
+
+        assertEquals( HEAD + "hello", replay( responseCache.lookup( newRequest(), true, false ) ) );
+    }
+
+    private static String replay( OutboundQueue queue )
+        throws IOException
+    {
+        ThrottledChannel channel = new ThrottledChannel( Integer.MAX_VALUE );
+        while ( !queue.writeTo( channel, new ByteBuffer[16] ) )
+        {
+            // keep writing
+        }
+        return new String( channel.toByteArray() );
+    }
+
+    private static MutableRequest newRequest()
+    {
+        MutableRequest request = new MutableRequest();
+        request.setMethod( GET );
+        request.setPath( "/index.html" );
+        request.setProtocolVersion( "1.1" );
+        request.addHeader( HOST, "localhost" );
+        return request;
+    }
+
+}
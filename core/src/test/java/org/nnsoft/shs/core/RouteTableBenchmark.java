@@ -0,0 +1,108 @@
+package org.nnsoft.shs.core;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static java.lang.System.nanoTime;
+import static java.lang.String.format;
+
+/**
+ * Measures the average cost of matching a path against route tables of growing size;
+ * launch it as a plain Java application, the cost is expected to stay flat.
+ */
+public final class RouteTableBenchmark
+{
+
+    private static final int ITERATIONS = 2000000;
+
+    private static final String[] PATHS = {
+        "/api/v1/resource17/items",
+        "/static/css/site.css",
+        "/docs/guide.xml",
+        "/not/found"
+    };
+
+    public static void main( String[] args )
+    {
+        int[] sizes = { 10, 100, 500, 1000, 5000 };
+
+        for ( int routes : sizes )
+        {
+            RouteTable<Integer> table = newRouteTable( routes );
+
+            // warm up
+            measure( table );
+
+            System.out.println( format( "%5d routes: %6.1f ns/match", routes, measure( table ) ) );
+        }
+    }
+
+    private static RouteTable<Integer> newRouteTable( int routes )
+    {
+        RouteTable<Integer> table = new RouteTable<Integer>();
+        for ( int i = 0; i < routes; i++ )
+        {
+            switch ( i % 3 )
+            {
+                case 0:
+                    table.add( format( "/api/v1/resource%s/items", i ), i );
+                    break;
+
+                case 1:
+                    table.add( format( "/static/module%s/*", i ), i );
+                    break;
+
+                default:
+                    table.add( format( "*.ext%s", i ), i );
+                    break;
+            }
+        }
+        table.add( "/static/*", -1 );
+        table.add( "*.xml", -2 );
+        return table;
+    }
+
+    private static double measure( RouteTable<Integer> table )
+    {
+        int matched = 0;
+        long start = nanoTime();
+
+        for ( int i = 0; i < ITERATIONS; i++ )
+        {
+            if ( table.match( PATHS[i & 3] ) != null )
+            {
+                matched++;
+            }
+        }
+
+        long elapsed = nanoTime() - start;
+
+        if ( matched == 0 )
+        {
+            throw new IllegalStateException( "No path matched" );
+        }
+
+        return (double) elapsed / ITERATIONS;
+    }
+
+}
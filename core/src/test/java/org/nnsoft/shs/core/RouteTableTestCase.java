@@ -0,0 +1,157 @@
+package org.nnsoft.shs.core;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.nnsoft.shs.core.http.MutableRequest;
+
+public final class RouteTableTestCase
+{
+
+    private RouteTable<String> routes;
+
+    @Before
+    public void setUp()
+    {
+        routes = new RouteTable<String>();
+        routes.add( "/index.html", "index" );
+        routes.add( "/api/users", "users" );
+        routes.add( "/api/*", "api" );
+        routes.add( "*.xml", "xml" );
+        routes.add( "/api/users/*", "shadowed" );
+        routes.add( "/*", "all" );
+    }
+
+    @Test
+    public void literalRoutesMatchTheWholePath()
+    {
+        assertEquals( "index", routes.match( "/index.html" ) );
+        assertEquals( "users", routes.match( "/api/users" ) );
+        assertEquals( "all", routes.match( "/index.htm" ) );
+    }
+
+    @Test
+    public void prefixRoutes()
+    {
+        assertEquals( "api", routes.match( "/api/" ) );
+        assertEquals( "api", routes.match( "/api/usersx" ) );
+        assertEquals( "all", routes.match( "/ap" ) );
+    }
+
+    @Test
+    public void suffixRoutes()
+    {
+        assertEquals( "xml", routes.match( "/site/pom.xml" ) );
+        assertEquals( "all", routes.match( "/site/pom.xm" ) );
+    }
+
+    @Test
+    public void firstRegisteredRouteWins()
+    {
+        // matches "/api/*", "*.xml", "/api/users/*" and "/*"
+        assertEquals( "api", routes.match( "/api/users/orders.xml" ) );
+        assertEquals( "xml", routes.match( "/orders.xml" ) );
+    }
+
+    @Test
+    public void edgesSplitPreservesRoutes()
+    {
+        RouteTable<String> table = new RouteTable<String>();
+        table.add( "/abcd", "abcd" );
+        table.add( "/ab", "ab" );
+        table.add( "/abxy", "abxy" );
+
+        assertEquals( "abcd", table.match( "/abcd" ) );
+        assertEquals( "ab", table.match( "/ab" ) );
+        assertEquals( "abxy", table.match( "/abxy" ) );
+        assertNull( table.match( "/a" ) );
+        assertNull( table.match( "/abc" ) );
+        assertNull( table.match( null ) );
+    }
+
+    @Test
+    public void catchAll()
+    {
+        RouteTable<String> table = new RouteTable<String>();
+        table.add( "*", "any" );
+
+        assertEquals( "any", table.match( "" ) );
+        assertEquals( "any", table.match( "/whatever" ) );
+    }
+
+    @Test
+    public void templatesCaptureSegments()
+    {
+        RouteTable<String> table = new RouteTable<String>();
+        table.add( "/users/{id}/orders/{orderId}", "order" );
+        table.add( "/users/me/orders/{orderId}", "shadowed" );
+        table.add( "/users/{id}", "user" );
+        table.add( "/users/{id}/files/*", "files" );
+
+        MutableRequest request = newRequest( "/users/me/orders/42" );
+        assertEquals( "order", table.match( request.getPath(), request ) );
+        assertEquals( "me", request.getPathParameter( "id" ) );
+        assertEquals( "42", request.getPathParameter( "orderId" ) );
+        assertNull( request.getPathParameter( "missing" ) );
+
+        request = newRequest( "/users/17" );
+        assertEquals( "user", table.match( request.getPath(), request ) );
+        assertEquals( "17", request.getPathParameter( "id" ) );
+
+        request = newRequest( "/users/17/files/a/b.txt" );
+        assertEquals( "files", table.match( request.getPath(), request ) );
+        assertEquals( "17", request.getPathParameter( "id" ) );
+
+        assertNull( table.match( "/users/" ) );
+        assertNull( table.match( "/users/17/orders/" ) );
+    }
+
+    @Test
+    public void literalEdgesPrecedeParametersOnlyIfRegisteredFirst()
+    {
+        RouteTable<String> table = new RouteTable<String>();
+        table.add( "/users/{id}", "user" );
+        table.add( "/users/me", "me" );
+
+        assertEquals( "user", table.match( "/users/me" ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void parametersSpanWholeSegments()
+    {
+        new RouteTable<String>().add( "/files/{name}.json", "json" );
+    }
+
+    private static MutableRequest newRequest( String path )
+    {
+        MutableRequest request = new MutableRequest();
+        request.setPath( path );
+        return request;
+    }
+
+}
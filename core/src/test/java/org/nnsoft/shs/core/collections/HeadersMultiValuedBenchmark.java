@@ -0,0 +1,122 @@
+package org.nnsoft.shs.core.collections;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static java.lang.String.format;
+import static java.lang.System.nanoTime;
+
+/**
+ * Measures the cost of filling a typical set of request headers and looking some of them up,
+ * comparing {@link HeadersMultiValued} to {@link SimpleMultiValued};
+ * launch it as a plain Java application.
+ */
+public final class HeadersMultiValuedBenchmark
+{
+
+    private static final int REQUESTS = 500000;
+
+    private static final String[][] HEADERS = {
+        { "Host", "localhost:8080" },
+        { "User-Agent", "Mozilla/5.0 (X11; Linux x86_64; rv:120.0) Gecko/20100101 Firefox/120.0" },
+        { "Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8" },
+        { "Accept-Language", "en-US,en;q=0.5" },
+        { "Accept-Encoding", "gzip, deflate" },
+        { "Accept-Charset", "ISO-8859-1" },
+        { "Accept-Charset", "utf-8;q=0.7" },
+        { "Connection", "keep-alive" },
+        { "Referer", "http://localhost:8080/index.html" },
+        { "Cookie", "SHSSESSIONID=abcdefghijklmnopqrstuv" },
+        { "Cache-Control", "max-age=0" },
+        { "If-Modified-Since", "Sat, 29 Oct 1994 19:43:31 GMT" },
+        { "Pragma", "no-cache" },
+        { "Content-Type", "text/plain" },
+        { "Content-Length", "0" }
+    };
+
+    private static final String[] LOOKUPS = { "Host", "Content-Length", "Accept-Encoding", "X-Forwarded-For" };
+
+    public static void main( String[] args )
+    {
+        // warm up
+        measureSimple();
+        measureHeaders();
+
+        System.out.println( format( "SimpleMultiValued  %6.0f ns/request", measureSimple() ) );
+        System.out.println( format( "HeadersMultiValued %6.0f ns/request", measureHeaders() ) );
+    }
+
+    private static double measureSimple()
+    {
+        int found = 0;
+        long started = nanoTime();
+        for ( int i = 0; i < REQUESTS; i++ )
+        {
+            SimpleMultiValued<String, String> headers = new SimpleMultiValued<String, String>();
+            for ( String[] header : HEADERS )
+            {
+                headers.addValue( header[0], header[1] );
+            }
+            for ( String lookup : LOOKUPS )
+            {
+                if ( headers.getFirstValue( lookup ) != null )
+                {
+                    found++;
+                }
+            }
+        }
+        return elapsed( started, found );
+    }
+
+    private static double measureHeaders()
+    {
+        int found = 0;
+        long started = nanoTime();
+        for ( int i = 0; i < REQUESTS; i++ )
+        {
+            HeadersMultiValued headers = new HeadersMultiValued();
+            for ( String[] header : HEADERS )
+            {
+                headers.addValue( header[0], header[1] );
+            }
+            for ( String lookup : LOOKUPS )
+            {
+                if ( headers.getFirstValue( lookup ) != null )
+                {
+                    found++;
+                }
+            }
+        }
+        return elapsed( started, found );
+    }
+
+    private static double elapsed( long started, int found )
+    {
+        if ( found != REQUESTS * ( LOOKUPS.length - 1 ) )
+        {
+            throw new IllegalStateException( "Unexpected lookups result " + found );
+        }
+        return (double) ( nanoTime() - started ) / REQUESTS;
+    }
+
+}
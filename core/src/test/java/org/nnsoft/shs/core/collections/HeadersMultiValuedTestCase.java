@@ -0,0 +1,135 @@
+package org.nnsoft.shs.core.collections;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.nnsoft.shs.http.Headers.ACCEPT_CHARSET;
+import static org.nnsoft.shs.http.Headers.CONTENT_TYPE;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nnsoft.shs.collections.EntryVisitor;
+
+public final class HeadersMultiValuedTestCase
+{
+
+    private HeadersMultiValued headers;
+
+    @Before
+    public void setUp()
+    {
+        headers = new HeadersMultiValued()
+                      .addValue( "Accept-Charset", "ISO-8859-1" )
+                      .addValue( "content-type", "text/html" )
+                      .addValue( "ACCEPT-CHARSET", "utf-8;q=0.7" );
+    }
+
+    @After
+    public void tearDown()
+    {
+        headers = null;
+    }
+
+    @Test
+    public void namesAreCaseInsensitive()
+    {
+        assertTrue( headers.contains( "accept-charset" ) );
+        assertEquals( "text/html", headers.getFirstValue( "Content-Type" ) );
+        assertEquals( 2, headers.getValues( "Accept-Charset" ).size() );
+        assertEquals( "utf-8;q=0.7", headers.getValues( "accept-charset" ).get( 1 ) );
+        assertFalse( headers.contains( "Accept" ) );
+        assertNull( headers.getValues( "Accept" ) );
+    }
+
+    @Test
+    public void knownNamesAreInterned()
+    {
+        assertSame( CONTENT_TYPE, headers.getAllKeys().toArray()[1] );
+        assertEquals( 2, headers.getAllKeys().size() );
+    }
+
+    @Test
+    public void visitsAllHeadersInInsertionOrder()
+    {
+        final List<String> visited = new ArrayList<String>();
+        headers.forEach( new EntryVisitor<String, String>()
+        {
+
+            public void visit( String key, String value )
+            {
+                visited.add( key + ": " + value );
+            }
+
+        } );
+
+        assertEquals( 3, visited.size() );
+        assertEquals( ACCEPT_CHARSET + ": ISO-8859-1", visited.get( 0 ) );
+        assertEquals( ACCEPT_CHARSET + ": utf-8;q=0.7", visited.get( 2 ) );
+    }
+
+    @Test
+    public void indexedAccessFollowsInsertionOrder()
+    {
+        assertEquals( 3, headers.size() );
+        assertSame( CONTENT_TYPE, headers.getKey( 1 ) );
+        assertEquals( "utf-8;q=0.7", headers.getValue( 2 ) );
+    }
+
+    @Test( expected = IndexOutOfBoundsException.class )
+    public void cannotAccessBeyondSize()
+    {
+        headers.getKey( 3 );
+    }
+
+    @Test
+    public void growsBeyondInitialCapacity()
+    {
+        for ( int i = 0; i < 100; i++ )
+        {
+            headers.addValue( "X-Header-" + i, String.valueOf( i ) );
+        }
+        assertEquals( "99", headers.getFirstValue( "x-header-99" ) );
+    }
+
+    @Test( expected = UnsupportedOperationException.class )
+    public void cannotOverrideValuesDirectly()
+    {
+        headers.getValues( "Accept-Charset" ).add( "user preferred value" );
+    }
+
+    @Test( expected = UnsupportedOperationException.class )
+    public void cannotRemoveElementsFromIterator()
+    {
+        headers.getAllEntries().iterator().remove();
+    }
+
+}
@@ -23,12 +23,16 @@ package org.nnsoft.shs.core.collections;
  * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
 import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.nnsoft.shs.collections.EntryVisitor;
 
 public final class MultiValuedTestCase
 {
@@ -50,6 +54,67 @@ public final class MultiValuedTestCase
         multiValued = null;
     }
 
+    @Test
+    public void indexedAccessFollowsInsertionOrder()
+    {
+        multiValued.addValue( "Accept", "text/html" );
+
+        assertEquals( 4, multiValued.size() );
+        assertEquals( "Accept-Charset", multiValued.getKey( 1 ) );
+        assertEquals( "utf-8;q=0.7", multiValued.getValue( 1 ) );
+        assertEquals( "Accept", multiValued.getKey( 3 ) );
+        assertEquals( "text/html", multiValued.getValue( 3 ) );
+    }
+
+    @Test( expected = IndexOutOfBoundsException.class )
+    public void cannotAccessBeyondSize()
+    {
+        multiValued.getValue( 3 );
+    }
+
+    @Test
+    public void visitsEachKeyValuePair()
+    {
+        final StringBuilder visited = new StringBuilder();
+        multiValued.forEach( new EntryVisitor<String, String>()
+        {
+
+            public void visit( String key, String value )
+            {
+                visited.append( key ).append( '=' ).append( value ).append( ';' );
+            }
+
+        } );
+
+        assertEquals( "Accept-Charset=ISO-8859-1;Accept-Charset=utf-8;q=0.7;Accept-Charset=*;q=0.7;", visited.toString() );
+    }
+
+    @Test
+    public void equalityIgnoresTheOrderOfDifferentKeys()
+    {
+        multiValued.addValue( "Accept", "text/html" );
+
+        SimpleMultiValued<String, String> other = new SimpleMultiValued<String, String>()
+                                                      .addValue( "Accept", "text/html" )
+                                                      .addValue( "Accept-Charset", "ISO-8859-1" )
+                                                      .addValue( "Accept-Charset", "utf-8;q=0.7" )
+                                                      .addValue( "Accept-Charset", "*;q=0.7" );
+
+        assertEquals( multiValued, other );
+        assertEquals( multiValued.hashCode(), other.hashCode() );
+    }
+
+    @Test
+    public void equalityFollowsTheOrderOfValues()
+    {
+        SimpleMultiValued<String, String> other = new SimpleMultiValued<String, String>()
+                                                      .addValue( "Accept-Charset", "utf-8;q=0.7" )
+                                                      .addValue( "Accept-Charset", "ISO-8859-1" )
+                                                      .addValue( "Accept-Charset", "*;q=0.7" );
+
+        assertFalse( multiValued.equals( other ) );
+    }
+
     @Test( expected = UnsupportedOperationException.class )
     public void cannotOverrideValuesDirectly()
     {
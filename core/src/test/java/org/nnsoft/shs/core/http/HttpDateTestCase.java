@@ -0,0 +1,87 @@
+package org.nnsoft.shs.core.http;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static java.util.Locale.US;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.nnsoft.shs.core.http.HttpDate.currentDate;
+import static org.nnsoft.shs.core.http.HttpDate.format;
+import static org.nnsoft.shs.core.http.HttpDate.getEncoded;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public final class HttpDateTestCase
+{
+
+    @Test
+    public void formatRfc1123Date()
+    {
+        assertEquals( "Sun, 06 Nov 1994 08:49:37 GMT", format( 784111777000L ) );
+        assertEquals( "Thu, 01 Jan 1970 00:00:00 GMT", format( 0 ) );
+        assertEquals( "Tue, 29 Feb 2000 23:59:59 GMT", format( 951868799999L ) );
+    }
+
+    @Test
+    public void formatAsSimpleDateFormat()
+    {
+        SimpleDateFormat expected = new SimpleDateFormat( "EEE, dd MMM yyyy HH:mm:ss 'GMT'", US );
+        expected.setTimeZone( TimeZone.getTimeZone( "GMT" ) );
+
+        Random random = new Random( 42 );
+        for ( int i = 0; i < 10000; i++ )
+        {
+            // from 1970 to 2100
+            long millis = (long) ( random.nextDouble() * 4102444800000L );
+            assertEquals( expected.format( new Date( millis ) ), format( millis ) );
+        }
+    }
+
+    @Test
+    public void currentDateIsEncodedOnce()
+    {
+        String date = currentDate();
+        byte[] encoded = getEncoded( date );
+
+        // the second could have changed in the meanwhile
+        if ( encoded != null )
+        {
+            assertEquals( date, new String( encoded ) );
+            assertSame( encoded, getEncoded( date ) );
+        }
+    }
+
+    @Test
+    public void otherDatesAreNotEncoded()
+    {
+        assertNull( getEncoded( new String( currentDate() ) ) );
+    }
+
+}
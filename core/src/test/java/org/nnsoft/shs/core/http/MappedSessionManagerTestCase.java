@@ -0,0 +1,101 @@
+package org.nnsoft.shs.core.http;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.nnsoft.shs.core.http.ResponseFactory.newResponse;
+import static org.nnsoft.shs.core.http.SessionRequests.newRequest;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nnsoft.shs.http.Cookie;
+import org.nnsoft.shs.http.Response;
+
+public final class MappedSessionManagerTestCase
+{
+
+    private File storeFile;
+
+    private MappedSessionManager sessionManager;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        storeFile = File.createTempFile( "sessions", ".shs" );
+        sessionManager = new MappedSessionManager( 60 * 1000, new SecureRandomSessionIdGenerator(), storeFile, 16, 512 );
+    }
+
+    @After
+    public void tearDown()
+    {
+        sessionManager.shutDown();
+        storeFile.delete();
+    }
+
+    @Test
+    public void sessionsAreRestoredOnlyWhenRequested()
+        throws Exception
+    {
+        MutableRequest request = newRequest( null );
+        Response response = newResponse();
+
+        sessionManager.manageSession( request );
+        request.getSession().setAttribute( "user", "alice" );
+        sessionManager.commitSession( request, response );
+
+        assertEquals( 1, response.getCookies().size() );
+        Cookie cookie = response.getCookies().iterator().next();
+
+        request = newRequest( cookie.getValue() );
+        response = newResponse();
+
+        sessionManager.manageSession( request );
+        assertFalse( request.hasSession() );
+
+        assertEquals( "alice", request.getSession().getAttribute( "user" ) );
+        assertFalse( request.getSession().isNew() );
+        assertFalse( request.isSessionCreated() );
+
+        sessionManager.commitSession( request, response );
+        assertTrue( response.getCookies().isEmpty() );
+    }
+
+    @Test
+    public void unknownSessionsAreReplaced()
+    {
+        MutableRequest request = newRequest( "not-a-session" );
+
+        sessionManager.manageSession( request );
+
+        assertFalse( "not-a-session".equals( request.getSession().getId() ) );
+        assertTrue( request.isSessionCreated() );
+    }
+
+}
@@ -0,0 +1,139 @@
+package org.nnsoft.shs.core.http;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
+import static java.lang.System.nanoTime;
+import static java.lang.management.ManagementFactory.getGarbageCollectorMXBeans;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Measures get/put latency with 1M sessions, comparing the memory-mapped store with the in-memory
+ * registry, and the heap and garbage collections needed to hold them; launch it as a plain Java application.
+ */
+public final class MappedSessionStoreBenchmark
+{
+
+    private static final int SESSIONS = 1000000;
+
+    private static final int OPERATIONS = 1000000;
+
+    public static void main( String[] args )
+        throws Exception
+    {
+        String[] ids = new String[SESSIONS];
+        SecureRandomSessionIdGenerator generator = new SecureRandomSessionIdGenerator();
+        for ( int i = 0; i < SESSIONS; i++ )
+        {
+            ids[i] = generator.generateSessionId();
+        }
+
+        File storeFile = File.createTempFile( "sessions", ".shs" );
+        storeFile.deleteOnExit();
+
+        long now = currentTimeMillis();
+
+        // memory-mapped store
+
+        long heap = usedHeap();
+        long collections = collections();
+        MappedSessionStore sessionStore = new MappedSessionStore( storeFile, SESSIONS, 128, 60 * 60 * 1000 );
+
+        long start = nanoTime();
+        for ( int i = 0; i < SESSIONS; i++ )
+        {
+            DefaultSession session = new DefaultSession( ids[i] );
+            session.setAttribute( "user", "user-" + i );
+            sessionStore.put( session, now );
+        }
+        double putLatency = (double) ( nanoTime() - start ) / SESSIONS;
+
+        start = nanoTime();
+        for ( int i = 0; i < OPERATIONS; i++ )
+        {
+            sessionStore.get( ids[(int) ( i * 7919L % SESSIONS )], now );
+        }
+        double getLatency = (double) ( nanoTime() - start ) / OPERATIONS;
+        collections = collections() - collections;
+
+        System.out.println( format( "MappedSessionStore: put %6.0f ns, get %6.0f ns, heap %4d MB, %d GCs, file %d MB",
+                                    putLatency, getLatency, ( usedHeap() - heap ) >> 20, collections,
+                                    storeFile.length() >> 20 ) );
+
+        sessionStore.close();
+        storeFile.delete();
+
+        // in-memory registry
+
+        heap = usedHeap();
+        collections = collections();
+        ConcurrentMap<String, DefaultSession> registry = new ConcurrentHashMap<String, DefaultSession>();
+
+        start = nanoTime();
+        for ( int i = 0; i < SESSIONS; i++ )
+        {
+            DefaultSession session = new DefaultSession( ids[i] );
+            session.setAttribute( "user", "user-" + i );
+            registry.put( ids[i], session );
+        }
+        putLatency = (double) ( nanoTime() - start ) / SESSIONS;
+
+        start = nanoTime();
+        for ( int i = 0; i < OPERATIONS; i++ )
+        {
+            registry.get( ids[(int) ( i * 7919L % SESSIONS )] ).updateLastAccessedTime( now );
+        }
+        getLatency = (double) ( nanoTime() - start ) / OPERATIONS;
+        collections = collections() - collections;
+
+        System.out.println( format( "ConcurrentHashMap:  put %6.0f ns, get %6.0f ns, heap %4d MB, %d GCs",
+                                    putLatency, getLatency, ( usedHeap() - heap ) >> 20, collections ) );
+    }
+
+    private static long usedHeap()
+    {
+        for ( int i = 0; i < 3; i++ )
+        {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long collections()
+    {
+        long collections = 0;
+        for ( GarbageCollectorMXBean collector : getGarbageCollectorMXBeans() )
+        {
+            collections += collector.getCollectionCount();
+        }
+        return collections;
+    }
+
+}
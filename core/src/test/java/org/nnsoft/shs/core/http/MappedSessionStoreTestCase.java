@@ -0,0 +1,211 @@
+package org.nnsoft.shs.core.http;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class MappedSessionStoreTestCase
+{
+
+    private static final int MAX_AGE = 60 * 1000;
+
+    private File storeFile;
+
+    private MappedSessionStore sessionStore;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        storeFile = File.createTempFile( "sessions", ".shs" );
+        sessionStore = new MappedSessionStore( storeFile, 16, 512, MAX_AGE );
+    }
+
+    @After
+    public void tearDown()
+        throws Exception
+    {
+        sessionStore.close();
+        storeFile.delete();
+    }
+
+    @Test
+    public void storedSessionsAreRestored()
+        throws Exception
+    {
+        long now = System.currentTimeMillis();
+        DefaultSession session = new DefaultSession( "session-1" );
+        session.setAttribute( "user", "alice" );
+        session.setAttribute( "visits", 3 );
+        session.setAttribute( "lastLogin", new Date( now ) );
+        session.setAttribute( "admin", false );
+        sessionStore.put( session, now );
+
+        DefaultSession restored = sessionStore.get( "session-1", now + 1000 );
+        assertNotNull( restored );
+        assertEquals( session.getCreationTime(), restored.getCreationTime() );
+        assertEquals( now, restored.getLastAccessedTimeMillis() );
+        assertEquals( "alice", restored.getAttribute( "user" ) );
+        assertEquals( Integer.valueOf( 3 ), restored.getAttribute( "visits" ) );
+        assertEquals( new Date( now ), restored.getAttribute( "lastLogin" ) );
+        assertEquals( Boolean.FALSE, restored.getAttribute( "admin" ) );
+        assertFalse( restored.isNew() );
+
+        restored.setAttribute( "user", "bob" );
+        sessionStore.put( restored, now + 2000 );
+        assertEquals( "bob", sessionStore.get( "session-1", now + 3000 ).getAttribute( "user" ) );
+
+        assertNull( sessionStore.get( "session-2", now ) );
+    }
+
+    @Test
+    public void sessionsSurviveReopening()
+        throws Exception
+    {
+        long now = System.currentTimeMillis();
+        DefaultSession session = new DefaultSession( "session-1" );
+        session.setAttribute( "user", "alice" );
+        sessionStore.put( session, now );
+        sessionStore.close();
+
+        sessionStore = new MappedSessionStore( storeFile, 16, 512, MAX_AGE );
+        assertEquals( "alice", sessionStore.get( "session-1", now ).getAttribute( "user" ) );
+    }
+
+    @Test( expected = IOException.class )
+    public void storesWithDifferentLayoutAreNotOpened()
+        throws Exception
+    {
+        new MappedSessionStore( storeFile, 1024, 512, MAX_AGE );
+    }
+
+    @Test
+    public void expiredSessionsAreReplaced()
+        throws Exception
+    {
+        long now = System.currentTimeMillis();
+        // fills all the slots of the table
+        for ( int i = 0; i < 32; i++ )
+        {
+            sessionStore.put( new DefaultSession( "expired-" + i ), now );
+        }
+
+        long later = now + MAX_AGE + 1;
+        assertNull( sessionStore.get( "expired-0", later ) );
+
+        for ( int i = 0; i < 32; i++ )
+        {
+            sessionStore.put( new DefaultSession( "session-" + i ), later );
+        }
+        assertNotNull( sessionStore.get( "session-31", later ) );
+    }
+
+    @Test( expected = IOException.class )
+    public void tooLargeSessionsAreNotStored()
+        throws Exception
+    {
+        DefaultSession session = new DefaultSession( "session-1" );
+        session.setAttribute( "data", new byte[1024] );
+        sessionStore.put( session, System.currentTimeMillis() );
+    }
+
+    @Test
+    public void touchedSessionsDoNotExpire()
+        throws Exception
+    {
+        long now = System.currentTimeMillis();
+        sessionStore.put( new DefaultSession( "session-1" ), now );
+
+        long later = now + MAX_AGE;
+        assertTrue( sessionStore.touch( "session-1", later ) );
+        assertFalse( sessionStore.touch( "session-2", later ) );
+
+        DefaultSession restored = sessionStore.get( "session-1", later + MAX_AGE );
+        assertNotNull( restored );
+        assertEquals( later, restored.getLastAccessedTimeMillis() );
+
+        assertFalse( sessionStore.touch( "session-1", later + MAX_AGE + 1 ) );
+    }
+
+    @Test
+    public void expiredSessionsAreSwept()
+        throws Exception
+    {
+        long now = System.currentTimeMillis();
+        // expired and live sessions share the probing sequences
+        for ( int i = 0; i < 24; i++ )
+        {
+            sessionStore.put( new DefaultSession( "session-" + i ), i % 2 == 0 ? now : now + 1 );
+        }
+
+        long later = now + MAX_AGE + 1;
+        assertEquals( 0, sessionStore.removeExpired( sessionStore.getSlotCount(), now + 1 ) );
+        assertEquals( 12, sessionStore.removeExpired( sessionStore.getSlotCount(), later ) );
+
+        for ( int i = 0; i < 24; i++ )
+        {
+            DefaultSession restored = sessionStore.get( "session-" + i, later );
+            if ( i % 2 == 0 )
+            {
+                assertNull( restored );
+            }
+            else
+            {
+                assertNotNull( restored );
+            }
+        }
+    }
+
+    @Test
+    public void nonAsciiIdsAreNotFound()
+        throws Exception
+    {
+        long now = System.currentTimeMillis();
+        sessionStore.put( new DefaultSession( "session-A" ), now );
+
+        // U+0141 would be truncated to 'A'
+        assertNull( sessionStore.get( "session-\u0141", now ) );
+        assertFalse( sessionStore.touch( "session-\u0141", now ) );
+    }
+
+    @Test( expected = IOException.class )
+    public void nonAsciiIdsAreNotStored()
+        throws Exception
+    {
+        sessionStore.put( new DefaultSession( "session-\u0141" ), System.currentTimeMillis() );
+    }
+
+}
@@ -0,0 +1,117 @@
+package org.nnsoft.shs.core.http;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.nnsoft.shs.core.http.ResponseFactory.newResponse;
+import static org.nnsoft.shs.core.http.SessionRequests.newRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nnsoft.shs.http.Response;
+import org.nnsoft.shs.http.Session;
+
+public final class MutableRequestTestCase
+{
+
+    private RegistrySessionManager sessionManager;
+
+    @Before
+    public void setUp()
+    {
+        sessionManager = new RegistrySessionManager( 60 * 1000 );
+    }
+
+    @After
+    public void tearDown()
+    {
+        sessionManager.shutDown();
+    }
+
+    @Test
+    public void untouchedSessionsAreNotCreated()
+    {
+        MutableRequest request = newRequest( null );
+        Response response = newResponse();
+
+        sessionManager.manageSession( request );
+        sessionManager.commitSession( request, response );
+
+        assertFalse( request.hasSession() );
+        assertFalse( request.isSessionCreated() );
+        assertTrue( response.getCookies().isEmpty() );
+    }
+
+    @Test
+    public void sessionsAreCreatedAndRegisteredAtTheFirstRequest()
+    {
+        MutableRequest request = newRequest( null );
+        sessionManager.manageSession( request );
+
+        Session session = request.getSession();
+
+        assertTrue( request.isSessionCreated() );
+        assertTrue( session.isNew() );
+        assertSame( session, request.getSession() );
+        assertSame( session, sessionManager.lookupSession( session.getId() ) );
+    }
+
+    @Test
+    public void cookiesAreSentOnlyForCreatedSessions()
+    {
+        MutableRequest request = newRequest( null );
+        Response response = newResponse();
+        sessionManager.manageSession( request );
+        Session session = request.getSession();
+        sessionManager.commitSession( request, response );
+
+        assertEquals( 1, response.getCookies().size() );
+        assertEquals( session.getId(), response.getCookies().iterator().next().getValue() );
+
+        request = newRequest( session.getId() );
+        response = newResponse();
+        sessionManager.manageSession( request );
+        assertSame( session, request.getSession() );
+        sessionManager.commitSession( request, response );
+
+        assertFalse( request.isSessionCreated() );
+        assertTrue( response.getCookies().isEmpty() );
+    }
+
+    @Test
+    public void expiredOrUnknownSessionsAreNotRestored()
+    {
+        MutableRequest request = newRequest( "unknown" );
+        sessionManager.manageSession( request );
+
+        assertFalse( request.hasSession() );
+        assertNull( sessionManager.lookupSession( "unknown" ) );
+    }
+
+}
@@ -0,0 +1,91 @@
+package org.nnsoft.shs.core.http;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static java.lang.String.format;
+import static java.lang.System.nanoTime;
+
+/**
+ * Measures the average cost of restoring existing sessions, with registries of growing size;
+ * launch it as a plain Java application.
+ */
+public final class RegistrySessionManagerBenchmark
+{
+
+    private static final int ITERATIONS = 2000000;
+
+    public static void main( String[] args )
+    {
+        int[] sizes = { 100, 10000, 100000 };
+
+        for ( int sessions : sizes )
+        {
+            RegistrySessionManager sessionManager = new RegistrySessionManager( 60 * 60 * 1000 );
+
+            String[] sessionIds = new String[sessions];
+            for ( int i = 0; i < sessions; i++ )
+            {
+                sessionIds[i] = sessionManager.createSession().getId();
+            }
+
+            MutableRequest[] requests = new MutableRequest[1024];
+            for ( int i = 0; i < requests.length; i++ )
+            {
+                requests[i] = new MutableRequest();
+                requests[i].setRequestedSessionId( sessionIds[i % sessions] );
+            }
+
+            // warm up
+            measure( sessionManager, requests );
+
+            System.out.println( format( "%6d sessions: %6.1f ns/lookup", sessions, measure( sessionManager, requests ) ) );
+
+            sessionManager.shutDown();
+        }
+    }
+
+    private static double measure( RegistrySessionManager sessionManager, MutableRequest[] requests )
+    {
+        int found = 0;
+        long start = nanoTime();
+
+        for ( int i = 0; i < ITERATIONS; i++ )
+        {
+            if ( sessionManager.lookupSession( requests[i & 1023].getRequestedSessionId() ) != null )
+            {
+                found++;
+            }
+        }
+
+        long elapsed = nanoTime() - start;
+
+        if ( found != ITERATIONS )
+        {
+            throw new IllegalStateException( "Sessions not restored" );
+        }
+
+        return (double) elapsed / ITERATIONS;
+    }
+
+}
@@ -0,0 +1,105 @@
+package org.nnsoft.shs.core.http;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.nnsoft.shs.core.http.ResponseFactory.newResponse;
+import static org.nnsoft.shs.core.http.SessionManager.SESSION_NAME;
+import static org.nnsoft.shs.core.http.SessionRequests.newRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nnsoft.shs.http.Cookie;
+import org.nnsoft.shs.http.Response;
+import org.nnsoft.shs.http.Session;
+
+public final class RegistrySessionManagerTestCase
+{
+
+    private RegistrySessionManager sessionManager;
+
+    @Before
+    public void setUp()
+    {
+        sessionManager = new RegistrySessionManager( 60 * 1000 );
+    }
+
+    @After
+    public void tearDown()
+    {
+        sessionManager.shutDown();
+    }
+
+    @Test
+    public void sessionsAreCreatedOnlyWhenRequested()
+    {
+        MutableRequest request = newRequest( null );
+        Response response = newResponse();
+
+        sessionManager.manageSession( request );
+        sessionManager.commitSession( request, response );
+
+        assertTrue( response.getCookies().isEmpty() );
+    }
+
+    @Test
+    public void sessionsAreRestoredFromTheCookie()
+    {
+        MutableRequest request = newRequest( null );
+        Response response = newResponse();
+
+        sessionManager.manageSession( request );
+        Session session = request.getSession();
+        sessionManager.commitSession( request, response );
+
+        assertEquals( 1, response.getCookies().size() );
+        Cookie cookie = response.getCookies().iterator().next();
+        assertEquals( SESSION_NAME, cookie.getName() );
+
+        request = newRequest( cookie.getValue() );
+        response = newResponse();
+
+        sessionManager.manageSession( request );
+        sessionManager.commitSession( request, response );
+
+        assertSame( session, request.getSession() );
+        assertFalse( session.isNew() );
+        assertTrue( response.getCookies().isEmpty() );
+    }
+
+    @Test
+    public void unknownSessionsAreReplaced()
+    {
+        MutableRequest request = newRequest( "not-a-session" );
+
+        sessionManager.manageSession( request );
+
+        assertFalse( "not-a-session".equals( request.getSession().getId() ) );
+    }
+
+}
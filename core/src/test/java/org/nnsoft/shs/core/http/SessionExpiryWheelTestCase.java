@@ -0,0 +1,90 @@
+package org.nnsoft.shs.core.http;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public final class SessionExpiryWheelTestCase
+{
+
+    private static final long MAX_AGE = 10000;
+
+    private final ConcurrentMap<String, DefaultSession> registry = new ConcurrentHashMap<String, DefaultSession>();
+
+    private DefaultSession session;
+
+    private long created;
+
+    private SessionExpiryWheel wheel;
+
+    @Before
+    public void setUp()
+    {
+        session = new DefaultSession( "session" );
+        created = session.getLastAccessedTimeMillis();
+        registry.put( session.getId(), session );
+
+        wheel = new SessionExpiryWheel( registry, MAX_AGE, 1000, created );
+        wheel.schedule( session );
+    }
+
+    @Test
+    public void notAccessedSessionsExpire()
+    {
+        wheel.advance( created + MAX_AGE / 2 );
+        assertTrue( registry.containsKey( session.getId() ) );
+
+        wheel.advance( created + MAX_AGE + 1000 );
+        assertFalse( registry.containsKey( session.getId() ) );
+    }
+
+    @Test
+    public void accessesSlideTheExpiration()
+    {
+        wheel.advance( created + MAX_AGE - 2000 );
+        session.updateLastAccessedTime( created + MAX_AGE - 1000 );
+
+        wheel.advance( created + MAX_AGE + 1000 );
+        assertTrue( registry.containsKey( session.getId() ) );
+        assertFalse( wheel.isExpired( session, created + MAX_AGE + 1000 ) );
+
+        wheel.advance( created + 2 * MAX_AGE + 1000 );
+        assertFalse( registry.containsKey( session.getId() ) );
+    }
+
+    @Test
+    public void longPausesSweepAllTheSlots()
+    {
+        wheel.advance( created + 10 * MAX_AGE );
+        assertFalse( registry.containsKey( session.getId() ) );
+    }
+
+}
@@ -0,0 +1,145 @@
+package org.nnsoft.shs.core.http;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static java.lang.String.format;
+import static java.lang.System.nanoTime;
+import static java.util.UUID.randomUUID;
+
+import java.security.SecureRandom;
+import java.util.concurrent.CountDownLatch;
+
+import org.nnsoft.shs.http.SessionIdGenerator;
+
+/**
+ * Measures the session ids generation throughput with a growing number of threads,
+ * comparing the default generator to random {@link java.util.UUID}s and to the platform default
+ * {@link SecureRandom}, one per thread;
+ * launch it as a plain Java application.
+ */
+public final class SessionIdGeneratorBenchmark
+{
+
+    private static final int IDS_PER_THREAD = 200000;
+
+    public static void main( String[] args )
+        throws Exception
+    {
+        SessionIdGenerator uuids = new SessionIdGenerator()
+        {
+
+            @Override
+            public String generateSessionId()
+            {
+                return randomUUID().toString();
+            }
+
+        };
+        // the platform default SecureRandom, one per thread: NativePRNG on Linux, locked JVM-wide
+        SessionIdGenerator defaultSecureRandoms = new SessionIdGenerator()
+        {
+
+            private final ThreadLocal<SecureRandom> randoms = new ThreadLocal<SecureRandom>()
+            {
+
+                @Override
+                protected SecureRandom initialValue()
+                {
+                    return new SecureRandom();
+                }
+
+            };
+
+            @Override
+            public String generateSessionId()
+            {
+                byte[] bytes = new byte[16];
+                randoms.get().nextBytes( bytes );
+                return UrlSafeBase64.encode( bytes );
+            }
+
+        };
+        SessionIdGenerator secureRandoms = new SecureRandomSessionIdGenerator();
+
+        // contention shows up only with more threads than the sandbox processors, if any
+        int maxThreads = Math.max( 8, Runtime.getRuntime().availableProcessors() );
+
+        // warm up
+        measure( uuids, maxThreads );
+        measure( defaultSecureRandoms, maxThreads );
+        measure( secureRandoms, maxThreads );
+
+        for ( int threads = 1; threads <= maxThreads; threads *= 2 )
+        {
+            System.out.println( format( "%2d threads: UUID %6.0f ids/ms, default SecureRandom %6.0f ids/ms,"
+                                        + " SecureRandomSessionIdGenerator %6.0f ids/ms",
+                                        threads, measure( uuids, threads ), measure( defaultSecureRandoms, threads ),
+                                        measure( secureRandoms, threads ) ) );
+        }
+    }
+
+    private static double measure( final SessionIdGenerator generator, int threads )
+        throws Exception
+    {
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final CountDownLatch end = new CountDownLatch( threads );
+
+        for ( int i = 0; i < threads; i++ )
+        {
+            new Thread()
+            {
+
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                        for ( int j = 0; j < IDS_PER_THREAD; j++ )
+                        {
+                            generator.generateSessionId();
+                        }
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        currentThread().interrupt();
+                    }
+                    finally
+                    {
+                        end.countDown();
+                    }
+                }
+
+            }.start();
+        }
+
+        long started = nanoTime();
+        start.countDown();
+        end.await();
+        long elapsed = nanoTime() - started;
+
+        return (double) threads * IDS_PER_THREAD * 1000000 / elapsed;
+    }
+
+}
@@ -0,0 +1,278 @@
+package org.nnsoft.shs.core.http;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static java.lang.System.currentTimeMillis;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.nnsoft.shs.core.http.ResponseFactory.newResponse;
+import static org.nnsoft.shs.core.http.SessionRequests.newRequest;
+
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nnsoft.shs.http.Session;
+
+public final class SessionReplicatorTestCase
+{
+
+    private static final int MAX_AGE = 60 * 1000;
+
+    private static final long TIMEOUT = 5000;
+
+    private static final byte[] SECRET = "0123456789abcdef".getBytes();
+
+    private InetSocketAddress firstAddress;
+
+    private InetSocketAddress secondAddress;
+
+    private RegistrySessionManager first;
+
+    private RegistrySessionManager second;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        firstAddress = freeAddress();
+        secondAddress = freeAddress();
+        SessionReplicator firstReplicator = new SessionReplicator( firstAddress, SECRET, asList( secondAddress ) );
+        SessionReplicator secondReplicator = new SessionReplicator( secondAddress, SECRET, asList( firstAddress ) );
+
+        first = new RegistrySessionManager( MAX_AGE, new SecureRandomSessionIdGenerator(), firstReplicator );
+        second = new RegistrySessionManager( MAX_AGE, new SecureRandomSessionIdGenerator(), secondReplicator );
+    }
+
+    @After
+    public void tearDown()
+    {
+        first.shutDown();
+        second.shutDown();
+    }
+
+    @Test
+    public void createdSessionsAreServedByPeers()
+        throws Exception
+    {
+        MutableRequest request = newRequest( null );
+        first.manageSession( request );
+        Session session = request.getSession();
+        session.setAttribute( "user", "alice" );
+        first.commitSession( request, newResponse() );
+
+        DefaultSession replica = awaitSession( second, session.getId() );
+        assertEquals( "alice", replica.getAttribute( "user" ) );
+        assertEquals( session.getCreationTime(), replica.getCreationTime() );
+    }
+
+    @Test
+    public void modifiedSessionsAreReplicated()
+        throws Exception
+    {
+        MutableRequest request = newRequest( null );
+        first.manageSession( request );
+        Session session = request.getSession();
+        session.setAttribute( "user", "alice" );
+        session.setAttribute( "cart", 3 );
+        first.commitSession( request, newResponse() );
+        awaitSession( second, session.getId() );
+
+        request = newRequest( session.getId() );
+        first.manageSession( request );
+        request.getSession().setAttribute( "user", "bob" );
+        request.getSession().removeAttribute( "cart" );
+        first.commitSession( request, newResponse() );
+
+        DefaultSession replica = second.lookupSession( session.getId() );
+        long timeout = currentTimeMillis() + TIMEOUT;
+        while ( !"bob".equals( replica.getAttribute( "user" ) ) && currentTimeMillis() < timeout )
+        {
+            Thread.sleep( 10 );
+        }
+
+        assertEquals( "bob", replica.getAttribute( "user" ) );
+        assertNull( replica.getAttribute( "cart" ) );
+    }
+
+    @Test
+    public void replicatedAccessesSlideExpiration()
+        throws Exception
+    {
+        long now = currentTimeMillis();
+        first.applyReplica( "session", now - MAX_AGE / 2, now - MAX_AGE / 2, emptyAttributes() );
+        second.applyReplica( "session", now - MAX_AGE / 2, now - MAX_AGE / 2, emptyAttributes() );
+
+        DefaultSession session = first.lookupSession( "session" );
+        assertNotNull( session );
+
+        DefaultSession replica = second.lookupSession( "session" );
+        long timeout = currentTimeMillis() + TIMEOUT;
+        while ( replica.getLastAccessedTimeMillis() < session.getLastAccessedTimeMillis()
+                && currentTimeMillis() < timeout )
+        {
+            Thread.sleep( 10 );
+        }
+
+        assertTrue( replica.getLastAccessedTimeMillis() >= session.getLastAccessedTimeMillis() );
+    }
+
+    @Test
+    public void sessionsThatCannotBeSerializedDoNotDropTheOthers()
+        throws Exception
+    {
+        MutableRequest request = newRequest( null );
+        first.manageSession( request );
+        Session notSerializable = request.getSession();
+        notSerializable.setAttribute( "lock", new Object() );
+        first.commitSession( request, newResponse() );
+
+        // enqueued right after the session that can't be serialized, likely in the same batch
+        Session[] sessions = new Session[10];
+        for ( int i = 0; i < sessions.length; i++ )
+        {
+            request = newRequest( null );
+            first.manageSession( request );
+            sessions[i] = request.getSession();
+            sessions[i].setAttribute( "index", i );
+            first.commitSession( request, newResponse() );
+        }
+
+        for ( int i = 0; i < sessions.length; i++ )
+        {
+            assertEquals( Integer.valueOf( i ), awaitSession( second, sessions[i].getId() ).getAttribute( "index" ) );
+        }
+        assertNull( second.lookupSession( notSerializable.getId() ) );
+    }
+
+    @Test
+    public void attributesFailingWhileSerializedDoNotStopTheReplication()
+        throws Exception
+    {
+        MutableRequest request = newRequest( null );
+        first.manageSession( request );
+        Session failing = request.getSession();
+        failing.setAttribute( "failing", new FailingAttribute() );
+        first.commitSession( request, newResponse() );
+
+        request = newRequest( null );
+        first.manageSession( request );
+        Session session = request.getSession();
+        session.setAttribute( "user", "alice" );
+        first.commitSession( request, newResponse() );
+
+        assertEquals( "alice", awaitSession( second, session.getId() ).getAttribute( "user" ) );
+        assertNull( second.lookupSession( failing.getId() ) );
+    }
+
+    @Test
+    public void sessionsSignedWithAnotherSecretAreRejected()
+        throws Exception
+    {
+        RegistrySessionManager intruder =
+            new RegistrySessionManager( MAX_AGE, new SecureRandomSessionIdGenerator(),
+                                        new SessionReplicator( freeAddress(), "fedcba9876543210".getBytes(),
+                                                               asList( secondAddress ) ) );
+        try
+        {
+            MutableRequest request = newRequest( null );
+            intruder.manageSession( request );
+            Session rejected = request.getSession();
+            intruder.commitSession( request, newResponse() );
+
+            // replicated by the legit peer after the rejected one, on another connection
+            request = newRequest( null );
+            first.manageSession( request );
+            Session accepted = request.getSession();
+            first.commitSession( request, newResponse() );
+            awaitSession( second, accepted.getId() );
+
+            Thread.sleep( 200 );
+            assertNull( second.lookupSession( rejected.getId() ) );
+        }
+        finally
+        {
+            intruder.shutDown();
+        }
+    }
+
+    /**
+     * Fails like a collection modified by another thread while being serialized.
+     */
+    private static final class FailingAttribute
+        implements Serializable
+    {
+
+        private static final long serialVersionUID = 1L;
+
+        private void writeObject( ObjectOutputStream output )
+        {
+            throw new ConcurrentModificationException();
+        }
+
+    }
+
+    private static InetSocketAddress freeAddress()
+        throws Exception
+    {
+        ServerSocket socket = new ServerSocket( 0 );
+        try
+        {
+            return new InetSocketAddress( "127.0.0.1", socket.getLocalPort() );
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    private static DefaultSession awaitSession( RegistrySessionManager sessionManager, String sessionId )
+        throws InterruptedException
+    {
+        long timeout = currentTimeMillis() + TIMEOUT;
+        DefaultSession session;
+        while ( ( session = sessionManager.lookupSession( sessionId ) ) == null && currentTimeMillis() < timeout )
+        {
+            Thread.sleep( 10 );
+        }
+        assertNotNull( "Session " + sessionId + " not replicated", session );
+        return session;
+    }
+
+    private static Map<String, Object> emptyAttributes()
+    {
+        return new HashMap<String, Object>();
+    }
+
+}
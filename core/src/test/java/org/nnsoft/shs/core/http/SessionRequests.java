@@ -0,0 +1,55 @@
+package org.nnsoft.shs.core.http;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+/**
+ * Creates the requests the sessions managers are tested against.
+ */
+final class SessionRequests
+{
+
+    /**
+     * Creates a request received by {@code localhost:8080}.
+     *
+     * @param sessionId the session id sent by the client, can be null
+     * @return a new request
+     */
+    static MutableRequest newRequest( String sessionId )
+    {
+        MutableRequest request = new MutableRequest();
+        request.setServerHost( "localhost" );
+        request.setServerPort( 8080 );
+        request.setRequestedSessionId( sessionId );
+        return request;
+    }
+
+    /**
+     * Hidden constructor, this class cannot be instantiated.
+     */
+    private SessionRequests()
+    {
+        // do nothing
+    }
+
+}
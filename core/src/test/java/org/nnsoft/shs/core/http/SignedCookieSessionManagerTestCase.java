@@ -0,0 +1,146 @@
+package org.nnsoft.shs.core.http;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.nnsoft.shs.core.http.ResponseFactory.newResponse;
+import static org.nnsoft.shs.core.http.SessionManager.SESSION_NAME;
+import static org.nnsoft.shs.core.http.SessionRequests.newRequest;
+
+import org.junit.Test;
+import org.nnsoft.shs.http.Cookie;
+import org.nnsoft.shs.http.Response;
+import org.nnsoft.shs.http.Session;
+
+public final class SignedCookieSessionManagerTestCase
+{
+
+    private static final int MAX_AGE = 60 * 1000;
+
+    private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes();
+
+    @Test
+    public void sessionsAreRestoredFromTheCookie()
+        throws Exception
+    {
+        verifyRoundTrip( false );
+    }
+
+    @Test
+    public void encryptedSessionsAreRestoredFromTheCookie()
+        throws Exception
+    {
+        String value = verifyRoundTrip( true );
+
+        // attribute values can't be read by clients
+        assertFalse( new String( UrlSafeBase64.decode( value, 0, value.indexOf( '.' ) ), "ISO-8859-1" ).contains( "alice" ) );
+    }
+
+    @Test
+    public void tamperedCookiesAreIgnored()
+        throws Exception
+    {
+        SignedCookieSessionManager sessionManager = newSessionManager( SECRET, false );
+        DefaultSession session = sessionManager.createSession();
+        long now = System.currentTimeMillis();
+        String value = sessionManager.encodeSession( session, now );
+
+        char tampered = value.charAt( 10 ) == 'A' ? 'B' : 'A';
+        assertNull( sessionManager.decodeSession( value.substring( 0, 10 ) + tampered + value.substring( 11 ), now ) );
+        assertNull( sessionManager.decodeSession( value.substring( 0, value.indexOf( '.' ) ), now ) );
+        assertNull( sessionManager.decodeSession( "not.valid", now ) );
+        assertNull( newSessionManager( "another secret key value".getBytes(), false ).decodeSession( value, now ) );
+    }
+
+    @Test
+    public void expiredSessionsAreIgnored()
+        throws Exception
+    {
+        SignedCookieSessionManager sessionManager = newSessionManager( SECRET, true );
+        long now = System.currentTimeMillis();
+        String value = sessionManager.encodeSession( sessionManager.createSession(), now );
+
+        assertNotNull( sessionManager.decodeSession( value, now + MAX_AGE ) );
+        assertNull( sessionManager.decodeSession( value, now + MAX_AGE + 1 ) );
+    }
+
+    @Test
+    public void notModifiedSessionsAreNotSentAgain()
+        throws Exception
+    {
+        SignedCookieSessionManager sessionManager = newSessionManager( SECRET, false );
+        String value = sessionManager.encodeSession( sessionManager.createSession(), System.currentTimeMillis() );
+
+        MutableRequest request = newRequest( value );
+        Response response = newResponse();
+
+        sessionManager.manageSession( request );
+        request.getSession().getAttribute( "user" );
+        sessionManager.commitSession( request, response );
+
+        assertTrue( response.getCookies().isEmpty() );
+    }
+
+    private static String verifyRoundTrip( boolean encrypt )
+        throws Exception
+    {
+        SignedCookieSessionManager sessionManager = newSessionManager( SECRET, encrypt );
+
+        MutableRequest request = newRequest( null );
+        Response response = newResponse();
+
+        sessionManager.manageSession( request );
+        sessionManager.commitSession( request, response );
+        assertTrue( response.getCookies().isEmpty() );
+
+        Session session = request.getSession();
+        session.setAttribute( "user", "alice" );
+        sessionManager.commitSession( request, response );
+
+        assertEquals( 1, response.getCookies().size() );
+        Cookie cookie = response.getCookies().iterator().next();
+        assertEquals( SESSION_NAME, cookie.getName() );
+
+        request = newRequest( cookie.getValue() );
+        sessionManager.manageSession( request );
+
+        Session restored = request.getSession();
+        assertEquals( session.getId(), restored.getId() );
+        assertEquals( session.getCreationTime(), restored.getCreationTime() );
+        assertEquals( "alice", restored.getAttribute( "user" ) );
+        assertFalse( restored.isNew() );
+
+        return cookie.getValue();
+    }
+
+    private static SignedCookieSessionManager newSessionManager( byte[] secretKey, boolean encrypt )
+    {
+        return new SignedCookieSessionManager( MAX_AGE, new SecureRandomSessionIdGenerator(), secretKey, encrypt );
+    }
+
+}
@@ -0,0 +1,67 @@
+package org.nnsoft.shs.core.http;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.nnsoft.shs.core.http.UrlSafeBase64.decode;
+import static org.nnsoft.shs.core.http.UrlSafeBase64.encode;
+
+import org.junit.Test;
+
+public final class UrlSafeBase64TestCase
+{
+
+    @Test
+    public void encodesUrlSafeBase64WithoutPadding()
+        throws Exception
+    {
+        assertEquals( "", encode( new byte[0] ) );
+        assertEquals( "Zg", encode( "f".getBytes( "US-ASCII" ) ) );
+        assertEquals( "Zm8", encode( "fo".getBytes( "US-ASCII" ) ) );
+        assertEquals( "Zm9v", encode( "foo".getBytes( "US-ASCII" ) ) );
+        assertEquals( "Zm9vYmFy", encode( "foobar".getBytes( "US-ASCII" ) ) );
+        assertEquals( "-_8", encode( new byte[] { (byte) 0xfb, (byte) 0xff } ) );
+    }
+
+    @Test
+    public void decodesUrlSafeBase64WithoutPadding()
+        throws Exception
+    {
+        assertArrayEquals( "f".getBytes( "US-ASCII" ), decode( "Zg", 0, 2 ) );
+        assertArrayEquals( "fo".getBytes( "US-ASCII" ), decode( "Zm8", 0, 3 ) );
+        assertArrayEquals( "foobar".getBytes( "US-ASCII" ), decode( "xZm9vYmFyx", 1, 8 ) );
+        assertArrayEquals( new byte[] { (byte) 0xfb, (byte) 0xff }, decode( "-_8", 0, 3 ) );
+    }
+
+    @Test
+    public void invalidValuesAreNotDecoded()
+    {
+        assertNull( decode( "Zm9v+mFy", 0, 8 ) );
+        assertNull( decode( "Zm9vY", 0, 5 ) );
+        assertNull( decode( "Zm=v", 0, 4 ) );
+    }
+
+}
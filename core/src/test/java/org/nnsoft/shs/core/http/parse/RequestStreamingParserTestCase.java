@@ -24,6 +24,7 @@ package org.nnsoft.shs.core.http.parse;
  */
 
 import static org.nnsoft.shs.http.Headers.*;
+import static java.nio.ByteBuffer.wrap;
 import static org.nnsoft.shs.core.io.IOUtils.utf8ByteBuffer;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -31,6 +32,7 @@ import static org.nnsoft.shs.http.Request.Method.GET;
 
 import org.junit.Test;
 import org.nnsoft.shs.core.http.CookieBuilder;
+import org.nnsoft.shs.core.http.MutableRequest;
 import org.nnsoft.shs.http.Cookie;
 import org.nnsoft.shs.http.Request;
 
@@ -145,6 +147,17 @@ public final class RequestStreamingParserTestCase
         assertTrue( request.getCookies().contains( expected2 ) );
     }
 
+    @Test
+    public void sessionIdIsExtractedFromCookies()
+        throws Exception
+    {
+        String simpleRequest = "GET /index.html HTTP/1.1\n"
+                                + "Cookie: name=value; SHSSESSIONID=abc123\n\n";
+        Request request = parse( simpleRequest );
+
+        assertEquals( "abc123", ( (MutableRequest) request ).getRequestedSessionId() );
+    }
+
     @Test
     public void parametersSentViaPostMethods()
         throws Exception
@@ -177,6 +190,53 @@ public final class RequestStreamingParserTestCase
         assertEquals( expected, actual );
     }
 
+    @Test
+    public void multiByteCharactersSplitAcrossChunks()
+        throws Exception
+    {
+        String simpleRequest = "GET /caf\u00e9/\u65e5\u672c.html?q=\u00fcber HTTP/1.1\n"
+                                + "X-Note: na\u00efve\n\n";
+        Request request = parse( simpleRequest.getBytes( "UTF-8" ), 1 );
+
+        assertEquals( "/caf\u00e9/\u65e5\u672c.html", request.getPath() );
+        assertEquals( "\u00fcber", request.getQueryStringParameters().getFirstValue( "q" ) );
+        assertEquals( "na\u00efve", request.getHeaders().getFirstValue( "X-Note" ) );
+    }
+
+    @Test
+    public void longTokensAcrossChunks()
+        throws Exception
+    {
+        StringBuilder value = new StringBuilder();
+        for ( int i = 0; i < 100; i++ )
+        {
+            value.append( "abcdefghij" );
+        }
+
+        String simpleRequest = "GET /index.html HTTP/1.1\r\n"
+                                + "Host: localhost:8080\r\n"
+                                + "X-Long: " + value + "\r\n\r\n";
+        Request request = parse( simpleRequest.getBytes( "UTF-8" ), 37 );
+
+        assertEquals( "localhost:8080", request.getHeaders().getFirstValue( HOST ) );
+        assertEquals( value.toString(), request.getHeaders().getFirstValue( "X-Long" ) );
+    }
+
+    private Request parse( byte[] mockRequest, int chunkSize )
+        throws Exception
+    {
+        RequestStreamingParser pullParser = new RequestStreamingParser( "localhost", "localhost", 123 );
+
+        for ( int offset = 0; offset < mockRequest.length; offset += chunkSize )
+        {
+            pullParser.onRequestPartRead( wrap( mockRequest, offset, Math.min( chunkSize, mockRequest.length - offset ) ) );
+        }
+
+        assertTrue( pullParser.isRequestMessageComplete() );
+
+        return pullParser.getParsedRequest();
+    }
+
     private Request parse( String mockRequestString )
         throws Exception
     {
@@ -0,0 +1,82 @@
+package org.nnsoft.shs.core.http.serialize;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.nnsoft.shs.core.io.IOUtils.toUtf8String;
+import static org.nnsoft.shs.http.Headers.CONTENT_LENGTH;
+import static org.nnsoft.shs.http.Response.Status.NOT_FOUND;
+import static org.nnsoft.shs.http.Response.Status.OK;
+
+import org.junit.Test;
+
+public final class ResponseHeadEncoderTestCase
+{
+
+    @Test
+    public void encodeResponseHead()
+    {
+        String head = toUtf8String( ResponseHeadEncoder.get()
+                                                       .statusLine( "HTTP", "1.1", OK )
+                                                       .header( CONTENT_LENGTH, "1024" )
+                                                       .header( "X-Custom", "value" )
+                                                       .endOfLine()
+                                                       .toByteBuffer() );
+
+        assertEquals( "HTTP/1.1 200 OK\r\nContent-Length: 1024\r\nX-Custom: value\r\n\r\n", head );
+    }
+
+    @Test
+    public void encodeUnknownProtocolStatusLine()
+    {
+        String head = toUtf8String( ResponseHeadEncoder.get().statusLine( "HTTP", "0.9", NOT_FOUND ).toByteBuffer() );
+
+        assertEquals( "HTTP/0.9 404 Not Found\r\n", head );
+    }
+
+    @Test
+    public void encodeNonAsciiValuesAsUtf8()
+    {
+        String head = toUtf8String( ResponseHeadEncoder.get().header( "X-Name", "Simone Tripodi \u2713" ).toByteBuffer() );
+
+        assertEquals( "X-Name: Simone Tripodi \u2713\r\n", head );
+    }
+
+    @Test
+    public void encodeIntegers()
+    {
+        String head = toUtf8String( ResponseHeadEncoder.get().write( 0 ).write( ',' ).write( 8080 ).toByteBuffer() );
+
+        assertEquals( "0,8080", head );
+    }
+
+    @Test
+    public void encoderIsResetWhenObtained()
+    {
+        ResponseHeadEncoder.get().write( "discarded" );
+
+        assertEquals( "kept", toUtf8String( ResponseHeadEncoder.get().write( "kept" ).toByteBuffer() ) );
+    }
+
+}
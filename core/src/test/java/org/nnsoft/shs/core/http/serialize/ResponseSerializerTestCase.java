@@ -0,0 +1,284 @@
+package org.nnsoft.shs.core.http.serialize;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.nnsoft.shs.core.http.ResponseFactory.newResponse;
+import static org.nnsoft.shs.http.Response.Status.OK;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nnsoft.shs.core.io.FileResponseBodyWriter;
+import org.nnsoft.shs.core.io.OutboundQueue;
+import org.nnsoft.shs.core.io.ThrottledChannel;
+import org.nnsoft.shs.http.Response;
+import org.nnsoft.shs.io.ResponseBodyWriter;
+import org.nnsoft.shs.io.SizedResponseBodyWriter;
+
+public final class ResponseSerializerTestCase
+{
+
+    private Selector selector;
+
+    private Pipe pipe;
+
+    private SelectionKey key;
+
+    private File file;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        // the serializer hands the response over to the key, the channel is never written
+        selector = Selector.open();
+        pipe = Pipe.open();
+        pipe.sink().configureBlocking( false );
+        key = pipe.sink().register( selector, 0 );
+
+        file = File.createTempFile( "body", ".txt" );
+    }
+
+    @After
+    public void tearDown()
+        throws Exception
+    {
+        key.cancel();
+        pipe.sink().close();
+        pipe.source().close();
+        selector.close();
+        file.delete();
+    }
+
+    @Test
+    public void emptyFilesAreTransferred()
+        throws Exception
+    {
+        serialize( fileResponse() );
+
+        assertEquals( "HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: 0\r\n\r\n",
+                      drain( new ThrottledChannel( Integer.MAX_VALUE ) ) );
+    }
+
+    @Test
+    public void filesAreTransferred()
+        throws Exception
+    {
+        writeFile( "hello world" );
+        serialize( fileResponse() );
+
+        assertEquals( "HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: 11\r\n\r\nhello world",
+                      drain( new ThrottledChannel( Integer.MAX_VALUE ) ) );
+    }
+
+    @Test
+    public void filesAreTransferredAcrossManyWrites()
+        throws Exception
+    {
+        StringBuilder content = new StringBuilder();
+        for ( int i = 0; i < 1000; i++ )
+        {
+            content.append( i ).append( '\n' );
+        }
+        writeFile( content.toString() );
+        serialize( fileResponse() );
+
+        ThrottledChannel channel = new ThrottledChannel( 1000 );
+        assertEquals( "HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: " + content.length() + "\r\n\r\n"
+                      + content, drain( channel ) );
+        assertTrue( channel.getWrites() > content.length() / 1000 );
+    }
+
+    @Test
+    public void bodiesOfUnknownSizeAreChunked()
+        throws Exception
+    {
+        // a full 8K chunk, 0x2000, and the remaining 1808 bytes, 0x710
+        String body = repeat( 'a', 10000 );
+        serialize( response( new BodyWriter( body ) ) );
+
+        assertEquals( "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                      + "2000\r\n" + body.substring( 0, 8192 ) + "\r\n"
+                      + "710\r\n" + body.substring( 8192 ) + "\r\n"
+                      + "0\r\n\r\n",
+                      drain( new ThrottledChannel( Integer.MAX_VALUE ) ) );
+    }
+
+    @Test
+    public void largeBodiesOfKnownSizeAreStreamed()
+        throws Exception
+    {
+        String body = repeat( 'b', 20000 );
+        serialize( response( new SizedBodyWriter( body ) ) );
+
+        assertEquals( "HTTP/1.1 200 OK\r\nContent-Length: 20000\r\n\r\n" + body,
+                      drain( new ThrottledChannel( Integer.MAX_VALUE ) ) );
+    }
+
+    @Test
+    public void smallBodiesOfKnownSizeAreBuffered()
+        throws Exception
+    {
+        serialize( response( new SizedBodyWriter( "hello" ) ) );
+
+        assertEquals( "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhello",
+                      drain( new ThrottledChannel( Integer.MAX_VALUE ) ) );
+    }
+
+    @Test
+    public void bodiesOfUnknownSizeAreBufferedForHttp10()
+        throws Exception
+    {
+        String body = repeat( 'c', 10000 );
+        Response response = response( new BodyWriter( body ) );
+        response.setProtocolVersion( "1.0" );
+        serialize( response );
+
+        assertEquals( "HTTP/1.0 200 OK\r\nContent-Length: 10000\r\n\r\n" + body,
+                      drain( new ThrottledChannel( Integer.MAX_VALUE ) ) );
+    }
+
+    private Response fileResponse()
+    {
+        return response( new FileResponseBodyWriter( file ) );
+    }
+
+    private static Response response( ResponseBodyWriter bodyWriter )
+    {
+        Response response = newResponse();
+        response.setStatus( OK );
+        response.setBody( bodyWriter );
+        return response;
+    }
+
+    private void serialize( Response response )
+        throws Exception
+    {
+        new ResponseSerializer( key ).serialize( response );
+    }
+
+    /**
+     * Writes the response as the event loop does, once per {@code OP_WRITE} event, until the end of message.
+     */
+    private String drain( ThrottledChannel channel )
+        throws Exception
+    {
+        OutboundQueue responseBuffers = (OutboundQueue) key.attachment();
+        ByteBuffer[] scratch = new ByteBuffer[16];
+
+        int events = 0;
+        while ( !responseBuffers.writeTo( channel, scratch ) )
+        {
+            assertFalse( "Response not completed", ++events > 10000 );
+        }
+        return channel.toString();
+    }
+
+    private void writeFile( String content )
+        throws Exception
+    {
+        FileOutputStream output = new FileOutputStream( file );
+        try
+        {
+            output.write( content.getBytes() );
+        }
+        finally
+        {
+            output.close();
+        }
+    }
+
+    private static String repeat( char c, int times )
+    {
+        char[] chars = new char[times];
+        Arrays.fill( chars, c );
+        return new String( chars );
+    }
+
+    /**
+     * A body which size is not known in advance.
+     */
+    private static class BodyWriter
+        implements ResponseBodyWriter
+    {
+
+        private final byte[] content;
+
+        public BodyWriter( String content )
+        {
+            this.content = content.getBytes();
+        }
+
+        public String contentType()
+        {
+            return null;
+        }
+
+        public void write( WritableByteChannel output )
+            throws IOException
+        {
+            output.write( ByteBuffer.wrap( content ) );
+        }
+
+        protected long length()
+        {
+            return content.length;
+        }
+
+    }
+
+    /**
+     * A body which size is known in advance.
+     */
+    private static final class SizedBodyWriter
+        extends BodyWriter
+        implements SizedResponseBodyWriter
+    {
+
+        public SizedBodyWriter( String content )
+        {
+            super( content );
+        }
+
+        public long contentLength()
+        {
+            return length();
+        }
+
+    }
+
+}
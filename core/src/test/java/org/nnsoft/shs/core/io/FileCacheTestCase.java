@@ -0,0 +1,117 @@
+package org.nnsoft.shs.core.io;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nnsoft.shs.io.SizedResponseBodyWriter;
+
+public final class FileCacheTestCase
+{
+
+    private File small;
+
+    private File other;
+
+    private File large;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        small = createFile( "small", ".txt", 10 );
+        other = createFile( "other", ".css", 10 );
+        large = createFile( "large", ".bin", 100 );
+    }
+
+    @After
+    public void tearDown()
+    {
+        small.delete();
+        other.delete();
+        large.delete();
+    }
+
+    @Test
+    public void hitsShareTheCachedContent()
+        throws Exception
+    {
+        FileCache fileCache = new FileCache( 1024, 64, false );
+
+        SizedResponseBodyWriter first = fileCache.get( small );
+        assertEquals( 10, first.contentLength() );
+        assertEquals( "text/plain", first.contentType() );
+        assertSame( first, fileCache.get( small ) );
+    }
+
+    @Test
+    public void largeFilesAreNotCached()
+        throws Exception
+    {
+        FileCache fileCache = new FileCache( 1024, 64, false );
+
+        assertNull( fileCache.get( large ) );
+        assertNull( fileCache.get( new File( small.getParentFile(), "does-not-exist.txt" ) ) );
+    }
+
+    @Test
+    public void leastRecentlyUsedFilesAreEvicted()
+        throws Exception
+    {
+        FileCache fileCache = new FileCache( 15, 64, true );
+
+        SizedResponseBodyWriter first = fileCache.get( small );
+        fileCache.get( other );
+
+        // small has been evicted to make room to other
+        assertNotSame( first, fileCache.get( small ) );
+    }
+
+    private static File createFile( String prefix, String suffix, int size )
+        throws IOException
+    {
+        File file = File.createTempFile( prefix, suffix );
+        FileOutputStream output = new FileOutputStream( file );
+        try
+        {
+            output.write( new byte[size] );
+        }
+        finally
+        {
+            output.close();
+        }
+        return file;
+    }
+
+}
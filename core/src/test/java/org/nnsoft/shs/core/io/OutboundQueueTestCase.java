@@ -0,0 +1,117 @@
+package org.nnsoft.shs.core.io;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import static java.nio.ByteBuffer.wrap;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.nnsoft.shs.core.io.ByteBufferEnqueuerOutputStream.EOM;
+
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class OutboundQueueTestCase
+{
+
+    private OutboundQueue outboundQueue;
+
+    private ThrottledChannel channel;
+
+    @Before
+    public void setUp()
+    {
+        outboundQueue = new OutboundQueue();
+        outboundQueue.offer( wrap( "HTTP/1.1 200 OK\r\n".getBytes() ) );
+        outboundQueue.offer( wrap( "Content-Length: 5\r\n\r\n".getBytes() ) );
+        outboundQueue.offer( wrap( "hello".getBytes() ) );
+        outboundQueue.offer( EOM );
+
+        channel = new ThrottledChannel( 0 );
+    }
+
+    @After
+    public void tearDown()
+    {
+        outboundQueue = null;
+        channel = null;
+    }
+
+    @Test
+    public void gatherAllBuffersInOneWrite()
+        throws Exception
+    {
+        channel.setCapacity( Integer.MAX_VALUE );
+
+        assertTrue( outboundQueue.writeTo( channel, new ByteBuffer[16] ) );
+        assertEquals( 1, channel.getWrites() );
+        assertEquals( "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhello", channel.toString() );
+    }
+
+    @Test
+    public void partiallyWrittenBuffersAreNotLost()
+        throws Exception
+    {
+        ByteBuffer[] scratch = new ByteBuffer[16];
+
+        channel.setCapacity( 10 );
+        assertFalse( outboundQueue.writeTo( channel, scratch ) );
+        assertFalse( outboundQueue.writeTo( channel, scratch ) );
+
+        channel.setCapacity( Integer.MAX_VALUE );
+        assertTrue( outboundQueue.writeTo( channel, scratch ) );
+        assertArrayEquals( "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhello".getBytes(), channel.toByteArray() );
+    }
+
+    @Test
+    public void scratchSmallerThanQueue()
+        throws Exception
+    {
+        channel.setCapacity( Integer.MAX_VALUE );
+
+        assertTrue( outboundQueue.writeTo( channel, new ByteBuffer[2] ) );
+        assertEquals( 2, channel.getWrites() );
+        assertEquals( "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhello", channel.toString() );
+    }
+
+    @Test
+    public void waitForTheEndOfMessage()
+        throws Exception
+    {
+        OutboundQueue incomplete = new OutboundQueue();
+        incomplete.offer( wrap( "hello".getBytes() ) );
+
+        channel.setCapacity( Integer.MAX_VALUE );
+        assertFalse( incomplete.writeTo( channel, new ByteBuffer[16] ) );
+
+        incomplete.offer( EOM );
+        assertTrue( incomplete.writeTo( channel, new ByteBuffer[16] ) );
+        assertEquals( "hello", channel.toString() );
+    }
+
+}
@@ -0,0 +1,109 @@
+package org.nnsoft.shs.core.io;
+
+/*
+ * Copyright (c) 2012 Simone Tripodi (simonetripodi@apache.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * A channel that accepts at most {@code capacity} bytes per write, like a socket which send buffer fills up.
+ */
+public final class ThrottledChannel
+    implements GatheringByteChannel
+{
+
+    private final ByteArrayOutputStream target = new ByteArrayOutputStream();
+
+    private int capacity;
+
+    private int writes;
+
+    public ThrottledChannel( int capacity )
+    {
+        this.capacity = capacity;
+    }
+
+    public void setCapacity( int capacity )
+    {
+        this.capacity = capacity;
+    }
+
+    public int getWrites()
+    {
+        return writes;
+    }
+
+    public byte[] toByteArray()
+    {
+        return target.toByteArray();
+    }
+
+    public int write( ByteBuffer src )
+        throws IOException
+    {
+        return (int) write( new ByteBuffer[] { src }, 0, 1 );
+    }
+
+    public long write( ByteBuffer[] srcs )
+        throws IOException
+    {
+        return write( srcs, 0, srcs.length );
+    }
+
+    public long write( ByteBuffer[] srcs, int offset, int length )
+        throws IOException
+    {
+        writes++;
+
+        int written = 0;
+        for ( int i = offset; i < offset + length && written < capacity; i++ )
+        {
+            while ( srcs[i].hasRemaining() && written < capacity )
+            {
+                target.write( srcs[i].get() );
+                written++;
+            }
+        }
+        return written;
+    }
+
+    public boolean isOpen()
+    {
+        return true;
+    }
+
+    public void close()
+    {
+        // do nothing
+    }
+
+    @Override
+    public String toString()
+    {
+        return new String( target.toByteArray() );
+    }
+
+}
@@ -36,10 +36,12 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
 
+import org.nnsoft.shs.core.io.FileCache;
 import org.nnsoft.shs.core.io.FileResponseBodyWriter;
 import org.nnsoft.shs.http.BaseRequestHandler;
 import org.nnsoft.shs.http.Request;
 import org.nnsoft.shs.http.Response;
+import org.nnsoft.shs.io.SizedResponseBodyWriter;
 
 /**
  * A simple request handler that serves static files.
@@ -50,11 +52,20 @@ public final class FileRequestHandler
     extends BaseRequestHandler
 {
 
+    private static final long CACHE_SIZE = 32 * 1024 * 1024;
+
+    private static final long MAX_CACHED_FILE_SIZE = 256 * 1024;
+
     /**
      * The main directory where static files are stored.
      */
     private final File baseDir;
 
+    /**
+     * The cache of the small files content.
+     */
+    private final FileCache fileCache = new FileCache( CACHE_SIZE, MAX_CACHED_FILE_SIZE, true );
+
     /**
      * Creates a new file hanlder that serves file in the inout directory.
      *
@@ -76,6 +87,15 @@ public final class FileRequestHandler
         throws IOException
     {
         File requested = new File( baseDir, request.getPath() );
+
+        // hot files are served without touching the file system
+        SizedResponseBodyWriter cached = fileCache.get( requested );
+        if ( cached != null )
+        {
+            response.setBody( cached );
+            return;
+        }
+
         if ( !requested.exists() )
         {
             response.setStatus( NOT_FOUND );
@@ -89,7 +109,9 @@ public final class FileRequestHandler
 
         if ( requested.exists() )
         {
-            response.setBody( new FileResponseBodyWriter( requested ) );
+            cached = fileCache.get( requested );
+            // large files are transferred straight from the file system
+            response.setBody( cached != null ? cached : new FileResponseBodyWriter( requested ) );
         }
         else
         {
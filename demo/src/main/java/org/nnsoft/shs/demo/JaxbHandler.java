@@ -69,7 +69,7 @@ final class JaxbHandler
         Demo jaxbElement = new Demo();
         jaxbElement.setRequestPath( request.getPath() );
         jaxbElement.setDate( new Date() );
-        jaxbElement.setSessionId( request.getSession().getId().toString() );
+        jaxbElement.setSessionId( request.getSession().getId() );
         jaxbElement.setLegend( "This XML document has been generated with JAXB Marshaller" );
 
         try
@@ -28,6 +28,7 @@ import static java.lang.System.currentTimeMillis;
 import static java.lang.System.exit;
 import static java.lang.System.getProperty;
 import static java.lang.System.setProperty;
+import static org.nnsoft.shs.core.http.parse.RequestStreamingParser.TRACE_PROPERTY;
 import static org.nnsoft.shs.http.Response.Status.INTERNAL_SERVER_ERROR;
 import static org.nnsoft.shs.http.Response.Status.NOT_FOUND;
 import static org.slf4j.LoggerFactory.getILoggerFactory;
@@ -68,9 +69,21 @@ public final class SimpleHttpServerLauncher
     @Parameter( names = { "-p", "--port" }, description = "The HTTP Server port." )
     private int port = 8080;
 
+    @Parameter( names = { "-b", "--backlog" }, description = "The maximum length of the pending connections queue (platform default if not positive)." )
+    private int backlog;
+
+    @Parameter( names = { "-r", "--reuse-port" }, description = "Bind a listener per event loop using SO_REUSEPORT." )
+    private boolean reusePort;
+
     @Parameter( names = { "-t", "--threads" }, description = "The number of thread (# of available processors by default)." )
     private int threads = getRuntime().availableProcessors();
 
+    @Parameter( names = { "-c", "--cached-responses" }, description = "The maximum number of encoded static responses kept in memory (disabled if not positive)." )
+    private int cachedResponses = 1024;
+
+    @Parameter( names = { "-e", "--event-loops" }, description = "The number of event loops serving connections (# of available processors by default)." )
+    private int eventLoops = getRuntime().availableProcessors();
+
     @Parameter( names = { "-m", "--session-max-age" }, description = "The maximum number of seconds of life of HTTP Sessions." )
     private int sessionMaxAge = 60 * 60; // 1h
 
@@ -109,13 +122,17 @@ public final class SimpleHttpServerLauncher
     {
         bindServerToHost( host );
         bindServerToPort( port );
+        acceptConnectionsWithBacklog( backlog );
+        bindServerWithReusePort( reusePort );
         serveRequestsWithThreads( threads );
+        serveConnectionsWithEventLoops( eventLoops );
+        cacheStaticResponses( cachedResponses > 0 ? cachedResponses : 0 );
         sessionsHaveMagAge( sessionMaxAge );
         keepAliveConnectionsHaveTimeout( keepAliveTimeOut );
 
         serve( "*.xml" ).with( new JaxbHandler() );
         serve( "*.vm" ).with( new VelocityRequestHandler( siteDir ) );
-        serve( "/*" ).with( new FileRequestHandler( siteDir ) );
+        serve( "/*" ).cachingResponses().with( new FileRequestHandler( siteDir ) );
         when( NOT_FOUND ).serve( new File( siteDir, "404.html" ) );
         when( INTERNAL_SERVER_ERROR ).serve( new File( siteDir, "500.html" ) );
     }
@@ -148,6 +165,8 @@ public final class SimpleHttpServerLauncher
         else if ( verbose )
         {
             setProperty( "logging.level", "DEBUG" );
+            // must be set before the parser is loaded
+            setProperty( TRACE_PROPERTY, "true" );
         }
         else
         {